@@ -0,0 +1,129 @@
+package org.codewithmagret.benchmarks;
+
+import org.codewithmagret.history.PatientHistoryList;
+import org.codewithmagret.models.PatientRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for PatientHistoryList.
+ * The history list has no removal, so the insert benchmarks rebuild the list before each
+ * iteration and time a fixed batch of inserts; the size parameter is the size at the
+ * start of the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = HistoryListBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = HistoryListBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class HistoryListBenchmark {
+    /**
+     * The number of inserts timed per iteration.
+     */
+    static final int BATCH = 1000;
+
+    /**
+     * The number of records in the history before each iteration.
+     */
+    @Param({"10", "1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /**
+     * The history list under test.
+     */
+    private PatientHistoryList history;
+
+    /**
+     * The record inserted by the insert benchmarks.
+     */
+    private final PatientRecord record = new PatientRecord("2026-03-01", "Flu", "Rest, hydration");
+
+    /**
+     * Rebuilds the history with the requested number of records.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        history = new PatientHistoryList();
+        for (int i = 0; i < size; i++) {
+            history.addToPatientRecord(new PatientRecord("2026-01-01", "Checkup", "Vitals normal"), history.size());
+        }
+    }
+
+    /**
+     * Inserts a record at the head of the history.
+     */
+    @Benchmark
+    public void addAtHead() {
+        history.addToPatientRecord(record, 0);
+    }
+
+    /**
+     * Inserts a record in the middle of the history.
+     */
+    @Benchmark
+    public void addInMiddle() {
+        history.addToPatientRecord(record, history.size() / 2);
+    }
+
+    /**
+     * Inserts a record just before the newest one, the usual spot for a late-arriving record.
+     */
+    @Benchmark
+    public void addNearTail() {
+        history.addToPatientRecord(record, history.size() - 1);
+    }
+
+    /**
+     * Appends a record at the tail of the history.
+     */
+    @Benchmark
+    public void addAtTail() {
+        history.addToPatientRecord(record, history.size());
+    }
+
+    /**
+     * Walks the whole history from oldest to newest with the navigation cursor.
+     *
+     * @param blackhole consumes the visited records
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public void traverseOldestToNewest(Blackhole blackhole) {
+        blackhole.consume(history.navigateToOldestRecord());
+        for (int i = 1; i < history.size(); i++) {
+            blackhole.consume(history.navigateToNextRecord());
+        }
+    }
+
+    /**
+     * Walks the whole history from newest to oldest with the navigation cursor.
+     *
+     * @param blackhole consumes the visited records
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public void traverseNewestToOldest(Blackhole blackhole) {
+        blackhole.consume(history.navigateToNewestRecord());
+        for (int i = 1; i < history.size(); i++) {
+            blackhole.consume(history.navigateToPreviousRecord());
+        }
+    }
+}
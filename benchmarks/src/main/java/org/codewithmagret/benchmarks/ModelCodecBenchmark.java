@@ -0,0 +1,199 @@
+package org.codewithmagret.benchmarks;
+
+import org.codewithmagret.models.BinaryModelCodec;
+import org.codewithmagret.models.JsonModelCodec;
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.models.TriageLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparing the binary codec with the JSON form of the models.
+ * Every benchmark encodes or decodes the same batch of patient records and patients, as one
+ * stream, so the binary dictionary starts empty each time. The encoded size of the batch in
+ * each form is printed when the trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ModelCodecBenchmark {
+    /**
+     * The number of records, and of patients, in the batch.
+     */
+    static final int BATCH = 1024;
+
+    /**
+     * The diagnoses the sample records cycle through.
+     */
+    private static final String[] DIAGNOSES = {"Flu", "Sprain", "Migraine", "Allergy", "Sore throat", "Checkup"};
+
+    /**
+     * The sample patient records.
+     */
+    private final PatientRecord[] records = new PatientRecord[BATCH];
+
+    /**
+     * The sample patients.
+     */
+    private final Patient[] patients = new Patient[BATCH];
+
+    /**
+     * The codec used by the binary encode benchmarks.
+     */
+    private final BinaryModelCodec encoder = new BinaryModelCodec();
+
+    /**
+     * The codec without a dictionary used by the binary encode benchmarks.
+     */
+    private final BinaryModelCodec plainEncoder = new BinaryModelCodec(false);
+
+    /**
+     * The codec used by the binary decode benchmark.
+     */
+    private final BinaryModelCodec decoder = new BinaryModelCodec();
+
+    /**
+     * The buffer the encode benchmarks write to.
+     */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+
+    /**
+     * The batch in binary form, read by the decode benchmark.
+     */
+    private ByteBuffer binary;
+
+    /**
+     * The records of the batch in JSON form, as UTF-8 bytes.
+     */
+    private final byte[][] recordJson = new byte[BATCH][];
+
+    /**
+     * The patients of the batch in JSON form, as UTF-8 bytes.
+     */
+    private final byte[][] patientJson = new byte[BATCH][];
+
+    /**
+     * Builds the sample batch and encodes it in both forms.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        LocalDate start = LocalDate.of(2026, 1, 1);
+        for (int i = 0; i < BATCH; i++) {
+            records[i] = new PatientRecord(1 + i % 200, start.plusDays(i / 8).toString(),
+                    DIAGNOSES[i % DIAGNOSES.length], i % 4 == 0 ? "Follow-up in " + (i % 14 + 1) + " days" : "Rest, hydration");
+            patients[i] = new Patient(1 + i, "Patient " + i, DIAGNOSES[i % DIAGNOSES.length],
+                    TriageLevel.values()[i % TriageLevel.values().length]);
+        }
+
+        encodeBinary(encoder);
+        binary = ByteBuffer.allocateDirect(out.position());
+        binary.put(out.flip()).flip();
+        int jsonBytes = 0;
+        for (int i = 0; i < BATCH; i++) {
+            recordJson[i] = JsonModelCodec.toJson(records[i]).getBytes(StandardCharsets.UTF_8);
+            patientJson[i] = JsonModelCodec.toJson(patients[i]).getBytes(StandardCharsets.UTF_8);
+            jsonBytes += recordJson[i].length + patientJson[i].length + 2;
+        }
+        encodeBinary(plainEncoder);
+        System.out.printf("%nBatch size: binary %d bytes, binary without dictionary %d bytes, NDJSON %d bytes%n",
+                binary.capacity(), out.position(), jsonBytes);
+    }
+
+    /**
+     * Encodes the batch in binary form with a dictionary.
+     *
+     * @return the buffer holding the batch
+     */
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        return encodeBinary(encoder);
+    }
+
+    /**
+     * Encodes the batch in binary form without a dictionary.
+     *
+     * @return the buffer holding the batch
+     */
+    @Benchmark
+    public ByteBuffer encodeBinaryWithoutDictionary() {
+        return encodeBinary(plainEncoder);
+    }
+
+    /**
+     * Decodes the batch from binary form.
+     *
+     * @param blackhole consumes the decoded objects
+     */
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) {
+        decoder.reset();
+        ByteBuffer in = binary.duplicate();
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(decoder.decodeRecord(in));
+            blackhole.consume(decoder.decodePatient(in));
+        }
+    }
+
+    /**
+     * Encodes the batch as NDJSON.
+     *
+     * @return the buffer holding the batch
+     */
+    @Benchmark
+    public ByteBuffer encodeJson() {
+        out.clear();
+        for (int i = 0; i < BATCH; i++) {
+            out.put(JsonModelCodec.toJson(records[i]).getBytes(StandardCharsets.UTF_8)).put((byte) '\n');
+            out.put(JsonModelCodec.toJson(patients[i]).getBytes(StandardCharsets.UTF_8)).put((byte) '\n');
+        }
+        return out;
+    }
+
+    /**
+     * Decodes the batch from JSON.
+     *
+     * @param blackhole consumes the decoded objects
+     */
+    @Benchmark
+    public void decodeJson(Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(JsonModelCodec.recordFromJson(new String(recordJson[i], StandardCharsets.UTF_8)));
+            blackhole.consume(JsonModelCodec.patientFromJson(new String(patientJson[i], StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Encodes the batch in binary form as one stream.
+     *
+     * @param codec the codec to encode with
+     * @return the buffer holding the batch
+     */
+    private ByteBuffer encodeBinary(BinaryModelCodec codec) {
+        codec.reset();
+        out.clear();
+        for (int i = 0; i < BATCH; i++) {
+            codec.encode(records[i], out);
+            codec.encode(patients[i], out);
+        }
+        return out;
+    }
+}
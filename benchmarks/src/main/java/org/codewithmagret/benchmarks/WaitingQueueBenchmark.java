@@ -0,0 +1,181 @@
+package org.codewithmagret.benchmarks;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.waitingRoom.PatientWaitingQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for PatientWaitingQueue.
+ * Every benchmark leaves the queue at its starting size, so the size parameter holds
+ * for the whole measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class WaitingQueueBenchmark {
+    /**
+     * The number of patients waiting in the queue.
+     */
+    @Param({"10", "1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /**
+     * The queue under test. Aging is off so every benchmark sees the same lane layout.
+     */
+    private PatientWaitingQueue queue;
+
+    /**
+     * A patient inserted and removed again by the positional benchmarks.
+     */
+    private Patient probe;
+
+    /**
+     * Fills the queue with routine patients.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        queue = new PatientWaitingQueue(Duration.ZERO);
+        for (int i = 0; i < size; i++) {
+            queue.addPatientToQueue(new Patient("Patient " + i, "Checkup"));
+        }
+        // Any locked read moves the staged arrivals into the tree before measuring
+        queue.listPatients(0, 1);
+        probe = new Patient("Probe", "Checkup");
+    }
+
+    /**
+     * Adds a patient to the back of the queue and serves the one at the front.
+     *
+     * @return the served patient
+     */
+    @Benchmark
+    public Patient addAndServeNext() {
+        queue.addPatientToQueue(new Patient("Walk-in", "Flu"));
+        return queue.serveNext();
+    }
+
+    /**
+     * Inserts a patient at the front of the queue and removes them again.
+     *
+     * @return the removed patient
+     */
+    @Benchmark
+    public Patient insertAtHead() {
+        queue.insertPatientAtPosition(probe, 0);
+        return queue.removeById(probe.getNumericId());
+    }
+
+    /**
+     * Inserts a patient in the middle of the queue and removes them again.
+     *
+     * @return the removed patient
+     */
+    @Benchmark
+    public Patient insertInMiddle() {
+        queue.insertPatientAtPosition(probe, size / 2);
+        return queue.removeById(probe.getNumericId());
+    }
+
+    /**
+     * Inserts a patient at the back of the queue and removes them again.
+     *
+     * @return the removed patient
+     */
+    @Benchmark
+    public Patient insertAtTail() {
+        queue.insertPatientAtPosition(probe, size);
+        return queue.removeById(probe.getNumericId());
+    }
+
+    /**
+     * Finds the position of the patient in the middle of the queue.
+     *
+     * @return the position found
+     */
+    @Benchmark
+    public int positionOfMiddle() {
+        return queue.positionOf(size / 2 + 1L);
+    }
+
+    /**
+     * Visits every waiting patient through the streaming iterator.
+     *
+     * @param blackhole consumes the visited patients
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public void traverse(Blackhole blackhole) {
+        for (Patient patient : queue) {
+            blackhole.consume(patient);
+        }
+    }
+
+    /**
+     * Reads the first page of 50 patients, as a queue board would.
+     *
+     * @return the page
+     */
+    @Benchmark
+    public Object firstPage() {
+        return queue.listPatients(0, 50);
+    }
+
+    /**
+     * Four threads adding and serving at once, each keeping the size stable.
+     *
+     * @return the served patient
+     */
+    @Benchmark
+    @Threads(4)
+    public Patient addAndServeNextContended() {
+        queue.addPatientToQueue(new Patient("Walk-in", "Flu"));
+        return queue.serveNext();
+    }
+
+    /**
+     * Producer half of a kiosk/doctor group: two threads adding patients.
+     *
+     * @return the added patient
+     */
+    @Benchmark
+    @Group("kiosksAndDoctors")
+    @GroupThreads(2)
+    public Patient kioskAdd() {
+        return queue.addPatientToQueue(new Patient("Walk-in", "Flu"));
+    }
+
+    /**
+     * Consumer half of a kiosk/doctor group: two threads serving patients.
+     *
+     * @return the served patient, or null if the queue was momentarily empty
+     */
+    @Benchmark
+    @Group("kiosksAndDoctors")
+    @GroupThreads(2)
+    public Patient doctorServe() {
+        return queue.serveNext();
+    }
+}
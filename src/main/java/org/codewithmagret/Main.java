@@ -1,9 +1,25 @@
 package org.codewithmagret;
 
+import org.codewithmagret.history.BulkLoadProgress;
+import org.codewithmagret.history.HistoryBulkLoader;
 import org.codewithmagret.history.PatientHistoryList;
+import org.codewithmagret.history.SegmentedPatientHistory;
+import org.codewithmagret.ui.BatchRunner;
 import org.codewithmagret.ui.ConsoleMenu;
+import org.codewithmagret.ui.HttpApiServer;
 import org.codewithmagret.waitingRoom.PatientWaitingQueue;
+import org.codewithmagret.workload.WorkloadGenerator;
+import org.codewithmagret.workload.WorkloadProfile;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 /**
@@ -13,16 +29,153 @@ import java.util.Scanner;
 public class Main {
     /**
      * The main method initializes the necessary components and starts the console menu.
+     * <p>
+     * The options are:
+     * <ul>
+     *   <li>{@code --queue-log <file>} keeps the waiting queue in a write-ahead log, so it survives restarts.</li>
+     *   <li>{@code --history-dir <dir>} keeps the patient history in segment files, so it survives restarts.</li>
+     *   <li>{@code --import-history <file>} loads the history from a CSV or NDJSON file instead of the sample records.</li>
+     *   <li>{@code --workload <seed>} fills the history and queue with the default synthetic workload for a seed.</li>
+     *   <li>{@code --write-workload <dir>} writes that workload as history.csv, history.ndjson and commands.txt, then exits.</li>
+     *   <li>{@code --batch <file>} runs the commands in a file ("-" for stdin) instead of the menu; see BatchRunner.</li>
+     *   <li>{@code --serve <port>} serves the queue and history as an HTTP API instead of the menu; see HttpApiServer.</li>
+     * </ul>
      *
-     * @param args command-line arguments (not used in this application)
+     * @param args command-line arguments, as listed above
+     * @throws IOException if the queue log or history directory cannot be opened or written, or the history or batch file cannot be read
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Scanner scanner = new Scanner(System.in);
 
-        PatientWaitingQueue queue = new PatientWaitingQueue();
+        String queueLog = optionValue(args, "--queue-log");
+        PatientWaitingQueue queue = queueLog == null
+                ? new PatientWaitingQueue()
+                : PatientWaitingQueue.openDurable(Path.of(queueLog), PatientWaitingQueue.DEFAULT_AGING_INTERVAL);
+        queue.metrics().registerMBean("org.codewithmagret:type=PatientWaitingQueue");
         PatientHistoryList history = new PatientHistoryList();
-        history.seedTenRecords();
+        String historyDir = optionValue(args, "--history-dir");
+        SegmentedPatientHistory historyOnDisk = historyDir == null ? null : SegmentedPatientHistory.open(Path.of(historyDir));
+        if (historyOnDisk != null) {
+            history.keepOnDisk(historyOnDisk);
+        }
+        String historyFile = optionValue(args, "--import-history");
+        String batchFile = optionValue(args, "--batch");
+        String workloadSeed = optionValue(args, "--workload");
+        String workloadDir = optionValue(args, "--write-workload");
+        if (workloadDir != null) {
+            try (queue; historyOnDisk) {
+                writeWorkload(Path.of(workloadDir), workloadSeed == null ? 1 : Long.parseLong(workloadSeed));
+            }
+            return;
+        }
+        if (workloadSeed != null) {
+            WorkloadGenerator generator = new WorkloadGenerator(WorkloadProfile.defaults(Long.parseLong(workloadSeed)));
+            System.out.println("Generated history: " + generator.fillHistory(history));
+            System.out.println("Generated queue: " + generator.driveQueue(queue));
+        } else if (historyFile == null && batchFile == null && history.size() == 0) {
+            history.seedTenRecords();
+        } else if (historyFile != null) {
+            Path file = Path.of(historyFile);
+            BulkLoadProgress result = new HistoryBulkLoader().load(file, HistoryBulkLoader.Format.of(file), history,
+                    progress -> System.err.println("Importing history: " + progress));
+            System.out.println("Imported history: " + result);
+        }
 
-        new ConsoleMenu(scanner, queue, history).start();
+        String servePort = optionValue(args, "--serve");
+        if (servePort != null) {
+            serve(Integer.parseInt(servePort), queue, history, historyOnDisk);
+            return;
+        }
+
+        try (queue; historyOnDisk) {
+            if (batchFile == null) {
+                new ConsoleMenu(scanner, queue, history).start();
+            } else {
+                runBatch(batchFile, queue, history);
+            }
+        }
+    }
+
+    /**
+     * Runs a batch command stream, writing the results to stdout and the summary to stderr.
+     *
+     * @param batchFile the path of the command file, or "-" for stdin
+     * @param queue     the waiting queue the commands run against
+     * @param history   the patient history the commands run against
+     * @throws IOException if the commands cannot be read or the results cannot be written
+     */
+    private static void runBatch(String batchFile, PatientWaitingQueue queue, PatientHistoryList history)
+            throws IOException {
+        BufferedReader in = batchFile.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedReader(Path.of(batchFile), StandardCharsets.UTF_8);
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try (in) {
+            BatchRunner.Summary summary = new BatchRunner(queue, history).run(in, out);
+            System.err.println(summary);
+        }
+    }
+
+    /**
+     * Starts the HTTP API and returns; the server keeps the application running until it is
+     * stopped, when a shutdown hook closes the server, then the history directory and the queue.
+     *
+     * @param port          the port to listen on
+     * @param queue         the waiting queue the API serves
+     * @param history       the patient history the API serves
+     * @param historyOnDisk the on-disk history the patient history is kept in, or null
+     * @throws IOException if the port cannot be bound
+     */
+    private static void serve(int port, PatientWaitingQueue queue, PatientHistoryList history,
+                              SegmentedPatientHistory historyOnDisk) throws IOException {
+        HttpApiServer server = new HttpApiServer(new InetSocketAddress(port), queue, history);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            if (historyOnDisk != null) {
+                try {
+                    historyOnDisk.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close the history directory: " + e.getMessage());
+                }
+            }
+            try {
+                queue.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the queue log: " + e.getMessage());
+            }
+        }));
+        server.start();
+        System.out.println("Serving the HTTP API on port " + server.getPort());
+    }
+
+    /**
+     * Writes the default synthetic workload for a seed as bulk-load and batch command files.
+     *
+     * @param dir  the directory to write to, created if it does not exist
+     * @param seed the seed of the workload
+     * @throws IOException if a file cannot be written
+     */
+    private static void writeWorkload(Path dir, long seed) throws IOException {
+        Files.createDirectories(dir);
+        WorkloadGenerator generator = new WorkloadGenerator(WorkloadProfile.defaults(seed));
+        generator.writeHistory(dir.resolve("history.csv"), HistoryBulkLoader.Format.CSV);
+        generator.writeHistory(dir.resolve("history.ndjson"), HistoryBulkLoader.Format.NDJSON);
+        System.out.println("Wrote workload to " + dir + ": " + generator.writeCommands(dir.resolve("commands.txt")));
+    }
+
+    /**
+     * Returns the value following a command-line option.
+     *
+     * @param args   the command-line arguments
+     * @param option the option name, for example "--queue-log"
+     * @return the value after the option, or null if the option is not present
+     */
+    private static String optionValue(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,43 @@
+package org.codewithmagret.history;
+
+import java.time.Duration;
+
+/**
+ * Record representing the progress of a bulk history import, or its final result.
+ *
+ * @param records    the number of records linked into the history so far
+ * @param skipped    the number of malformed lines skipped so far
+ * @param bytesRead  the number of bytes of the file parsed so far
+ * @param totalBytes the size of the file
+ * @param elapsed    the time since the import started
+ */
+public record BulkLoadProgress(long records, long skipped, long bytesRead, long totalBytes, Duration elapsed) {
+    /**
+     * Returns the import throughput.
+     *
+     * @return the records linked per second, or 0 if no time has passed
+     */
+    public double recordsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0.0 : records * 1_000_000_000.0 / nanos;
+    }
+
+    /**
+     * Returns how much of the file has been parsed.
+     *
+     * @return the percentage of the file parsed, between 0 and 100
+     */
+    public double percentDone() {
+        return totalBytes == 0 ? 100.0 : bytesRead * 100.0 / totalBytes;
+    }
+
+    /**
+     * Override of the toString method for BulkLoadProgress.
+     * @return a one-line summary of the progress
+     */
+    @Override
+    public String toString() {
+        return String.format("%d records (%d skipped), %.1f%% of %d bytes in %.1f s, %.0f records/s",
+                records, skipped, percentDone(), totalBytes, elapsed.toMillis() / 1_000.0, recordsPerSecond());
+    }
+}
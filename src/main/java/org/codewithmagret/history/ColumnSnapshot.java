@@ -0,0 +1,189 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Class representing the rows of a RecordColumns as they were when the snapshot was taken.
+ * The snapshot shares the column arrays instead of copying them; the rows it covers are never
+ * changed afterwards, so it can be read from any thread without locking once safely published.
+ */
+final class ColumnSnapshot {
+    /**
+     * The columns this snapshot was taken from.
+     */
+    final RecordColumns source;
+
+    /**
+     * The number of rows covered by the snapshot.
+     */
+    private final int rows;
+
+    /**
+     * The patient ID column.
+     */
+    private final long[] patientIds;
+
+    /**
+     * The visit date column, as days since 1970-01-01.
+     */
+    private final int[] visitDays;
+
+    /**
+     * The diagnosis column, as dictionary codes.
+     */
+    private final int[] diagnosisCodes;
+
+    /**
+     * The treatment notes column, as references into the notes arena.
+     */
+    private final long[] noteRefs;
+
+    /**
+     * The rows with an irregular visit date, in increasing order.
+     */
+    private final int[] irregularRows;
+
+    /**
+     * The irregular visit dates, at the same indexes as irregularRows.
+     */
+    private final String[] irregularDates;
+
+    /**
+     * The number of irregular visit dates covered by the snapshot.
+     */
+    private final int irregularCount;
+
+    /**
+     * The decoder of diagnosis codes.
+     */
+    private final IntFunction<String> diagnoses;
+
+    /**
+     * The number of diagnosis codes covered by the snapshot.
+     */
+    private final int diagnosisCount;
+
+    /**
+     * The chunks of the notes arena.
+     */
+    private final ByteBuffer[] noteChunks;
+
+    /**
+     * Parameterized constructor for ColumnSnapshot.
+     *
+     * @param source          the columns the snapshot is taken from
+     * @param rows            the number of rows covered
+     * @param patientIds      the patient ID column
+     * @param visitDays       the visit date column
+     * @param diagnosisCodes  the diagnosis column
+     * @param noteRefs        the treatment notes column
+     * @param irregularRows   the rows with an irregular visit date
+     * @param irregularDates  the irregular visit dates
+     * @param irregularCount  the number of irregular visit dates covered
+     * @param diagnoses       the decoder of diagnosis codes
+     * @param diagnosisCount  the number of diagnosis codes covered
+     * @param noteChunks      the chunks of the notes arena
+     */
+    ColumnSnapshot(RecordColumns source, int rows, long[] patientIds, int[] visitDays, int[] diagnosisCodes,
+                   long[] noteRefs, int[] irregularRows, String[] irregularDates, int irregularCount,
+                   IntFunction<String> diagnoses, int diagnosisCount, ByteBuffer[] noteChunks) {
+        this.source = source;
+        this.rows = rows;
+        this.patientIds = patientIds;
+        this.visitDays = visitDays;
+        this.diagnosisCodes = diagnosisCodes;
+        this.noteRefs = noteRefs;
+        this.irregularRows = irregularRows;
+        this.irregularDates = irregularDates;
+        this.irregularCount = irregularCount;
+        this.diagnoses = diagnoses;
+        this.diagnosisCount = diagnosisCount;
+        this.noteChunks = noteChunks;
+    }
+
+    /**
+     * Returns the number of rows covered by the snapshot.
+     *
+     * @return the row count
+     */
+    int rowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns the visit date of a row without creating a record.
+     *
+     * @param row the row number
+     * @return the visit date as days since 1970-01-01, or PatientRecord.UNKNOWN_VISIT_DAY
+     */
+    int visitDay(int row) {
+        return visitDays[row];
+    }
+
+    /**
+     * Returns the patient ID of a row without creating a record.
+     *
+     * @param row the row number
+     * @return the numeric ID of the patient, or 0 if the record is not tied to a patient
+     */
+    long patientId(int row) {
+        return patientIds[row];
+    }
+
+    /**
+     * Returns the diagnosis code of a row without creating a record.
+     *
+     * @param row the row number
+     * @return the code of the diagnosis in the dictionary, or StringDictionary.NULL_CODE
+     */
+    int diagnosisCode(int row) {
+        return diagnosisCodes[row];
+    }
+
+    /**
+     * Returns the number of distinct diagnoses covered by the snapshot.
+     *
+     * @return the number of diagnosis codes
+     */
+    int diagnosisCount() {
+        return diagnosisCount;
+    }
+
+    /**
+     * Returns the diagnosis with a code.
+     *
+     * @param code the diagnosis code
+     * @return the diagnosis, or null for StringDictionary.NULL_CODE
+     */
+    String diagnosis(int code) {
+        return diagnoses.apply(code);
+    }
+
+    /**
+     * Creates a PatientRecord object holding a row. The object is a copy,
+     * so changing it does not change the stored row.
+     *
+     * @param row the row number
+     * @return a new PatientRecord object with the values of the row
+     */
+    PatientRecord record(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("row " + row + " out of bounds for " + rows + " rows");
+        }
+
+        String visitDate = null;
+        int irregular = Arrays.binarySearch(irregularRows, 0, irregularCount, row);
+        if (irregular >= 0) {
+            visitDate = irregularDates[irregular];
+        } else if (visitDays[row] != PatientRecord.UNKNOWN_VISIT_DAY) {
+            visitDate = LocalDate.ofEpochDay(visitDays[row]).toString();
+        }
+        return new PatientRecord(patientIds[row], visitDate, diagnoses.apply(diagnosisCodes[row]),
+                Utf8Arena.read(noteChunks, noteRefs[row]));
+    }
+}
@@ -0,0 +1,426 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.util.LongLongMap;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class computing reports over a patient history: diagnosis frequency, visits per month,
+ * and the intervals between repeat visits of the same patient. Records not tied to a patient
+ * (patientId 0) count towards the diagnoses and months but never towards repeat visits.
+ * <p>
+ * The reports are computed as fork/join jobs that read the record columns directly. Each
+ * leaf task counts a range of rows into its own partial accumulators, using arrays indexed
+ * by diagnosis code and primitive-keyed maps, and partials are merged as the tasks join.
+ * <p>
+ * Results are kept between calls to {@link #refresh()}, which only folds in the records
+ * added since the previous call. Repeat-visit intervals are also updated incrementally
+ * as long as new visits are not dated before the same patient's latest visit; a backdated
+ * visit makes the next refresh recompute the intervals in parallel from the visit date order.
+ * <p>
+ * Each refresh reads the latest published version of the history, so records can be added
+ * while a refresh is running; they are picked up by the next refresh.
+ */
+public final class HistoryAnalytics {
+    /**
+     * The number of rows a leaf task counts without splitting further.
+     */
+    private static final int LEAF_ROWS = 16_384;
+
+    /**
+     * The history the reports are computed over.
+     */
+    private final PatientHistoryList history;
+
+    /**
+     * The pool the fork/join jobs run in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The columns the totals were computed from; a different instance means the history was reset.
+     */
+    private RecordColumns seenColumns;
+
+    /**
+     * The number of rows already folded into the totals.
+     */
+    private int rowsSeen;
+
+    /**
+     * The running totals of diagnoses and months.
+     */
+    private Counts totals = new Counts(0);
+
+    /**
+     * The running intervals between repeat visits, with each patient's latest visit.
+     */
+    private Intervals intervals = new Intervals();
+
+    /**
+     * True if the intervals must be recomputed from the visit date index on the next refresh.
+     */
+    private boolean intervalsStale = true;
+
+    /**
+     * Parameterized constructor for HistoryAnalytics, running jobs in the common pool.
+     *
+     * @param history the history to report on
+     */
+    public HistoryAnalytics(PatientHistoryList history) {
+        this(history, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parameterized constructor for HistoryAnalytics.
+     *
+     * @param history the history to report on
+     * @param pool    the pool to run the fork/join jobs in
+     */
+    public HistoryAnalytics(PatientHistoryList history, ForkJoinPool pool) {
+        this.history = history;
+        this.pool = pool;
+    }
+
+    /**
+     * Folds the records added since the last refresh into the totals and returns the reports.
+     *
+     * @return the reports over every record in the history
+     */
+    public synchronized HistoryReport refresh() {
+        HistoryVersion version = history.version();
+        ColumnSnapshot columns = version.columns;
+        if (columns.source != seenColumns) {
+            seenColumns = columns.source;
+            rowsSeen = 0;
+            totals = new Counts(0);
+            intervalsStale = true;
+        }
+
+        int rows = columns.rowCount();
+        if (rows > rowsSeen) {
+            totals.merge(pool.invoke(new CountTask(columns, rowsSeen, rows, columns.diagnosisCount())));
+            if (!intervalsStale) {
+                foldIntervals(columns, rowsSeen, rows);
+            }
+            rowsSeen = rows;
+        }
+
+        if (intervalsStale) {
+            intervals = pool.invoke(new IntervalTask(columns, version.byDate, 0, version.size()));
+            intervalsStale = false;
+        }
+        return report(columns);
+    }
+
+    /**
+     * Adds the intervals of newly added rows in the order they were added,
+     * giving up and marking the intervals stale at the first backdated visit.
+     *
+     * @param columns the record columns
+     * @param from    the first new row
+     * @param to      the row after the last new row
+     */
+    private void foldIntervals(ColumnSnapshot columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            int day = columns.visitDay(row);
+            long patientId = columns.patientId(row);
+            if (day == PatientRecord.UNKNOWN_VISIT_DAY || patientId == 0) {
+                continue;
+            }
+            long last = intervals.lastDay.getOrDefault(patientId, Long.MIN_VALUE);
+            if (last != Long.MIN_VALUE && day < last) {
+                intervalsStale = true;
+                return;
+            }
+            intervals.visit(patientId, day);
+        }
+    }
+
+    /**
+     * Converts the running totals into a report.
+     *
+     * @param columns the record columns, used to decode diagnoses
+     * @return the report
+     */
+    private HistoryReport report(ColumnSnapshot columns) {
+        Integer[] codes = new Integer[totals.diagnoses.length];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = i;
+        }
+        Arrays.sort(codes, (a, b) -> Long.compare(totals.diagnoses[b], totals.diagnoses[a]));
+        Map<String, Long> diagnosisFrequency = new LinkedHashMap<>();
+        for (int code : codes) {
+            if (totals.diagnoses[code] > 0) {
+                diagnosisFrequency.put(columns.diagnosis(code), totals.diagnoses[code]);
+            }
+        }
+
+        SortedMap<YearMonth, Long> visitsPerMonth = new TreeMap<>();
+        totals.months.forEach((month, count) ->
+                visitsPerMonth.put(YearMonth.of(Math.floorDiv((int) month, 12), Math.floorMod((int) month, 12) + 1), count));
+
+        SortedMap<Integer, Long> repeatIntervalDays = new TreeMap<>();
+        long[] sums = new long[2];
+        intervals.counts.forEach((days, count) -> {
+            repeatIntervalDays.put((int) days, count);
+            sums[0] += days * count;
+            sums[1] += count;
+        });
+        double mean = sums[1] == 0 ? 0.0 : (double) sums[0] / sums[1];
+
+        return new HistoryReport(rowsSeen, diagnosisFrequency, visitsPerMonth, repeatIntervalDays, mean);
+    }
+
+    /**
+     * Returns the month of an epoch day as year * 12 + (month - 1), without allocating a date.
+     *
+     * @param epochDay the day as a count since 1970-01-01
+     * @return the month index of that day
+     */
+    static int monthIndex(int epochDay) {
+        // Civil-from-days conversion on a calendar whose years start in March
+        long z = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097L);
+        long dayOfEra = z - era * 146_097L;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
+
+    /**
+     * Class representing counts of diagnoses and visit months over some rows.
+     */
+    private static final class Counts {
+        /**
+         * The number of rows with each diagnosis, indexed by dictionary code.
+         */
+        long[] diagnoses;
+
+        /**
+         * The number of dated rows in each month, keyed by month index.
+         */
+        final LongLongMap months = new LongLongMap();
+
+        /**
+         * Parameterized constructor for Counts.
+         *
+         * @param diagnosisCount the number of diagnosis codes to count
+         */
+        Counts(int diagnosisCount) {
+            diagnoses = new long[diagnosisCount];
+        }
+
+        /**
+         * Adds another set of counts to this one.
+         *
+         * @param other the counts to add
+         */
+        void merge(Counts other) {
+            if (other.diagnoses.length > diagnoses.length) {
+                diagnoses = Arrays.copyOf(diagnoses, other.diagnoses.length);
+            }
+            for (int i = 0; i < other.diagnoses.length; i++) {
+                diagnoses[i] += other.diagnoses[i];
+            }
+            months.addAll(other.months);
+        }
+    }
+
+    /**
+     * Fork/join task counting diagnoses and visit months over a range of rows.
+     */
+    @SuppressWarnings("serial")
+    private static final class CountTask extends RecursiveTask<Counts> {
+        /**
+         * The record columns.
+         */
+        private final ColumnSnapshot columns;
+
+        /**
+         * The first row of the range.
+         */
+        private final int from;
+
+        /**
+         * The row after the last row of the range.
+         */
+        private final int to;
+
+        /**
+         * The number of diagnosis codes in use when the job started.
+         */
+        private final int diagnosisCount;
+
+        /**
+         * Parameterized constructor for CountTask.
+         *
+         * @param columns        the record columns
+         * @param from           the first row of the range
+         * @param to             the row after the last row of the range
+         * @param diagnosisCount the number of diagnosis codes in use
+         */
+        CountTask(ColumnSnapshot columns, int from, int to, int diagnosisCount) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.diagnosisCount = diagnosisCount;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from > LEAF_ROWS) {
+                int mid = (from + to) >>> 1;
+                CountTask left = new CountTask(columns, from, mid, diagnosisCount);
+                left.fork();
+                Counts right = new CountTask(columns, mid, to, diagnosisCount).compute();
+                Counts counts = left.join();
+                counts.merge(right);
+                return counts;
+            }
+
+            Counts counts = new Counts(diagnosisCount);
+            for (int row = from; row < to; row++) {
+                int code = columns.diagnosisCode(row);
+                if (code >= 0) {
+                    counts.diagnoses[code]++;
+                }
+                int day = columns.visitDay(row);
+                if (day != PatientRecord.UNKNOWN_VISIT_DAY) {
+                    counts.months.addTo(monthIndex(day), 1);
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Class representing repeat-visit intervals over a stretch of visits in date order.
+     */
+    private static final class Intervals {
+        /**
+         * The number of repeat visits by days since the patient's previous visit.
+         */
+        final LongLongMap counts = new LongLongMap();
+
+        /**
+         * The day of each patient's first visit in the stretch.
+         */
+        final LongLongMap firstDay = new LongLongMap();
+
+        /**
+         * The day of each patient's latest visit in the stretch.
+         */
+        final LongLongMap lastDay = new LongLongMap();
+
+        /**
+         * Records a visit that is not earlier than any visit already recorded for the patient.
+         *
+         * @param patientId the numeric ID of the patient
+         * @param day       the visit date as an epoch day
+         */
+        void visit(long patientId, int day) {
+            long last = lastDay.getOrDefault(patientId, Long.MIN_VALUE);
+            if (last == Long.MIN_VALUE) {
+                firstDay.put(patientId, day);
+            } else {
+                counts.addTo(day - last, 1);
+            }
+            lastDay.put(patientId, day);
+        }
+
+        /**
+         * Appends the intervals of the stretch of visits right after this one,
+         * linking each patient's last visit here to their first visit there.
+         *
+         * @param later the intervals of the following stretch
+         */
+        void append(Intervals later) {
+            later.firstDay.forEach((patientId, first) -> {
+                long last = lastDay.getOrDefault(patientId, Long.MIN_VALUE);
+                if (last == Long.MIN_VALUE) {
+                    firstDay.put(patientId, first);
+                } else {
+                    counts.addTo(first - last, 1);
+                }
+            });
+            later.lastDay.forEach(lastDay::put);
+            counts.addAll(later.counts);
+        }
+    }
+
+    /**
+     * Fork/join task computing repeat-visit intervals over a range of the visit date order.
+     */
+    @SuppressWarnings("serial")
+    private static final class IntervalTask extends RecursiveTask<Intervals> {
+        /**
+         * The record columns.
+         */
+        private final ColumnSnapshot columns;
+
+        /**
+         * The rows sorted by visit date.
+         */
+        private final RowSequence byDate;
+
+        /**
+         * The first position of the range in the date order.
+         */
+        private final int from;
+
+        /**
+         * The position after the last position of the range.
+         */
+        private final int to;
+
+        /**
+         * Parameterized constructor for IntervalTask.
+         *
+         * @param columns   the record columns
+         * @param byDate    the rows sorted by visit date
+         * @param from      the first position of the range
+         * @param to        the position after the last position of the range
+         */
+        IntervalTask(ColumnSnapshot columns, RowSequence byDate, int from, int to) {
+            this.columns = columns;
+            this.byDate = byDate;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Intervals compute() {
+            if (to - from > LEAF_ROWS) {
+                int mid = (from + to) >>> 1;
+                IntervalTask earlier = new IntervalTask(columns, byDate, from, mid);
+                earlier.fork();
+                Intervals later = new IntervalTask(columns, byDate, mid, to).compute();
+                Intervals intervals = earlier.join();
+                intervals.append(later);
+                return intervals;
+            }
+
+            Intervals intervals = new Intervals();
+            byDate.forEach(from, to, row -> {
+                int day = columns.visitDay(row);
+                long patientId = columns.patientId(row);
+                if (day != PatientRecord.UNKNOWN_VISIT_DAY && patientId != 0) {
+                    intervals.visit(patientId, day);
+                }
+            });
+            return intervals;
+        }
+    }
+}
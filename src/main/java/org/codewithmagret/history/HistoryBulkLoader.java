@@ -0,0 +1,385 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.JsonModelCodec;
+import org.codewithmagret.models.PatientIdAllocator;
+import org.codewithmagret.models.PatientRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that imports patient history records from a CSV or NDJSON file in bulk.
+ * <p>
+ * The calling thread reads the file through a FileChannel into a reusable buffer and cuts it
+ * into chunks of whole lines. Worker threads parse the chunks into records, and the calling
+ * thread links the batches into the history in file order with {@link PatientHistoryList#addAll(List)},
+ * so the records keep the order of their lines. addAll keeps the visit date index up to date,
+ * joining a batch in one step when the file is already sorted by visit date. Only a fixed number of chunks are in flight at once,
+ * so memory use does not depend on the size of the file.
+ * <p>
+ * CSV lines hold {@code patientId,visitDate,diagnosis,treatmentNotes}; fields may be quoted with
+ * double quotes, and a header line starting with {@code patientId} is ignored. NDJSON lines hold
+ * one flat object with the same keys. A patient ID may be numeric or in the "P123" form.
+ * Lines that cannot be parsed are counted as skipped.
+ */
+public final class HistoryBulkLoader {
+    /**
+     * The file formats the loader reads.
+     */
+    public enum Format {
+        /** Comma-separated values, one record per line. */
+        CSV,
+        /** Newline-delimited JSON, one flat object per line. */
+        NDJSON;
+
+        /**
+         * Returns the format matching a file's extension.
+         *
+         * @param file the file to import
+         * @return NDJSON for .ndjson, .jsonl and .json files, CSV otherwise
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+        }
+    }
+
+    /**
+     * Callback receiving progress reports during an import.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Receives a progress report.
+         *
+         * @param progress the progress so far
+         */
+        void onProgress(BulkLoadProgress progress);
+    }
+
+    /**
+     * The size of the read buffer, and so the usual size of a chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The least time between two progress reports.
+     */
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * The number of parser threads.
+     */
+    private final int workers;
+
+    /**
+     * Default constructor for HistoryBulkLoader, using one parser thread per spare processor.
+     */
+    public HistoryBulkLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Parameterized constructor for HistoryBulkLoader.
+     *
+     * @param workers the number of parser threads
+     */
+    public HistoryBulkLoader(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Imports every record of a file into the end of a history list.
+     * The history must not be changed by other threads during the import, though it can be read.
+     *
+     * @param file     the file to import
+     * @param format   the format of the file
+     * @param target   the history to append the records to
+     * @param listener receives progress reports about once a second and when the import ends, or null
+     * @return the final progress of the import
+     * @throws IOException if the file cannot be read
+     */
+    public BulkLoadProgress load(Path file, Format format, PatientHistoryList target, ProgressListener listener)
+            throws IOException {
+        long start = System.nanoTime();
+        Import state = new Import(target, listener, start);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ExecutorService parsers = Executors.newFixedThreadPool(workers, runnable -> {
+                 Thread thread = new Thread(runnable, "history-import");
+                 thread.setDaemon(true);
+                 return thread;
+             })) {
+            state.totalBytes = channel.size();
+            ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            int scanned = 0;
+            boolean inQuotes = false;
+
+            while (true) {
+                int read = channel.read(buffer);
+                byte[] bytes = buffer.array();
+                int limit = buffer.position();
+                if (read < 0 && limit == 0) {
+                    break;
+                }
+
+                // Find the end of the last whole line; CSV line breaks inside quotes do not count
+                int cut = -1;
+                for (int i = scanned; i < limit; i++) {
+                    if (bytes[i] == '"' && format == Format.CSV) {
+                        inQuotes = !inQuotes;
+                    } else if (bytes[i] == '\n' && !inQuotes) {
+                        cut = i + 1;
+                    }
+                }
+                scanned = limit;
+                if (read < 0) {
+                    cut = limit;
+                }
+                if (cut < 0) {
+                    if (!buffer.hasRemaining()) {
+                        // A single line is longer than the buffer
+                        buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                    }
+                    continue;
+                }
+
+                byte[] chunk = Arrays.copyOf(bytes, cut);
+                inFlight.add(parsers.submit(() -> parse(chunk, format)));
+                System.arraycopy(bytes, cut, bytes, 0, limit - cut);
+                buffer.position(limit - cut);
+                scanned = limit - cut;
+
+                if (inFlight.size() >= workers * 2) {
+                    state.link(await(inFlight.poll()), false);
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                state.link(await(inFlight.poll()), false);
+            }
+        }
+        return state.report(true);
+    }
+
+    /**
+     * Waits for a chunk to be parsed.
+     *
+     * @param parsed the pending parse of the chunk
+     * @return the parsed batch
+     * @throws IOException if parsing failed or the wait was interrupted
+     */
+    private static Batch await(Future<Batch> parsed) throws IOException {
+        try {
+            return parsed.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Parsing failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * Parses a chunk of whole lines into a batch of records, in line order.
+     *
+     * @param chunk  the UTF-8 bytes of the lines
+     * @param format the format of the lines
+     * @return the parsed batch
+     */
+    private static Batch parse(byte[] chunk, Format format) {
+        List<PatientRecord> records = new ArrayList<>();
+        int skipped = 0;
+        int lineStart = 0;
+        boolean inQuotes = false;
+        for (int i = 0; i <= chunk.length; i++) {
+            if (i < chunk.length && chunk[i] == '"' && format == Format.CSV) {
+                inQuotes = !inQuotes;
+            }
+            if (i < chunk.length && (chunk[i] != '\n' || inQuotes)) {
+                continue;
+            }
+
+            int lineEnd = i > lineStart && chunk[i - 1] == '\r' ? i - 1 : i;
+            if (lineEnd > lineStart) {
+                String line = new String(chunk, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                try {
+                    PatientRecord record = format == Format.CSV ? parseCsv(line) : JsonModelCodec.recordFromJson(line);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+            lineStart = i + 1;
+        }
+        return new Batch(records, skipped, chunk.length);
+    }
+
+    /**
+     * Parses a CSV line.
+     *
+     * @param line the line, without its line break
+     * @return the record, or null if the line is a header
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    static PatientRecord parseCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString());
+
+        if (fields.size() < 2 || fields.size() > 4) {
+            throw new IllegalArgumentException("Expected 2 to 4 fields but found " + fields.size());
+        }
+        if (fields.get(0).trim().equalsIgnoreCase("patientId")) {
+            return null;
+        }
+        return new PatientRecord(PatientIdAllocator.parseLenient(fields.get(0).trim()), emptyToNull(fields.get(1).trim()),
+                fields.size() > 2 ? emptyToNull(fields.get(2)) : null,
+                fields.size() > 3 ? emptyToNull(fields.get(3)) : null);
+    }
+
+    /**
+     * Returns null for an empty string.
+     *
+     * @param value the string
+     * @return the string, or null if it is empty
+     */
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Record representing the records parsed from one chunk.
+     *
+     * @param records the parsed records, in line order
+     * @param skipped the number of malformed lines
+     * @param bytes   the size of the chunk
+     */
+    private record Batch(List<PatientRecord> records, int skipped, int bytes) {}
+
+    /**
+     * Class holding the running totals of an import and linking batches into the history.
+     */
+    private static final class Import {
+        /**
+         * The history the records are appended to.
+         */
+        private final PatientHistoryList target;
+
+        /**
+         * The listener receiving progress reports, or null.
+         */
+        private final ProgressListener listener;
+
+        /**
+         * The time the import started, from System.nanoTime.
+         */
+        private final long start;
+
+        /**
+         * The time of the last progress report, from System.nanoTime.
+         */
+        private long lastReport;
+
+        /**
+         * The size of the file.
+         */
+        long totalBytes;
+
+        /**
+         * The running totals of records, skipped lines and bytes.
+         */
+        private long records, skipped, bytesRead;
+
+        /**
+         * Parameterized constructor for Import.
+         *
+         * @param target   the history the records are appended to
+         * @param listener the listener receiving progress reports, or null
+         * @param start    the time the import started
+         */
+        Import(PatientHistoryList target, ProgressListener listener, long start) {
+            this.target = target;
+            this.listener = listener;
+            this.start = start;
+            this.lastReport = start;
+        }
+
+        /**
+         * Links a parsed batch into the history and reports progress if it is due.
+         *
+         * @param batch the parsed batch
+         * @param force true to report even if a report was made less than a second ago
+         */
+        void link(Batch batch, boolean force) {
+            target.addAll(batch.records());
+            records += batch.records().size();
+            skipped += batch.skipped();
+            bytesRead += batch.bytes();
+            report(force);
+        }
+
+        /**
+         * Returns the progress so far, passing it to the listener if a report is due.
+         *
+         * @param force true to report even if a report was made less than a second ago
+         * @return the progress so far
+         */
+        BulkLoadProgress report(boolean force) {
+            long now = System.nanoTime();
+            BulkLoadProgress progress = new BulkLoadProgress(records, skipped, bytesRead, totalBytes,
+                    Duration.ofNanos(now - start));
+            if (listener != null && (force || now - lastReport >= PROGRESS_INTERVAL_NANOS)) {
+                lastReport = now;
+                listener.onProgress(progress);
+            }
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+
+import java.time.LocalDate;
+
+/**
+ * Class representing one session's position in a patient history list.
+ * <p>
+ * A cursor reads a fixed version of the history, so records added by other sessions never
+ * move it or change what it sees, and reading never takes a lock. Calling {@link #refresh()}
+ * moves the cursor to the latest version while keeping it on the same record. Each session
+ * should open its own cursor; a cursor itself is not thread-safe.
+ */
+public final class HistoryCursor {
+    /**
+     * The history the cursor browses.
+     */
+    private final PatientHistoryList history;
+
+    /**
+     * The version of the history the cursor reads.
+     */
+    private HistoryVersion version;
+
+    /**
+     * The position of the current record in list order, or -1 if the version is empty.
+     */
+    private int position;
+
+    /**
+     * Parameterized constructor for HistoryCursor, starting at the newest record.
+     *
+     * @param history the history to browse
+     */
+    HistoryCursor(PatientHistoryList history) {
+        this.history = history;
+        this.version = history.version();
+        this.position = version.size() - 1;
+    }
+
+    /**
+     * Moves the cursor to the latest version of the history, staying on the same record.
+     *
+     * @return true if a newer version was found, false if the cursor was already up to date
+     */
+    public boolean refresh() {
+        HistoryVersion latest = history.version();
+        if (latest == version) {
+            return false;
+        }
+
+        if (latest.columns.source != version.columns.source || position < 0) {
+            // The history was started over, or the cursor had nothing to stay on
+            position = latest.size() - 1;
+        } else {
+            position = latest.positionOfRow(version.order.get(position));
+        }
+        version = latest;
+        return true;
+    }
+
+    /**
+     * Returns the number of records in the version the cursor reads.
+     *
+     * @return the size of the history as the cursor sees it
+     */
+    public int size() {
+        return version.size();
+    }
+
+    /**
+     * Returns the position of the current record.
+     *
+     * @return the position (0-based index, 0 is the oldest), or -1 if the history is empty
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Retrieves the record at the cursor.
+     *
+     * @return the current PatientRecord object, or null if the history is empty
+     */
+    public PatientRecord current() {
+        return position < 0 ? null : version.columns.record(version.order.get(position));
+    }
+
+    /**
+     * Moves the cursor to the newest record.
+     *
+     * @return the newest PatientRecord object, or null if the history is empty
+     */
+    public PatientRecord newest() {
+        position = version.size() - 1;
+        return current();
+    }
+
+    /**
+     * Moves the cursor to the oldest record.
+     *
+     * @return the oldest PatientRecord object, or null if the history is empty
+     */
+    public PatientRecord oldest() {
+        position = version.size() == 0 ? -1 : 0;
+        return current();
+    }
+
+    /**
+     * Moves the cursor to the next (newer) record.
+     *
+     * @return the next PatientRecord object, or the current record if it is the newest,
+     *          or null if the history is empty
+     */
+    public PatientRecord next() {
+        if (position >= 0 && position < version.size() - 1) {
+            position++;
+        }
+        return current();
+    }
+
+    /**
+     * Moves the cursor to the previous (older) record.
+     *
+     * @return the previous PatientRecord object, or the current record if it is the oldest,
+     *          or null if the history is empty
+     */
+    public PatientRecord previous() {
+        if (position > 0) {
+            position--;
+        }
+        return current();
+    }
+
+    /**
+     * Moves the cursor to a position.
+     *
+     * @param location the position of the record (0-based index, 0 is the oldest)
+     * @return the PatientRecord object at that position
+     * @throws IndexOutOfBoundsException if the position is out of bounds
+     */
+    public PatientRecord moveTo(int location) {
+        if (location < 0 || location >= version.size()) {
+            throw new IndexOutOfBoundsException("location " + location + " out of bounds for size " + version.size());
+        }
+        position = location;
+        return current();
+    }
+
+    /**
+     * Moves the cursor to the first record with a visit date on or after a date,
+     * taking the record added first if several share that visit date.
+     * Finding the record and its list position takes O(log n).
+     *
+     * @param date the visit date to jump to
+     * @return the PatientRecord object moved to,
+     *          or null if no record was visited on or after that date (the cursor does not move)
+     */
+    public PatientRecord firstOnOrAfter(LocalDate date) {
+        int rank = version.firstOnOrAfter((int) date.toEpochDay());
+        if (rank == version.size()) {
+            return null;
+        }
+        int row = version.byDate.get(rank);
+        position = version.positionOfRow(row);
+        return version.columns.record(row);
+    }
+
+    /**
+     * Checks if the cursor is at the newest record.
+     *
+     * @return true if the cursor is at the newest record, false otherwise
+     */
+    public boolean isAtNewest() {
+        return position >= 0 && position == version.size() - 1;
+    }
+
+    /**
+     * Checks if the cursor is at the oldest record.
+     *
+     * @return true if the cursor is at the oldest record, false otherwise
+     */
+    public boolean isAtOldest() {
+        return position == 0;
+    }
+}
@@ -0,0 +1,33 @@
+package org.codewithmagret.history;
+
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Record representing the aggregated reports over a patient history.
+ *
+ * @param records                 the number of records the report covers
+ * @param diagnosisFrequency      the number of records with each diagnosis, most frequent first
+ * @param visitsPerMonth          the number of visits in each month with at least one visit
+ * @param repeatIntervalDays      the number of repeat visits by the days since the same patient's previous visit
+ * @param meanRepeatIntervalDays  the mean days between consecutive visits of the same patient, or 0 if there are none
+ */
+public record HistoryReport(long records,
+                            Map<String, Long> diagnosisFrequency,
+                            SortedMap<YearMonth, Long> visitsPerMonth,
+                            SortedMap<Integer, Long> repeatIntervalDays,
+                            double meanRepeatIntervalDays) {
+    /**
+     * Override of the toString method for HistoryReport.
+     * @return a multi-line summary of the report
+     */
+    @Override
+    public String toString() {
+        long repeatVisits = repeatIntervalDays.values().stream().mapToLong(Long::longValue).sum();
+        return "History report (" + records + " records)\n" +
+                "  Diagnosis frequency: " + diagnosisFrequency + "\n" +
+                "  Visits per month:    " + visitsPerMonth + "\n" +
+                String.format("  Repeat visits:       %d (mean interval %.1f days)", repeatVisits, meanRepeatIntervalDays);
+    }
+}
@@ -0,0 +1,76 @@
+package org.codewithmagret.history;
+
+/**
+ * Class representing one immutable version of a history list: the rows in list order,
+ * the rows in visit date order, and the record columns they refer to. A new version is
+ * published on every add, and readers holding an older version keep a consistent view.
+ */
+final class HistoryVersion {
+    /**
+     * The rows in list order, oldest first, indexed so the position of a row can be found.
+     */
+    final RowSequence order;
+
+    /**
+     * The rows sorted by visit date; rows with the same date keep the order they were added in,
+     * and rows without a valid date come first.
+     */
+    final RowSequence byDate;
+
+    /**
+     * The record columns covering every row of the version.
+     */
+    final ColumnSnapshot columns;
+
+    /**
+     * Parameterized constructor for HistoryVersion.
+     *
+     * @param order   the rows in list order
+     * @param byDate  the rows sorted by visit date
+     * @param columns the record columns covering every row
+     */
+    HistoryVersion(RowSequence order, RowSequence byDate, ColumnSnapshot columns) {
+        this.order = order;
+        this.byDate = byDate;
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the number of records in the version.
+     *
+     * @return the size of the version
+     */
+    int size() {
+        return order.size();
+    }
+
+    /**
+     * Returns the position in the date order of the first row visited on or after a day.
+     *
+     * @param epochDay the day as a count since 1970-01-01
+     * @return the position of that row, or size() if there is none
+     */
+    int firstOnOrAfter(int epochDay) {
+        return byDate.firstRankWhere(row -> columns.visitDay(row) >= epochDay);
+    }
+
+    /**
+     * Returns the position in the date order of the first row visited after a day.
+     *
+     * @param epochDay the day as a count since 1970-01-01
+     * @return the position of that row, or size() if there is none
+     */
+    int firstAfter(int epochDay) {
+        return byDate.firstRankWhere(row -> columns.visitDay(row) > epochDay);
+    }
+
+    /**
+     * Returns the list position of a row. Takes O(log n).
+     *
+     * @param row the row to find
+     * @return the position of the row in list order
+     */
+    int positionOfRow(int row) {
+        return order.rankOf(row);
+    }
+}
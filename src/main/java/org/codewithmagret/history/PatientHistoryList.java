@@ -2,45 +2,122 @@ package org.codewithmagret.history;
 
 import org.codewithmagret.models.PatientRecord;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Class representing a list of patient history records. This class can be used to store and manage
  * the history of patients, including their visits, treatments, and other relevant information.
+ * The records are kept in list order from head (oldest) to tail (newest).
+ * <p>
+ * The records themselves are stored column by column in RecordColumns and addressed by row
+ * number; the list keeps no per-record objects of its own. A PatientRecord returned by this
+ * class is created on request from its row and is a copy: changing it does not change the history.
+ * <p>
+ * Every add publishes a new immutable HistoryVersion holding the rows in list order and in
+ * visit date order as path-copying RowSequence trees, so a lookup at any index, a date range
+ * query or a jump to a date finds its start in O(log n). Lookups, date queries, iterators,
+ * streams and {@link HistoryCursor}s all read a published version without locking, so they
+ * can run while another thread adds records and always see a consistent history. Each session
+ * should browse with its own cursor from {@link #openCursor()}; the navigate methods share the
+ * single current position. Adds, the navigate methods and the text search must be
+ * serialized by the caller, as PatientHistoryStore does.
+ * <p>
+ * A list can be kept on disk with {@link #keepOnDisk(SegmentedPatientHistory)}: every record
+ * added from then on is also appended to the on-disk history, so the list survives restarts.
+ * <p>
+ * A TextIndex over the diagnosis and treatment notes of every record is updated on each add,
+ * so searching for a word or a word prefix only touches the records that match.
+ * <p>
+ * The records can be traversed oldest to newest with {@link #iterator()}, newest to oldest with
+ * {@link #descendingIterator()}, or with a stream. The spliterator splits by position,
+ * so {@link #parallelStream()} spreads a large history across cores.
  */
-public class PatientHistoryList {
-    public DoubleNode head;
-    public DoubleNode tail;
-    public int size;
-    public DoubleNode current;
+public class PatientHistoryList implements Iterable<PatientRecord> {
+    /**
+     * The number of records loaded from disk per batch.
+     */
+    private static final int LOAD_BATCH = 4096;
+
+    /**
+     * The position of the record the navigate methods are on, or -1 if the list is empty.
+     * An insert at or before this position moves it along, so it stays on the same record.
+     */
+    private int currentPosition = -1;
+
+    /**
+     * Columnar storage of the records, addressed by row.
+     */
+    private RecordColumns columns;
+
+    /**
+     * The latest published version of the list, read without locking.
+     */
+    private volatile HistoryVersion version;
+
+    /**
+     * Inverted index over the words of each row's diagnosis and treatment notes.
+     */
+    private TextIndex textIndex = new TextIndex();
+
+    /**
+     * The on-disk history every added record is appended to, or null if the list is only kept in memory.
+     */
+    private SegmentedPatientHistory disk;
 
     /**
      * Default constructor for PatientHistoryList.
      */
-    public PatientHistoryList() {}
+    public PatientHistoryList() {
+        this(new RecordColumns());
+    }
+
+    /**
+     * Parameterized constructor for PatientHistoryList, storing its records in the given columns.
+     *
+     * @param columns the empty columns to store the records in
+     */
+    PatientHistoryList(RecordColumns columns) {
+        this.columns = columns;
+        this.version = new HistoryVersion(RowSequence.EMPTY_INDEXED, RowSequence.EMPTY, columns.snapshot());
+    }
 
     /**
      * Returns the number of patient records in the history list.
      * @return the size of the patient history list
      */
     public int size() {
-        return size;
+        return version.size();
     }
 
     /**
-     * Creates a new double linked list with a single node containing the specified value.
+     * Starts the history list over with a single record, dropping any records it held.
      *
-     * @param patientRecord the PatientRecord object to be stored in the first node of the linked list
-     * @return the head of the newly created linked list
+     * @param patientRecord the PatientRecord object to be the only record of the list
+     * @throws IllegalStateException if the list is kept on disk and already holds records
      */
     public void createLinkedList (PatientRecord patientRecord) {
-        DoubleNode node = new DoubleNode();
-        node.patientRecord = patientRecord;
-        node.next = null;
-        node.previous = null;
+        if (disk != null && size() > 0) {
+            throw new IllegalStateException("A history kept on disk cannot be started over");
+        }
+        persist(patientRecord);
+        columns = columns.emptyCopy();
+        textIndex = new TextIndex();
+        int row = store(patientRecord);
+
+        currentPosition = 0;
 
-        head = node;
-        tail = node;
-        current = node;
-        size = 1;
+        publish(RowSequence.EMPTY_INDEXED, RowSequence.EMPTY, row, 0);
     }
 
     /**
@@ -48,88 +125,313 @@ public class PatientHistoryList {
      *
      * @param patientRecord the PatientRecord object to be added to the history list
      * @param location the position at which to insert the patient record (0-based index)
+     * @throws IllegalStateException if the list is kept on disk and the location is before the tail
+     * @throws UncheckedIOException  if the list is kept on disk and the record cannot be appended to it
      */
     public void addToPatientRecord(PatientRecord patientRecord, int location) {
         if (patientRecord == null) {
             throw new IllegalArgumentException("patientRecord must not be null");
         }
+        int size = size();
+        if (disk != null && location < size) {
+            throw new IllegalStateException("A history kept on disk only accepts records at the tail");
+        }
 
-        if (head == null) {
+        if (size == 0) {
             createLinkedList(patientRecord);
             return;
         }
 
-        DoubleNode node = new DoubleNode();
-        node.patientRecord = patientRecord;
+        // A location before the head inserts at the head, and one past the tail appends at the tail
+        HistoryVersion previous = version;
+        int position = Math.max(0, Math.min(location, size));
+        persist(patientRecord);
+        int row = store(patientRecord);
+        if (position <= currentPosition) {
+            currentPosition++;
+        }
 
-        // If location is less than or equal to 0, insert at the head of the list
-        if (location <= 0) {
-            node.next = head;
-            node.previous = null;
+        publish(previous.order, previous.byDate, row, position);
+    }
 
-            head.previous = node;
-            head = node;
+    /**
+     * Appends a batch of patient records to the end of the history list, in order.
+     * The batch is joined to the list order in one step, and a single new version is published
+     * for the whole batch, so no per-record publishing is done.
+     * If the batch is sorted by visit date and starts on or after the newest visit date already
+     * in the list, it is joined to the visit date order in one step as well.
+     *
+     * @param patientRecords the PatientRecord objects to append, oldest first
+     * @throws UncheckedIOException if the list is kept on disk and a record cannot be appended to it;
+     *                              the records appended to disk before it are still added to the list,
+     *                              so the list and the history on disk hold the same records
+     */
+    public void addAll(List<PatientRecord> patientRecords) {
+        for (PatientRecord patientRecord : patientRecords) {
+            if (patientRecord == null) {
+                throw new IllegalArgumentException("patientRecords must not contain null");
+            }
+        }
+        int persisted = 0;
+        try {
+            for (PatientRecord patientRecord : patientRecords) {
+                persist(patientRecord);
+                persisted++;
+            }
+        } finally {
+            link(patientRecords.subList(0, persisted));
+        }
+    }
 
-            size++;
-            return;
+    /**
+     * Loads the records of an on-disk history into this empty list, then appends every record added
+     * to the list from then on to the on-disk history as well, so the list survives restarts.
+     * The on-disk history only grows at its end, so from then on records can only be added at the
+     * tail of the list. The caller still owns the on-disk history and closes it.
+     *
+     * @param disk the on-disk history to load and keep up to date
+     * @throws IllegalStateException if the list already holds records or is already kept on disk
+     */
+    public void keepOnDisk(SegmentedPatientHistory disk) {
+        if (size() > 0 || this.disk != null) {
+            throw new IllegalStateException("Only an empty list in memory can be kept on disk");
+        }
+        if (disk.size() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The history on disk holds too many records to load");
         }
 
-        // If location is greater than or equal to the size of the list, insert at the tail of the list
-        if (location >= size) {
-            node.next = null;
-            node.previous = tail;
+        // Walk the segments in order rather than looking every position up
+        List<PatientRecord> batch = new ArrayList<>(LOAD_BATCH);
+        for (PatientRecord patientRecord = disk.navigateToOldestRecord(); batch.size() + size() < disk.size();
+             patientRecord = disk.navigateToNextRecord()) {
+            batch.add(patientRecord);
+            if (batch.size() == LOAD_BATCH) {
+                addAll(batch);
+                batch.clear();
+            }
+        }
+        addAll(batch);
+        this.disk = disk;
+    }
+
+    /**
+     * Returns the patient record at a specific location in the history list.
+     *
+     * @param location the position of the record (0-based index, 0 is the oldest)
+     * @return the PatientRecord object at that location
+     * @throws IndexOutOfBoundsException if the location is out of bounds
+     */
+    public PatientRecord getRecord(int location) {
+        HistoryVersion snapshot = version;
+        return snapshot.columns.record(snapshot.order.get(location));
+    }
+
+    /**
+     * Navigates to the patient record at a specific location in the history list.
+     *
+     * @param location the position of the record (0-based index, 0 is the oldest)
+     * @return the PatientRecord object at that location
+     * @throws IndexOutOfBoundsException if the location is out of bounds
+     */
+    public PatientRecord navigateToRecord(int location) {
+        HistoryVersion snapshot = version;
+        PatientRecord record = snapshot.columns.record(snapshot.order.get(location));
+        currentPosition = location;
+        return record;
+    }
 
-            tail.next = node;
-            tail = node;
+    /**
+     * Opens a cursor for one session to browse the history, starting at the newest record.
+     * The cursor has its own position and reads without locking while records are added.
+     *
+     * @return a new HistoryCursor
+     */
+    public HistoryCursor openCursor() {
+        return new HistoryCursor(this);
+    }
 
-            size++;
-            return;
+    /**
+     * Returns the patient records with a visit date in a range, sorted by visit date.
+     * Finding the first record takes O(log n), after which each record in the range is read in turn.
+     *
+     * @param from the first visit date to include
+     * @param to   the last visit date to include
+     * @return the records visited from {@code from} to {@code to} inclusive, oldest visit first
+     */
+    public List<PatientRecord> recordsBetween(LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        List<PatientRecord> records = new ArrayList<>();
+        if (fromDay > toDay) {
+            return records;
         }
 
-        // Insert the new node at the specified location in the middle of the list
-        DoubleNode tempNode = head;
-        int index = 0;
-        // Takes the node to its position before the location where the new node will be inserted
-        while (index < location - 1) {
-            tempNode = tempNode.next;
-            index++;
+        HistoryVersion snapshot = version;
+        snapshot.byDate.forEach(snapshot.firstOnOrAfter(fromDay), snapshot.firstAfter(toDay),
+                row -> records.add(snapshot.columns.record(row)));
+        return records;
+    }
+
+    /**
+     * Navigates to the first patient record with a visit date on or after a date,
+     * taking the record added first if several share that visit date.
+     *
+     * @param date the visit date to jump to
+     * @return the PatientRecord object navigated to,
+     *          or null if no record was visited on or after that date (the position is not changed)
+     */
+    public PatientRecord navigateToFirstOnOrAfter(LocalDate date) {
+        HistoryVersion snapshot = version;
+        int rank = snapshot.firstOnOrAfter((int) date.toEpochDay());
+        if (rank == snapshot.size()) {
+            return null;
         }
-        DoubleNode nextNode = tempNode.next;
+        int row = snapshot.byDate.get(rank);
+        currentPosition = snapshot.positionOfRow(row);
+        return snapshot.columns.record(row);
+    }
 
-        node.previous = tempNode;
-        node.next = nextNode;
+    /**
+     * Returns the patient records whose diagnosis or treatment notes contain a word.
+     * Matching ignores case and punctuation.
+     *
+     * @param term the word to search for
+     * @return the matching records, in the order they were added to the history
+     */
+    public List<PatientRecord> searchTerm(String term) {
+        return recordsAt(textIndex.rowsWithTerm(term));
+    }
 
-        tempNode.next = node;
-        nextNode.previous = node;
+    /**
+     * Returns the patient records whose diagnosis or treatment notes contain a word starting with a prefix.
+     * Matching ignores case and punctuation.
+     *
+     * @param prefix the start of the words to search for
+     * @return the matching records, in the order they were added to the history
+     */
+    public List<PatientRecord> searchPrefix(String prefix) {
+        return recordsAt(textIndex.rowsWithPrefix(prefix));
+    }
 
-        size++;
+    /**
+     * Returns the latest published version of the list.
+     *
+     * @return the current HistoryVersion
+     */
+    HistoryVersion version() {
+        return version;
     }
 
     /**
-     * Displays the patient records in the history list from head to tail.
+     * Stores a batch of records, already appended to the on-disk history if the list is kept on disk,
+     * and publishes them at the end of the list as one new version.
      *
-     * @return a string representation of the patient history list,
-     *          showing the records from oldest to newest
+     * @param patientRecords the PatientRecord objects to link, oldest first
      */
-    public String patientRecordOldestToNewest () {
-        StringBuilder sb = new StringBuilder();
+    private void link(List<PatientRecord> patientRecords) {
+        if (patientRecords.isEmpty()) {
+            return;
+        }
 
-        if (head == null) {
-            sb.append("(Empty PatientRecord)\n");
-            return sb.toString();
+        HistoryVersion previous = version;
+        int[] rows = new int[patientRecords.size()];
+        boolean sortedByDate = true;
+        int lastDay = previous.size() == 0 ? Integer.MIN_VALUE
+                : previous.columns.visitDay(previous.byDate.get(previous.size() - 1));
+        for (int i = 0; i < rows.length; i++) {
+            PatientRecord patientRecord = patientRecords.get(i);
+            rows[i] = store(patientRecord);
+
+            int day = patientRecord.getVisitEpochDay();
+            sortedByDate &= day >= lastDay;
+            lastDay = day;
         }
 
-        DoubleNode tempNode = head;
-        for (int i = 0; i < size; i++){
-            sb.append(tempNode.patientRecord);
-            if (i != size - 1){
-                sb.append("\n");
+        ColumnSnapshot snapshot = columns.snapshot();
+        RowSequence byDate = previous.byDate;
+        if (sortedByDate) {
+            byDate = byDate.appendAll(rows, rows.length);
+        } else {
+            for (int row : rows) {
+                int day = snapshot.visitDay(row);
+                byDate = byDate.insert(byDate.firstRankWhere(other -> snapshot.visitDay(other) > day), row);
             }
-            tempNode = tempNode.next;
         }
-        sb.append("\n");
+        if (currentPosition < 0) {
+            currentPosition = 0;
+        }
+        version = new HistoryVersion(previous.order.appendAll(rows, rows.length), byDate, snapshot);
+    }
 
-        return sb.toString();
+    /**
+     * Appends a record to the on-disk history, if the list is kept on disk.
+     *
+     * @param patientRecord the PatientRecord object being added
+     * @throws UncheckedIOException if the record cannot be appended
+     */
+    private void persist(PatientRecord patientRecord) {
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.append(patientRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the history on disk", e);
+        }
+    }
+
+    /**
+     * Stores a record in the columns and adds its words to the text index.
+     *
+     * @param patientRecord the PatientRecord object to store
+     * @return the row of the stored record
+     */
+    private int store(PatientRecord patientRecord) {
+        int row = columns.append(patientRecord);
+        textIndex.add(row, patientRecord.getDiagnosis());
+        textIndex.add(row, patientRecord.getTreatmentNotes());
+        return row;
+    }
+
+    /**
+     * Publishes a new version with a row added to the previous version's sequences.
+     * In date order the row goes after every row with the same visit date.
+     *
+     * @param order    the rows in list order before the add
+     * @param byDate   the rows in date order before the add
+     * @param row      the new row
+     * @param position the position in the list the row is inserted at
+     */
+    private void publish(RowSequence order, RowSequence byDate, int row, int position) {
+        ColumnSnapshot snapshot = columns.snapshot();
+        int day = snapshot.visitDay(row);
+        int dateRank = byDate.firstRankWhere(other -> snapshot.visitDay(other) > day);
+        version = new HistoryVersion(order.insert(position, row), byDate.insert(dateRank, row), snapshot);
+    }
+
+    /**
+     * Creates the patient records for a set of rows.
+     *
+     * @param rows the rows to read
+     * @return a PatientRecord object for each row, in the same order
+     */
+    private List<PatientRecord> recordsAt(int[] rows) {
+        ColumnSnapshot snapshot = version.columns;
+        List<PatientRecord> records = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            records.add(snapshot.record(row));
+        }
+        return records;
+    }
+
+    /**
+     * Displays the patient records in the history list from head to tail.
+     *
+     * @return a string representation of the patient history list,
+     *          showing the records from oldest to newest
+     */
+    public String patientRecordOldestToNewest () {
+        return render(iterator());
     }
 
     /**
@@ -138,37 +440,92 @@ public class PatientHistoryList {
      * @return a string representation of the patient history list,
      */
     public String PatientRecordNewestToOldest() {
+        return render(descendingIterator());
+    }
+
+    /**
+     * Renders patient records one per line.
+     *
+     * @param records the records to render
+     * @return the records separated by new lines and ending with a new line,
+     *          or "(Empty PatientRecord)" if there are none
+     */
+    private static String render(Iterator<PatientRecord> records) {
         StringBuilder sb = new StringBuilder();
 
-        if (head == null) {
+        if (!records.hasNext()) {
             sb.append("(Empty PatientRecord)\n");
             return sb.toString();
         }
 
-        DoubleNode tempNode = tail;
-        for (int i = 0; i < size; i++){
-            sb.append(tempNode.patientRecord);
-            if (i != size - 1){
-                sb.append("\n");
-            }
-            tempNode = tempNode.previous;
+        while (records.hasNext()) {
+            sb.append(records.next()).append("\n");
         }
-        sb.append("\n");
-
         return sb.toString();
     }
 
+    /**
+     * Returns an iterator over the patient records from oldest to newest.
+     *
+     * @return an iterator starting at the head of the list
+     */
+    @Override
+    public Iterator<PatientRecord> iterator() {
+        HistoryVersion snapshot = version;
+        return new RecordIterator(snapshot, snapshot.order.iterator(0, false));
+    }
+
+    /**
+     * Returns an iterator over the patient records from newest to oldest.
+     *
+     * @return an iterator starting at the tail of the list
+     */
+    public Iterator<PatientRecord> descendingIterator() {
+        HistoryVersion snapshot = version;
+        return new RecordIterator(snapshot, snapshot.order.iterator(snapshot.size() - 1, true));
+    }
+
+    /**
+     * Returns a spliterator over the patient records from oldest to newest, as they are now.
+     * It splits in half by position, finding the start of each half in O(log n).
+     *
+     * @return an ordered, sized spliterator over the records
+     */
+    @Override
+    public Spliterator<PatientRecord> spliterator() {
+        HistoryVersion snapshot = version;
+        return new RecordSpliterator(snapshot, 0, snapshot.size());
+    }
+
+    /**
+     * Returns a sequential stream of the patient records from oldest to newest.
+     *
+     * @return a stream over the records
+     */
+    public Stream<PatientRecord> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the patient records, in order from oldest to newest.
+     *
+     * @return a parallel stream over the records
+     */
+    public Stream<PatientRecord> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
     /**
      * Displays the newest patient record in the history list (the tail).
      *
      * @return the newest PatientRecord object in the history list, or null if the list is empty
      */
     public PatientRecord navigateToNewestRecord() {
-        if (tail == null) {
+        if (size() == 0) {
             return null;
         }
-        current = tail;
-        return current.patientRecord;
+        currentPosition = size() - 1;
+        return getCurrentRecord();
     }
 
     /**
@@ -177,11 +534,11 @@ public class PatientHistoryList {
      * @return the oldest PatientRecord object in the history list, or null if the list is empty
      */
     public PatientRecord navigateToOldestRecord() {
-        if (head == null) {
+        if (size() == 0) {
             return null;
         }
-        current = head;
-        return current.patientRecord;
+        currentPosition = 0;
+        return getCurrentRecord();
     }
 
     /**
@@ -192,16 +549,14 @@ public class PatientHistoryList {
      *          or null if the list is empty
      */
     public PatientRecord navigateToNextRecord() {
-        if (current == null) {
+        if (currentPosition < 0) {
             return null;
         }
 
-        if (current.next == null) {
-            return current.patientRecord;
+        if (currentPosition < size() - 1) {
+            currentPosition++;
         }
-
-        current = current.next;
-        return current.patientRecord;
+        return getCurrentRecord();
     }
 
     /**
@@ -212,16 +567,14 @@ public class PatientHistoryList {
      *          or null if the list is empty
      */
     public PatientRecord navigateToPreviousRecord() {
-        if (current == null) {
+        if (currentPosition < 0) {
             return null;
         }
 
-        if (current.previous == null) {
-            return current.patientRecord;
+        if (currentPosition > 0) {
+            currentPosition--;
         }
-
-        current = current.previous;
-        return current.patientRecord;
+        return getCurrentRecord();
     }
 
     /**
@@ -230,7 +583,11 @@ public class PatientHistoryList {
      * @return the current PatientRecord object, or null if there is no current record
      */
     public PatientRecord getCurrentRecord() {
-        return current == null ? null : current.patientRecord;
+        if (currentPosition < 0) {
+            return null;
+        }
+        HistoryVersion snapshot = version;
+        return snapshot.columns.record(snapshot.order.get(currentPosition));
     }
 
     /**
@@ -239,7 +596,7 @@ public class PatientHistoryList {
      * @return true if the current position is at the newest record, false otherwise
      */
     public boolean isAtNewest() {
-        return current != null && current == tail;
+        return currentPosition >= 0 && currentPosition == size() - 1;
     }
 
     /**
@@ -248,7 +605,7 @@ public class PatientHistoryList {
      * @return true if the current position is at the oldest record, false otherwise
      */
     public boolean isAtOldest() {
-        return current != null && current == head;
+        return currentPosition == 0;
     }
 
     /**
@@ -256,17 +613,127 @@ public class PatientHistoryList {
      * This method is used to populate the history list with sample data.
      */
     public void seedTenRecords() {
-        addToPatientRecord(new PatientRecord("2026-01-01", "Flu", "Rest, hydration"), size);
-        addToPatientRecord(new PatientRecord("2026-01-03", "Sprain", "Ice, wrap, elevate"), size);
-        addToPatientRecord(new PatientRecord("2026-01-06", "Migraine", "Pain relief + rest"), size);
-        addToPatientRecord(new PatientRecord("2026-01-10", "Allergy", "Antihistamine"), size);
-        addToPatientRecord(new PatientRecord("2026-01-14", "Sore throat", "Supportive care"), size);
-        addToPatientRecord(new PatientRecord("2026-01-18", "Back pain", "Stretching plan"), size);
-        addToPatientRecord(new PatientRecord("2026-01-22", "Checkup", "Vitals normal"), size);
-        addToPatientRecord(new PatientRecord("2026-01-26", "Stomach bug", "Fluids + rest"), size);
-        addToPatientRecord(new PatientRecord("2026-02-02", "Skin rash", "Topical cream"), size);
-        addToPatientRecord(new PatientRecord("2026-02-10", "Follow-up", "Improving"), size);
+        addToPatientRecord(new PatientRecord("2026-01-01", "Flu", "Rest, hydration"), size());
+        addToPatientRecord(new PatientRecord("2026-01-03", "Sprain", "Ice, wrap, elevate"), size());
+        addToPatientRecord(new PatientRecord("2026-01-06", "Migraine", "Pain relief + rest"), size());
+        addToPatientRecord(new PatientRecord("2026-01-10", "Allergy", "Antihistamine"), size());
+        addToPatientRecord(new PatientRecord("2026-01-14", "Sore throat", "Supportive care"), size());
+        addToPatientRecord(new PatientRecord("2026-01-18", "Back pain", "Stretching plan"), size());
+        addToPatientRecord(new PatientRecord("2026-01-22", "Checkup", "Vitals normal"), size());
+        addToPatientRecord(new PatientRecord("2026-01-26", "Stomach bug", "Fluids + rest"), size());
+        addToPatientRecord(new PatientRecord("2026-02-02", "Skin rash", "Topical cream"), size());
+        addToPatientRecord(new PatientRecord("2026-02-10", "Follow-up", "Improving"), size());
 
         navigateToNewestRecord();
     }
+
+    /**
+     * Iterator creating the records of a version's rows.
+     */
+    private static final class RecordIterator implements Iterator<PatientRecord> {
+        /**
+         * The version being read.
+         */
+        private final HistoryVersion snapshot;
+
+        /**
+         * The rows still to visit.
+         */
+        private final PrimitiveIterator.OfInt rows;
+
+        /**
+         * Parameterized constructor for RecordIterator.
+         *
+         * @param snapshot the version being read
+         * @param rows     the rows to visit, in order
+         */
+        RecordIterator(HistoryVersion snapshot, PrimitiveIterator.OfInt rows) {
+            this.snapshot = snapshot;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public PatientRecord next() {
+            if (!rows.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return snapshot.columns.record(rows.nextInt());
+        }
+    }
+
+    /**
+     * Spliterator over a range of positions of a version.
+     */
+    private static final class RecordSpliterator implements Spliterator<PatientRecord> {
+        /**
+         * The version being read.
+         */
+        private final HistoryVersion snapshot;
+
+        /**
+         * The position of the next record.
+         */
+        private int position;
+
+        /**
+         * The position after the last record of the range.
+         */
+        private final int end;
+
+        /**
+         * Parameterized constructor for RecordSpliterator.
+         *
+         * @param snapshot the version being read
+         * @param position the position of the first record
+         * @param end      the position after the last record
+         */
+        RecordSpliterator(HistoryVersion snapshot, int position, int end) {
+            this.snapshot = snapshot;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PatientRecord> action) {
+            if (position >= end) {
+                return false;
+            }
+            action.accept(snapshot.columns.record(snapshot.order.get(position++)));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super PatientRecord> action) {
+            int from = position;
+            position = end;
+            snapshot.order.forEach(from, end, row -> action.accept(snapshot.columns.record(row)));
+        }
+
+        @Override
+        public Spliterator<PatientRecord> trySplit() {
+            int mid = (position + end) >>> 1;
+            if (mid <= position) {
+                return null;
+            }
+            // Hand the first half to the new spliterator; this one resumes at the middle
+            Spliterator<PatientRecord> prefix = new RecordSpliterator(snapshot, position, mid);
+            position = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
 }
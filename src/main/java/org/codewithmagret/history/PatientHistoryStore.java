@@ -0,0 +1,253 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.util.LongObjectMap;
+import org.codewithmagret.util.StringDictionary;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Class representing the patient histories of every patient, keyed by numeric patient ID.
+ * <p>
+ * The index is split into shards, each with its own read-write lock, and every history has
+ * its own lock as well. Finding an existing history only takes a shard's read lock, and
+ * working with a history only locks that history, so clinicians reading and appending to
+ * different patients' histories never wait on each other. Histories are created on the
+ * first visit of a patient. Browsing through a cursor from {@link #openCursor(long)} takes
+ * no history lock at all, so it never waits on appends to the same patient either.
+ * <p>
+ * The histories of a shard store their diagnoses in one dictionary and their treatment notes in
+ * one off-heap arena owned by the shard, so a patient with a handful of visits does not pay for a
+ * dictionary and an arena chunk of their own. Appends to histories in the same shard meet on that
+ * text for the moment it takes to encode one record; appends in different shards never meet.
+ */
+public class PatientHistoryStore {
+    /**
+     * The default number of shards.
+     */
+    private static final int DEFAULT_SHARDS = 64;
+
+    /**
+     * Class representing one patient's history and the lock guarding it.
+     */
+    private static final class GuardedHistory {
+        /**
+         * The patient's history records.
+         */
+        final PatientHistoryList history;
+
+        /**
+         * The lock guarding the history, including its navigation cursor.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Parameterized constructor for GuardedHistory.
+         *
+         * @param history the patient's history records
+         */
+        GuardedHistory(PatientHistoryList history) {
+            this.history = history;
+        }
+    }
+
+    /**
+     * Class representing one shard of the index.
+     */
+    private static final class Shard {
+        /**
+         * The histories of the patients mapped to this shard.
+         */
+        final LongObjectMap<GuardedHistory> histories = new LongObjectMap<>();
+
+        /**
+         * The lock guarding the map of this shard.
+         */
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * The dictionary of distinct diagnoses shared by the histories of this shard.
+         */
+        final StringDictionary diagnoses = new StringDictionary();
+
+        /**
+         * The off-heap store of treatment notes shared by the histories of this shard.
+         */
+        final Utf8Arena notes = new Utf8Arena();
+    }
+
+    /**
+     * The shards of the index; the length is a power of two.
+     */
+    private final Shard[] shards;
+
+    /**
+     * Default constructor for PatientHistoryStore.
+     */
+    public PatientHistoryStore() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * Parameterized constructor for PatientHistoryStore.
+     *
+     * @param shardCount the number of shards, rounded up to a power of two
+     */
+    public PatientHistoryStore(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        shards = new Shard[Integer.highestOneBit(shardCount * 2 - 1)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Appends a record to the end of a patient's history, creating the history on the first visit.
+     * The record is tied to the patient by setting its patientId.
+     *
+     * @param patientId the numeric ID of the patient
+     * @param record    the PatientRecord object to append
+     */
+    public void addRecord(long patientId, PatientRecord record) {
+        record.setPatientId(patientId);
+        withHistory(patientId, history -> {
+            history.addToPatientRecord(record, history.size());
+            return null;
+        });
+    }
+
+    /**
+     * Runs an action on a patient's history while holding that history's lock,
+     * creating the history on the first visit.
+     * The action must not keep a reference to the history after it returns.
+     *
+     * @param patientId the numeric ID of the patient
+     * @param action    the action to run on the history
+     * @param <T>       the type of the action's result
+     * @return the result of the action
+     */
+    public <T> T withHistory(long patientId, Function<PatientHistoryList, T> action) {
+        GuardedHistory guarded = getOrCreate(patientId);
+        guarded.lock.lock();
+        try {
+            return action.apply(guarded.history);
+        } finally {
+            guarded.lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a cursor for one session to browse a patient's history without locking,
+     * creating the history on the first visit.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return a new HistoryCursor starting at the patient's newest record
+     */
+    public HistoryCursor openCursor(long patientId) {
+        return getOrCreate(patientId).history.openCursor();
+    }
+
+    /**
+     * Checks if a patient already has a history.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return true if the patient has a history, false otherwise
+     */
+    public boolean hasHistory(long patientId) {
+        return find(patientId) != null;
+    }
+
+    /**
+     * Returns the number of records in a patient's history.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return the number of records, or 0 if the patient has no history yet
+     */
+    public int recordCount(long patientId) {
+        GuardedHistory guarded = find(patientId);
+        if (guarded == null) {
+            return 0;
+        }
+        guarded.lock.lock();
+        try {
+            return guarded.history.size();
+        } finally {
+            guarded.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of patients with a history.
+     *
+     * @return the number of histories in the store
+     */
+    public int patientCount() {
+        int total = 0;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                total += shard.histories.size();
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns a patient's history if it exists.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return the guarded history, or null if the patient has no history yet
+     */
+    private GuardedHistory find(long patientId) {
+        Shard shard = shardOf(patientId);
+        shard.lock.readLock().lock();
+        try {
+            return shard.histories.get(patientId);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a patient's history, creating it if it does not exist yet.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return the guarded history
+     */
+    private GuardedHistory getOrCreate(long patientId) {
+        GuardedHistory guarded = find(patientId);
+        if (guarded != null) {
+            return guarded;
+        }
+
+        Shard shard = shardOf(patientId);
+        shard.lock.writeLock().lock();
+        try {
+            guarded = shard.histories.get(patientId);
+            if (guarded == null) {
+                guarded = new GuardedHistory(new PatientHistoryList(new RecordColumns(shard.diagnoses, shard.notes)));
+                shard.histories.put(patientId, guarded);
+            }
+            return guarded;
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the shard a patient ID maps to.
+     *
+     * @param patientId the numeric ID of the patient
+     * @return the shard holding that patient's history
+     */
+    private Shard shardOf(long patientId) {
+        long hash = patientId * 0xC2B2AE3D27D4EB4FL;
+        return shards[(int) (hash >>> 40) & (shards.length - 1)];
+    }
+}
@@ -0,0 +1,169 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.util.StringDictionary;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Class representing the patient records of a history list stored column by column.
+ * <p>
+ * Each record is a row number into parallel primitive arrays: the patient ID, the visit date
+ * as an epoch day, and the diagnosis as a code into a dictionary of distinct diagnoses.
+ * Treatment notes are kept as UTF-8 in an off-heap arena.
+ * A visit date is only kept as a string when it does not read back from its epoch day, such
+ * as a free-form date. Rows are never changed once appended, and arrays are replaced rather
+ * than resized in place, so {@link #snapshot()} can hand readers the rows appended so far
+ * without copying them.
+ * <p>
+ * The diagnosis dictionary and notes arena can be shared by the columns of many lists, as
+ * PatientHistoryStore does for the histories of each shard, so the distinct diagnoses and the
+ * arena chunks are paid for once per shard rather than once per patient. They are only used
+ * while holding the dictionary's monitor.
+ * Apart from that this class is not thread-safe.
+ */
+final class RecordColumns {
+    /**
+     * The number of rows the columns can hold before they first grow.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The patient ID column.
+     */
+    private long[] patientIds = new long[INITIAL_CAPACITY];
+
+    /**
+     * The visit date column, as days since 1970-01-01.
+     */
+    private int[] visitDays = new int[INITIAL_CAPACITY];
+
+    /**
+     * The diagnosis column, as codes into the diagnosis dictionary.
+     */
+    private int[] diagnosisCodes = new int[INITIAL_CAPACITY];
+
+    /**
+     * The treatment notes column, as references into the notes arena.
+     */
+    private long[] noteRefs = new long[INITIAL_CAPACITY];
+
+    /**
+     * The rows whose visit date cannot be rebuilt from their epoch day, in increasing order.
+     */
+    private int[] irregularRows = new int[4];
+
+    /**
+     * The visit dates of the rows in irregularRows, at the same indexes.
+     */
+    private String[] irregularDates = new String[4];
+
+    /**
+     * The number of rows with an irregular visit date.
+     */
+    private int irregularCount;
+
+    /**
+     * The dictionary of distinct diagnoses, possibly shared with other columns.
+     */
+    private final StringDictionary diagnoses;
+
+    /**
+     * The off-heap store of treatment notes, possibly shared with other columns.
+     */
+    private final Utf8Arena notes;
+
+    /**
+     * The number of rows in the columns.
+     */
+    private int rows;
+
+    /**
+     * Default constructor for RecordColumns, with a dictionary and arena of its own.
+     */
+    RecordColumns() {
+        this(new StringDictionary(), new Utf8Arena());
+    }
+
+    /**
+     * Parameterized constructor for RecordColumns.
+     *
+     * @param diagnoses the dictionary of distinct diagnoses
+     * @param notes     the off-heap store of treatment notes
+     */
+    RecordColumns(StringDictionary diagnoses, Utf8Arena notes) {
+        this.diagnoses = diagnoses;
+        this.notes = notes;
+    }
+
+    /**
+     * Appends a record as a new row. Later changes to the record object are not seen by the columns.
+     *
+     * @param record the PatientRecord object to store
+     * @return the row number of the record
+     */
+    int append(PatientRecord record) {
+        if (rows == visitDays.length) {
+            int capacity = rows * 2;
+            patientIds = Arrays.copyOf(patientIds, capacity);
+            visitDays = Arrays.copyOf(visitDays, capacity);
+            diagnosisCodes = Arrays.copyOf(diagnosisCodes, capacity);
+            noteRefs = Arrays.copyOf(noteRefs, capacity);
+        }
+
+        int row = rows;
+        String visitDate = record.getVisitDate();
+        int day = record.getVisitEpochDay();
+        if (visitDate != null && (day == PatientRecord.UNKNOWN_VISIT_DAY
+                || !LocalDate.ofEpochDay(day).toString().equals(visitDate))) {
+            if (irregularCount == irregularRows.length) {
+                irregularRows = Arrays.copyOf(irregularRows, irregularCount * 2);
+                irregularDates = Arrays.copyOf(irregularDates, irregularCount * 2);
+            }
+            irregularRows[irregularCount] = row;
+            irregularDates[irregularCount] = visitDate;
+            irregularCount++;
+        }
+
+        patientIds[row] = record.getPatientId();
+        visitDays[row] = day;
+        synchronized (diagnoses) {
+            diagnosisCodes[row] = diagnoses.encode(record.getDiagnosis());
+            noteRefs[row] = notes.append(record.getTreatmentNotes());
+        }
+        rows++;
+        return row;
+    }
+
+    /**
+     * Returns an immutable view of the rows appended so far.
+     *
+     * @return a snapshot of the columns
+     */
+    ColumnSnapshot snapshot() {
+        synchronized (diagnoses) {
+            return new ColumnSnapshot(this, rows, patientIds, visitDays, diagnosisCodes, noteRefs,
+                    irregularRows, irregularDates, irregularCount, diagnoses.frozenDecoder(), diagnoses.size(),
+                    notes.chunks());
+        }
+    }
+
+    /**
+     * Returns new, empty columns sharing this one's diagnosis dictionary and notes arena.
+     *
+     * @return the empty columns
+     */
+    RecordColumns emptyCopy() {
+        return new RecordColumns(diagnoses, notes);
+    }
+
+    /**
+     * Returns the number of rows in the columns.
+     *
+     * @return the row count
+     */
+    int rowCount() {
+        return rows;
+    }
+}
@@ -0,0 +1,141 @@
+package org.codewithmagret.history;
+
+import java.util.Arrays;
+
+/**
+ * Class representing an immutable map from row numbers to the labels that order them in a RowSequence.
+ * <p>
+ * The map is a trie with 32 entries per node, indexed by the bits of the row number. Setting
+ * labels returns a new map that copies only the nodes on the paths to the changed rows and shares
+ * the rest with the old one, so every version stays valid and can be read from any thread without
+ * locking once safely published. A lookup takes O(log n) with a base of 32, at most seven steps.
+ */
+final class RowLabels {
+    /**
+     * The empty map.
+     */
+    static final RowLabels EMPTY = new RowLabels(null, 0);
+
+    /**
+     * The number of row bits used at each level of the trie.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * The number of entries in each node of the trie.
+     */
+    private static final int WIDTH = 1 << BITS;
+
+    /**
+     * The mask selecting the entry of a row within a node.
+     */
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * The root of the trie: a long[] of labels when the shift is 0, otherwise an Object[] of children;
+     * null if the map is empty.
+     */
+    private final Object root;
+
+    /**
+     * The number of row bits below the root level.
+     */
+    private final int shift;
+
+    /**
+     * Parameterized constructor for RowLabels.
+     *
+     * @param root  the root of the trie
+     * @param shift the number of row bits below the root level
+     */
+    private RowLabels(Object root, int shift) {
+        this.root = root;
+        this.shift = shift;
+    }
+
+    /**
+     * Returns the label of a row.
+     *
+     * @param row the row number
+     * @return the label of the row, or -1 if the map cannot hold a label for it
+     */
+    long get(int row) {
+        if (row < 0 || row >>> shift >= WIDTH) {
+            return -1;
+        }
+        Object node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS) {
+            node = ((Object[]) node)[row >>> level & MASK];
+        }
+        return node == null ? -1 : ((long[]) node)[row & MASK];
+    }
+
+    /**
+     * Returns a new map with the labels of some rows set. Each node on the paths to the rows is copied once,
+     * so setting k rows that are close together costs about O(k + log n).
+     *
+     * @param rows   the rows to set, each at most once
+     * @param labels the new label of each row, at the same indexes
+     * @param count  the number of rows to take from the start of the arrays
+     * @return the new map; this map is unchanged
+     */
+    RowLabels withAll(int[] rows, long[] labels, int count) {
+        if (count == 0) {
+            return this;
+        }
+
+        // Sort the rows, keeping the index of each one's label in the low half
+        long[] keys = new long[count];
+        int highest = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) rows[i] << 32 | i;
+            highest = Math.max(highest, rows[i]);
+        }
+        Arrays.sort(keys);
+
+        Object newRoot = root;
+        int newShift = shift;
+        while (highest >>> newShift >= WIDTH) {
+            // Grow the trie upwards, keeping the old root as the first child
+            Object[] parent = new Object[WIDTH];
+            parent[0] = newRoot;
+            newRoot = newRoot == null ? null : parent;
+            newShift += BITS;
+        }
+        return new RowLabels(set(newRoot, newShift, keys, 0, count, labels), newShift);
+    }
+
+    /**
+     * Sets the labels of a sorted run of rows in a subtree by copying its nodes on their paths.
+     *
+     * @param node   the root of the subtree, or null if it is empty
+     * @param level  the number of row bits below the subtree's root
+     * @param keys   the sorted rows, each shifted into the high half with its label index in the low half
+     * @param from   the first key of the run
+     * @param to     the key after the last of the run
+     * @param labels the labels, at the indexes kept in the keys
+     * @return the root of the new subtree
+     */
+    private static Object set(Object node, int level, long[] keys, int from, int to, long[] labels) {
+        if (level == 0) {
+            long[] leaf = node == null ? new long[WIDTH] : ((long[]) node).clone();
+            for (int i = from; i < to; i++) {
+                leaf[(int) (keys[i] >>> 32) & MASK] = labels[(int) keys[i]];
+            }
+            return leaf;
+        }
+
+        Object[] children = node == null ? new Object[WIDTH] : ((Object[]) node).clone();
+        int start = from;
+        while (start < to) {
+            int child = (int) (keys[start] >>> 32) >>> level & MASK;
+            int end = start + 1;
+            while (end < to && ((int) (keys[end] >>> 32) >>> level & MASK) == child) {
+                end++;
+            }
+            children[child] = set(children[child], level - BITS, keys, start, end, labels);
+            start = end;
+        }
+        return children;
+    }
+}
@@ -0,0 +1,617 @@
+package org.codewithmagret.history;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Class representing an immutable sequence of row numbers with O(log n) positional access.
+ * <p>
+ * The sequence is a treap whose nodes are never changed. Inserting returns a new sequence
+ * that copies only the nodes on the path to the new element and shares the rest with the
+ * old one, so every version stays valid and can be read from any thread without locking
+ * once safely published.
+ * <p>
+ * A sequence started from {@link #EMPTY_INDEXED} can also find the position of a row in O(log n).
+ * Every node carries a label, and labels increase along the sequence, so a row's position is
+ * found by searching for its label from the root, looked up in a RowLabels map kept with each
+ * version. A new row takes a label halfway between its neighbours'; when they have no room left,
+ * the smallest aligned range of labels around it that is sparse enough is spread out again.
+ * A range of 2^i labels is sparse enough below (4/3)^i rows, which bounds the rows relabelled
+ * per insert to O(log n) amortized.
+ */
+final class RowSequence {
+    /**
+     * The empty sequence.
+     */
+    static final RowSequence EMPTY = new RowSequence(null, null);
+
+    /**
+     * The empty sequence that also keeps the label of each row, so {@link #rankOf(int)} can find it.
+     */
+    static final RowSequence EMPTY_INDEXED = new RowSequence(null, RowLabels.EMPTY);
+
+    /**
+     * The number of bits labels are drawn from; every label is below 2^LABEL_BITS.
+     */
+    private static final int LABEL_BITS = 62;
+
+    /**
+     * The bound on labels: every label is at least 0 and below this value.
+     */
+    private static final long LABEL_LIMIT = 1L << LABEL_BITS;
+
+    /**
+     * The gap between the labels of rows appended at the end, so appending never halves the room left.
+     */
+    private static final long APPEND_GAP = 1L << 32;
+
+    /**
+     * The base of the density bound: a range of 2^i labels is relabelled only if it holds at most DENSITY^i rows.
+     */
+    private static final double DENSITY = 4.0 / 3;
+
+    /**
+     * Class representing an immutable node of the treap.
+     */
+    private static final class Node {
+        /**
+         * The row held by this node.
+         */
+        final int row;
+
+        /**
+         * The label ordering this node among the others, or 0 if the sequence is not indexed.
+         */
+        final long label;
+
+        /**
+         * The random heap priority of this node; parents have higher priorities than their children.
+         */
+        final int priority;
+
+        /**
+         * The number of nodes in the subtree rooted at this node.
+         */
+        final int count;
+
+        /**
+         * The children of this node.
+         */
+        final Node left, right;
+
+        /**
+         * Parameterized constructor for Node.
+         *
+         * @param row      the row held by the node
+         * @param label    the label of the node
+         * @param priority the heap priority of the node
+         * @param left     the left subtree, or null
+         * @param right    the right subtree, or null
+         */
+        Node(int row, long label, int priority, Node left, Node right) {
+            this.row = row;
+            this.label = label;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.count = 1 + count(left) + count(right);
+        }
+    }
+
+    /**
+     * The root of the treap, or null if the sequence is empty.
+     */
+    private final Node root;
+
+    /**
+     * The label of each row, or null if the sequence is not indexed.
+     */
+    private final RowLabels labels;
+
+    /**
+     * Parameterized constructor for RowSequence.
+     *
+     * @param root   the root of the treap
+     * @param labels the label of each row, or null if the sequence is not indexed
+     */
+    private RowSequence(Node root, RowLabels labels) {
+        this.root = root;
+        this.labels = labels;
+    }
+
+    /**
+     * Returns the number of rows in the sequence.
+     *
+     * @return the size of the sequence
+     */
+    int size() {
+        return count(root);
+    }
+
+    /**
+     * Returns the row at a position.
+     *
+     * @param rank the position (0-based index)
+     * @return the row at that position
+     * @throws IndexOutOfBoundsException if the position is out of bounds
+     */
+    int get(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("rank " + rank + " out of bounds for size " + size());
+        }
+        return nodeAt(rank).row;
+    }
+
+    /**
+     * Returns the position of a row. Takes O(log n).
+     *
+     * @param row the row to find
+     * @return the position of the row (0-based index)
+     * @throws UnsupportedOperationException if the sequence was not started from EMPTY_INDEXED
+     * @throws NoSuchElementException        if the row is not in the sequence
+     */
+    int rankOf(int row) {
+        if (labels == null) {
+            throw new UnsupportedOperationException("The sequence does not index its rows");
+        }
+        long label = labels.get(row);
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (label < node.label) {
+                node = node.left;
+            } else if (label > node.label) {
+                rank += count(node.left) + 1;
+                node = node.right;
+            } else if (node.row == row) {
+                return rank + count(node.left);
+            } else {
+                break;
+            }
+        }
+        throw new NoSuchElementException("row " + row + " is not in the sequence");
+    }
+
+    /**
+     * Returns a new sequence with a row inserted at a position.
+     *
+     * @param rank the position to insert at (0 to size inclusive)
+     * @param row  the row to insert
+     * @return the new sequence; this sequence is unchanged
+     * @throws IndexOutOfBoundsException if the position is out of bounds
+     */
+    RowSequence insert(int rank, int row) {
+        if (rank < 0 || rank > size()) {
+            throw new IndexOutOfBoundsException("rank " + rank + " out of bounds for size " + size());
+        }
+        int priority = ThreadLocalRandom.current().nextInt();
+        if (labels == null) {
+            return new RowSequence(insert(root, rank, row, 0, priority), null);
+        }
+
+        long before = rank == 0 ? -1 : nodeAt(rank - 1).label;
+        long after = rank == size() ? LABEL_LIMIT : nodeAt(rank).label;
+        if (after - before < 2) {
+            return relabel(rank, row, rank == 0 ? after : before);
+        }
+        long gap = (after - before) / 2;
+        long label = before + (after == LABEL_LIMIT ? Math.min(gap, APPEND_GAP) : gap);
+        return new RowSequence(insert(root, rank, row, label, priority),
+                labels.withAll(new int[] {row}, new long[] {label}, 1));
+    }
+
+    /**
+     * Returns a new sequence with rows appended at the end. The appended rows are built into a
+     * treap in O(k) and joined to this one along its right edge, so a batch of k rows costs
+     * O(k + log n) instead of k separate inserts.
+     *
+     * @param rows  the rows to append, in order
+     * @param count the number of rows to take from the start of the array
+     * @return the new sequence; this sequence is unchanged
+     */
+    RowSequence appendAll(int[] rows, int count) {
+        if (count == 0) {
+            return this;
+        }
+        if (labels == null) {
+            return new RowSequence(merge(root, build(rows, null, count)), null);
+        }
+
+        int size = size();
+        long last = size == 0 ? -1 : nodeAt(size - 1).label;
+        long gap = Math.min(APPEND_GAP, (LABEL_LIMIT - 1 - last) / count);
+        if (gap < 1) {
+            // No room left at the end: spread every row over the whole label range
+            int[] all = new int[size + count];
+            PrimitiveIterator.OfInt existing = iterator(0, false);
+            for (int i = 0; i < size; i++) {
+                all[i] = existing.nextInt();
+            }
+            System.arraycopy(rows, 0, all, size, count);
+            return replace(0, size, all, 0, LABEL_LIMIT);
+        }
+        long[] appended = new long[count];
+        for (int i = 0; i < count; i++) {
+            appended[i] = last + (i + 1) * gap;
+        }
+        return new RowSequence(merge(root, build(rows, appended, count)), labels.withAll(rows, appended, count));
+    }
+
+    /**
+     * Returns the position of the first row matching a condition, for a sequence ordered so that
+     * the condition is false for a prefix of the rows and true for the rest. Takes O(log n).
+     *
+     * @param condition the condition, false before some position and true from it on
+     * @return the position of the first matching row, or size() if none match
+     */
+    int firstRankWhere(IntPredicate condition) {
+        int rank = 0;
+        int found = size();
+        Node node = root;
+        while (node != null) {
+            int leftCount = count(node.left);
+            if (condition.test(node.row)) {
+                found = rank + leftCount;
+                node = node.left;
+            } else {
+                rank += leftCount + 1;
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Passes the rows in a range of positions to a consumer, in order. Takes O(log n + k).
+     *
+     * @param from   the first position
+     * @param to     the position after the last
+     * @param action the consumer receiving each row
+     */
+    void forEach(int from, int to, IntConsumer action) {
+        forEach(root, Math.max(0, from), Math.min(to, size()), action);
+    }
+
+    /**
+     * Returns an iterator over the rows starting at a position, walking towards the end or the start.
+     * Finding the start takes O(log n) and each step takes O(1) amortized.
+     *
+     * @param from       the position of the first row returned
+     * @param descending true to walk towards position 0, false to walk towards the end
+     * @return an iterator over the rows
+     */
+    PrimitiveIterator.OfInt iterator(int from, boolean descending) {
+        return new RowIterator(root, from, descending);
+    }
+
+    /**
+     * Returns the node at a position.
+     *
+     * @param rank the position, which must be in bounds
+     * @return the node at that position
+     */
+    private Node nodeAt(int rank) {
+        Node node = root;
+        while (true) {
+            int leftCount = count(node.left);
+            if (rank < leftCount) {
+                node = node.left;
+            } else if (rank == leftCount) {
+                return node;
+            } else {
+                rank -= leftCount + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nodes with a label below a value. Takes O(log n).
+     *
+     * @param label the value
+     * @return the position of the first node labelled at or above the value
+     */
+    private int rankOfLabel(long label) {
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.label < label) {
+                rank += count(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Inserts a row whose neighbours have no label left between them, by spreading out the rows
+     * of the smallest aligned label range around them that is sparse enough with the new row added.
+     *
+     * @param rank   the position to insert at
+     * @param row    the row to insert
+     * @param anchor the label of a neighbour of the new row
+     * @return the new sequence; this sequence is unchanged
+     */
+    private RowSequence relabel(int rank, int row, long anchor) {
+        for (int bits = 1; ; bits++) {
+            long base = bits == LABEL_BITS ? 0 : anchor >>> bits << bits;
+            int first = rankOfLabel(base);
+            int end = bits == LABEL_BITS ? size() : rankOfLabel(base + (1L << bits));
+            int count = end - first + 1;
+            if (bits == LABEL_BITS || count <= Math.pow(DENSITY, bits)) {
+                int[] rows = new int[count];
+                PrimitiveIterator.OfInt existing = iterator(first, false);
+                for (int i = 0; i < count; i++) {
+                    rows[i] = first + i == rank ? row : existing.nextInt();
+                }
+                return replace(first, end, rows, base, 1L << bits);
+            }
+        }
+    }
+
+    /**
+     * Returns a new sequence with a range of positions replaced by rows labelled evenly over a label range.
+     * The label range must lie above the labels before the positions and below those after them.
+     *
+     * @param first the first position replaced
+     * @param end   the position after the last replaced
+     * @param rows  the rows to put in their place, in order
+     * @param base  the lowest label of the range
+     * @param span  the number of labels in the range
+     * @return the new sequence; this sequence is unchanged
+     */
+    private RowSequence replace(int first, int end, int[] rows, long base, long span) {
+        Node[] halves = new Node[2];
+        split(root, end, halves);
+        Node after = halves[1];
+        split(halves[0], first, halves);
+        Node before = halves[0];
+
+        long step = span / rows.length;
+        long[] spread = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            spread[i] = base + i * step;
+        }
+        return new RowSequence(merge(merge(before, build(rows, spread, rows.length)), after),
+                labels.withAll(rows, spread, rows.length));
+    }
+
+    /**
+     * Iterator walking the treap in order with an explicit stack of the nodes still to visit.
+     */
+    private static final class RowIterator implements PrimitiveIterator.OfInt {
+        /**
+         * The nodes still to visit, with the next one on top.
+         */
+        private Node[] stack = new Node[32];
+
+        /**
+         * The number of nodes on the stack.
+         */
+        private int depth;
+
+        /**
+         * True to walk towards position 0, false to walk towards the end.
+         */
+        private final boolean descending;
+
+        /**
+         * Parameterized constructor for RowIterator.
+         *
+         * @param root       the root of the treap
+         * @param rank       the position of the first row returned
+         * @param descending true to walk towards position 0
+         */
+        RowIterator(Node root, int rank, boolean descending) {
+            this.descending = descending;
+            // Push every node on the path that comes at or after the start in walking order
+            Node node = root;
+            while (node != null) {
+                int leftCount = count(node.left);
+                if (descending ? rank >= leftCount : rank <= leftCount) {
+                    push(node);
+                }
+                if (rank <= leftCount) {
+                    node = rank == leftCount && descending ? null : node.left;
+                } else {
+                    rank -= leftCount + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack[--depth];
+            // Push the spine of the subtree that follows this node in walking order
+            Node next = descending ? node.left : node.right;
+            while (next != null) {
+                push(next);
+                next = descending ? next.right : next.left;
+            }
+            return node.row;
+        }
+
+        /**
+         * Pushes a node on the stack.
+         *
+         * @param node the node to push
+         */
+        private void push(Node node) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = node;
+        }
+    }
+
+    /**
+     * Passes the rows in a range of positions of a subtree to a consumer, in order.
+     *
+     * @param node   the root of the subtree
+     * @param from   the first position within the subtree
+     * @param to     the position after the last within the subtree
+     * @param action the consumer receiving each row
+     */
+    private static void forEach(Node node, int from, int to, IntConsumer action) {
+        while (node != null && from < to) {
+            int leftCount = count(node.left);
+            if (from < leftCount) {
+                forEach(node.left, from, Math.min(to, leftCount), action);
+            }
+            if (from <= leftCount && leftCount < to) {
+                action.accept(node.row);
+            }
+            // Continue into the right subtree without recursing
+            from = Math.max(0, from - leftCount - 1);
+            to -= leftCount + 1;
+            node = node.right;
+        }
+    }
+
+    /**
+     * Builds a treap holding rows in order, with random priorities.
+     * The shape is found with the usual stack construction of a Cartesian tree
+     * and the immutable nodes are then created bottom-up.
+     *
+     * @param rows   the rows, in order
+     * @param labels the label of each row, or null to label every row 0
+     * @param count  the number of rows to take from the start of the array
+     * @return the root of the new treap
+     */
+    private static Node build(int[] rows, long[] labels, int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] priorities = new int[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        int[] stack = new int[count];
+        int depth = 0;
+        for (int i = 0; i < count; i++) {
+            priorities[i] = random.nextInt();
+            left[i] = -1;
+            right[i] = -1;
+            int last = -1;
+            while (depth > 0 && priorities[stack[depth - 1]] < priorities[i]) {
+                last = stack[--depth];
+            }
+            left[i] = last;
+            if (depth > 0) {
+                right[stack[depth - 1]] = i;
+            }
+            stack[depth++] = i;
+        }
+        return create(stack[0], rows, labels, priorities, left, right);
+    }
+
+    /**
+     * Creates the immutable nodes of a subtree shaped by the Cartesian tree construction.
+     *
+     * @param index      the index of the subtree's root, or -1
+     * @param rows       the rows
+     * @param labels     the label of each index, or null
+     * @param priorities the priority of each index
+     * @param left       the left child of each index, or -1
+     * @param right      the right child of each index, or -1
+     * @return the root node of the subtree, or null for -1
+     */
+    private static Node create(int index, int[] rows, long[] labels, int[] priorities, int[] left, int[] right) {
+        if (index < 0) {
+            return null;
+        }
+        return new Node(rows[index], labels == null ? 0 : labels[index], priorities[index],
+                create(left[index], rows, labels, priorities, left, right),
+                create(right[index], rows, labels, priorities, left, right));
+    }
+
+    /**
+     * Joins two treaps whose rows follow one another by copying the nodes along the join path.
+     *
+     * @param first  the treap holding the earlier rows, or null
+     * @param second the treap holding the later rows, or null
+     * @return the root of the joined treap
+     */
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            return new Node(first.row, first.label, first.priority, first.left, merge(first.right, second));
+        }
+        return new Node(second.row, second.label, second.priority, merge(first, second.left), second.right);
+    }
+
+    /**
+     * Inserts a row into a subtree by copying the nodes on its path.
+     *
+     * @param node     the root of the subtree, or null
+     * @param rank     the position within the subtree
+     * @param row      the row to insert
+     * @param label    the label of the new node
+     * @param priority the heap priority of the new node
+     * @return the root of the new subtree
+     */
+    private static Node insert(Node node, int rank, int row, long label, int priority) {
+        if (node == null || priority > node.priority) {
+            // The new node belongs above this subtree: split the subtree around it
+            Node[] halves = new Node[2];
+            split(node, rank, halves);
+            return new Node(row, label, priority, halves[0], halves[1]);
+        }
+        int leftCount = count(node.left);
+        if (rank <= leftCount) {
+            return new Node(node.row, node.label, node.priority, insert(node.left, rank, row, label, priority), node.right);
+        }
+        return new Node(node.row, node.label, node.priority, node.left,
+                insert(node.right, rank - leftCount - 1, row, label, priority));
+    }
+
+    /**
+     * Splits a subtree into its first rank rows and the rest by copying the nodes on the split path.
+     *
+     * @param node   the root of the subtree, or null
+     * @param rank   the number of rows to put in the first half
+     * @param halves receives the first half at index 0 and the rest at index 1
+     */
+    private static void split(Node node, int rank, Node[] halves) {
+        if (node == null) {
+            halves[0] = null;
+            halves[1] = null;
+            return;
+        }
+        int leftCount = count(node.left);
+        if (rank <= leftCount) {
+            split(node.left, rank, halves);
+            halves[1] = new Node(node.row, node.label, node.priority, halves[1], node.right);
+        } else {
+            split(node.right, rank - leftCount - 1, halves);
+            halves[0] = new Node(node.row, node.label, node.priority, node.left, halves[0]);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in a subtree.
+     *
+     * @param node the root of the subtree, or null
+     * @return the subtree size
+     */
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+}
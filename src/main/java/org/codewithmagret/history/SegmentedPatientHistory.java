@@ -0,0 +1,839 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Class representing a patient history kept on disk, so it survives restarts.
+ * <p>
+ * Records are appended to segment files of a capped size. Each record is written as its body
+ * length, a CRC32C of the body, the body itself (patient ID, visit date, diagnosis and treatment
+ * notes) and the body length again, so the history can be walked in both directions. Next to each
+ * segment, a sparse index file holds the offset of every 64th record of the segment.
+ * <p>
+ * Segments are read through memory-mapped buffers and records are decoded only when they are
+ * navigated to, so moving to the oldest or newest record, or scrolling one record at a time,
+ * touches only the pages holding those records. Jumping to a position reads one index entry and
+ * walks at most 63 records. Only the list of segments is kept on the heap.
+ * <p>
+ * The segment being appended to is mapped read-write at its full capacity; when it fills up it is
+ * trimmed to its records and mapped read-only. When a history is opened, the tail of every segment
+ * is checked from its last index entry and a record cut short by a crash is dropped.
+ * <p>
+ * The history is not thread-safe: callers must serialize appends and navigation.
+ */
+public final class SegmentedPatientHistory implements Closeable {
+    /**
+     * The default capacity of a segment file, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /**
+     * The number of records between two index entries.
+     */
+    private static final int INDEX_INTERVAL = 64;
+
+    /**
+     * The size of the record header: body length and CRC32C.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of the record trailer: the body length repeated.
+     */
+    private static final int TRAILER_SIZE = 4;
+
+    /**
+     * The size of the smallest record: a header, a patient ID, three string lengths and a trailer.
+     */
+    private static final int MIN_RECORD_SIZE = HEADER_SIZE + 8 + 3 * 4 + TRAILER_SIZE;
+
+    /**
+     * The file name extensions of segment data and index files.
+     */
+    private static final String DATA_SUFFIX = ".seg", INDEX_SUFFIX = ".idx";
+
+    /**
+     * The directory holding the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * The capacity of a new segment file, in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * The segments, oldest first; the last one is being appended to.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Checksum used for records being appended and checked.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * The number of records in the history.
+     */
+    private long size;
+
+    /**
+     * The index of the segment holding the current record, or -1 if there is no current record.
+     */
+    private int currentSegment = -1;
+
+    /**
+     * The offset of the current record in its segment.
+     */
+    private int currentOffset;
+
+    /**
+     * The position of the current record in the history.
+     */
+    private long currentPosition = -1;
+
+    /**
+     * Private constructor; use {@link #open(Path)}.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize the capacity of a new segment file, in bytes
+     */
+    private SegmentedPatientHistory(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the history kept in a directory, creating the directory if it does not exist.
+     *
+     * @param directory the directory holding the segment files
+     * @return the opened history
+     * @throws IOException if the segment files cannot be opened or are inconsistent
+     */
+    public static SegmentedPatientHistory open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the history kept in a directory, creating the directory if it does not exist.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize the capacity of a new segment file, in bytes; a record larger than this
+     *                    gets a segment of its own
+     * @return the opened history
+     * @throws IOException if the segment files cannot be opened or are inconsistent
+     */
+    public static SegmentedPatientHistory open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < MIN_RECORD_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_RECORD_SIZE);
+        }
+        Files.createDirectories(directory);
+
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment file
+                }
+            }
+        }
+        bases.sort(null);
+
+        SegmentedPatientHistory history = new SegmentedPatientHistory(directory, segmentSize);
+        try {
+            for (int i = 0; i < bases.size(); i++) {
+                long base = bases.get(i);
+                if (base != history.size) {
+                    throw new IOException("History segment " + base + " does not follow record " + history.size);
+                }
+                boolean last = i == bases.size() - 1;
+                Segment segment = history.load(base, last ? segmentSize : 0);
+                history.segments.add(segment);
+                history.size += segment.count;
+            }
+            if (history.segments.isEmpty()) {
+                history.segments.add(history.load(0, segmentSize));
+            }
+        } catch (IOException | RuntimeException e) {
+            history.closeSegments();
+            throw e;
+        }
+        return history;
+    }
+
+    /**
+     * Returns the number of patient records in the history.
+     *
+     * @return the size of the history
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Appends a patient record to the end of the history.
+     * The record is in the operating system's page cache when this returns; call {@link #sync()}
+     * to force it to disk.
+     *
+     * @param patientRecord the PatientRecord object to append
+     * @throws IOException if a new segment is needed and cannot be created
+     */
+    public void append(PatientRecord patientRecord) throws IOException {
+        if (patientRecord == null) {
+            throw new IllegalArgumentException("patientRecord must not be null");
+        }
+        byte[] visitDate = utf8(patientRecord.getVisitDate());
+        byte[] diagnosis = utf8(patientRecord.getDiagnosis());
+        byte[] treatmentNotes = utf8(patientRecord.getTreatmentNotes());
+        int length = 8 + stringSize(visitDate) + stringSize(diagnosis) + stringSize(treatmentNotes);
+        int recordSize = HEADER_SIZE + length + TRAILER_SIZE;
+
+        Segment segment = segments.getLast();
+        if (segment.end + recordSize > segment.capacity) {
+            if (segment.count == 0) {
+                // Too small for this record: map the empty segment at a larger capacity
+                mapForAppending(segment, recordSize);
+            } else {
+                // Open the next segment before sealing this one, so a failure to open it leaves
+                // this one in place to append to, and a failure to seal it leaves the next one
+                Segment next = load(size, Math.max(segmentSize, recordSize));
+                segments.add(next);
+                seal(segment);
+                segment = next;
+            }
+        }
+
+        MappedByteBuffer records = segment.records;
+        int offset = segment.end;
+        int position = offset + HEADER_SIZE;
+        records.putLong(position, patientRecord.getPatientId());
+        position = putString(records, position + 8, visitDate);
+        position = putString(records, position, diagnosis);
+        position = putString(records, position, treatmentNotes);
+        records.putInt(position, length);
+        crc.reset();
+        crc.update(records.slice(offset + HEADER_SIZE, length));
+        records.putInt(offset, length);
+        records.putInt(offset + 4, (int) crc.getValue());
+
+        if (segment.count % INDEX_INTERVAL == 0) {
+            segment.offsets.putInt(segment.count / INDEX_INTERVAL * 4, offset);
+        }
+        segment.last = offset;
+        segment.end = offset + recordSize;
+        segment.count++;
+        size++;
+    }
+
+    /**
+     * Returns the patient record at a position in the history, without moving the current position.
+     *
+     * @param position the position of the record (0-based, oldest first)
+     * @return the PatientRecord object at that position
+     * @throws IndexOutOfBoundsException if the position is not in the history
+     */
+    public PatientRecord getRecord(long position) {
+        Segment segment = segments.get(segmentOf(position));
+        return decode(segment, offsetOf(segment, position));
+    }
+
+    /**
+     * Navigates to the patient record at a position in the history.
+     *
+     * @param position the position of the record (0-based, oldest first)
+     * @return the PatientRecord object navigated to
+     * @throws IndexOutOfBoundsException if the position is not in the history
+     */
+    public PatientRecord navigateToRecord(long position) {
+        int index = segmentOf(position);
+        Segment segment = segments.get(index);
+        moveTo(index, offsetOf(segment, position), position);
+        return getCurrentRecord();
+    }
+
+    /**
+     * Displays the newest patient record in the history.
+     *
+     * @return the newest PatientRecord object in the history, or null if the history is empty
+     */
+    public PatientRecord navigateToNewestRecord() {
+        if (size == 0) {
+            return null;
+        }
+        int index = segments.size() - 1;
+        while (segments.get(index).count == 0) {
+            index--;
+        }
+        moveTo(index, segments.get(index).last, size - 1);
+        return getCurrentRecord();
+    }
+
+    /**
+     * Displays the oldest patient record in the history.
+     *
+     * @return the oldest PatientRecord object in the history, or null if the history is empty
+     */
+    public PatientRecord navigateToOldestRecord() {
+        if (size == 0) {
+            return null;
+        }
+        moveTo(0, 0, 0);
+        return getCurrentRecord();
+    }
+
+    /**
+     * Navigates to the next patient record in the history.
+     *
+     * @return the next PatientRecord object in the history,
+     *          or the last record if there is no next record,
+     *          or null if there is no current record
+     */
+    public PatientRecord navigateToNextRecord() {
+        if (currentSegment < 0) {
+            return null;
+        }
+        if (currentPosition < size - 1) {
+            Segment segment = segments.get(currentSegment);
+            int next = currentOffset + recordSize(segment, currentOffset);
+            if (next < segment.end) {
+                moveTo(currentSegment, next, currentPosition + 1);
+            } else {
+                moveTo(currentSegment + 1, 0, currentPosition + 1);
+            }
+        }
+        return getCurrentRecord();
+    }
+
+    /**
+     * Navigates to the previous patient record in the history.
+     *
+     * @return the previous PatientRecord object in the history,
+     *          or the first record if there is no previous record,
+     *          or null if there is no current record
+     */
+    public PatientRecord navigateToPreviousRecord() {
+        if (currentSegment < 0) {
+            return null;
+        }
+        if (currentPosition > 0) {
+            if (currentOffset > 0) {
+                MappedByteBuffer records = segments.get(currentSegment).records;
+                int previousLength = records.getInt(currentOffset - TRAILER_SIZE);
+                moveTo(currentSegment, currentOffset - HEADER_SIZE - previousLength - TRAILER_SIZE, currentPosition - 1);
+            } else {
+                moveTo(currentSegment - 1, segments.get(currentSegment - 1).last, currentPosition - 1);
+            }
+        }
+        return getCurrentRecord();
+    }
+
+    /**
+     * Retrieves the current patient record.
+     *
+     * @return the current PatientRecord object, or null if there is no current record
+     */
+    public PatientRecord getCurrentRecord() {
+        return currentSegment < 0 ? null : decode(segments.get(currentSegment), currentOffset);
+    }
+
+    /**
+     * Returns the position of the current record.
+     *
+     * @return the position of the current record (0-based, oldest first), or -1 if there is none
+     */
+    public long getCurrentPosition() {
+        return currentPosition;
+    }
+
+    /**
+     * Checks if the current position is at the newest record.
+     *
+     * @return true if the current position is at the newest record, false otherwise
+     */
+    public boolean isAtNewest() {
+        return currentSegment >= 0 && currentPosition == size - 1;
+    }
+
+    /**
+     * Checks if the current position is at the oldest record.
+     *
+     * @return true if the current position is at the oldest record, false otherwise
+     */
+    public boolean isAtOldest() {
+        return currentSegment >= 0 && currentPosition == 0;
+    }
+
+    /**
+     * Forces every appended record to disk.
+     */
+    public void sync() {
+        Segment segment = segments.getLast();
+        segment.records.force();
+        segment.offsets.force();
+    }
+
+    /**
+     * Trims the segment being appended to down to its records and closes the history.
+     * Closing a history that is already closed does nothing.
+     *
+     * @throws IOException if the segment files cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            seal(segments.getLast());
+        } finally {
+            closeSegments();
+        }
+    }
+
+    /**
+     * Opens a segment, creating its files if they do not exist, and finds the end of its records.
+     *
+     * @param base     the position in the history of the segment's first record
+     * @param capacity the capacity to map the segment at for appending, or 0 to map it read-only
+     * @return the opened segment
+     * @throws IOException if the files cannot be opened
+     */
+    private Segment load(long base, int capacity) throws IOException {
+        FileChannel data = FileChannel.open(dataFile(base),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel index;
+        try {
+            index = FileChannel.open(indexFile(base),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        Segment segment = new Segment(base, data, index);
+        try {
+            recover(segment);
+            if (capacity > 0) {
+                mapForAppending(segment, capacity);
+            } else {
+                mapReadOnly(segment);
+                segment.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    /**
+     * Finds the end of a segment's records, starting from its last index entry that points at an
+     * intact record, and cuts off anything after it: a record cut short by a crash, or the unused
+     * capacity of a segment that was being appended to. Index entries for the records walked are
+     * rewritten.
+     *
+     * @param segment the segment to check
+     * @throws IOException if the files cannot be read or truncated
+     */
+    private void recover(Segment segment) throws IOException {
+        long dataSize = segment.data.size();
+        if (dataSize > Integer.MAX_VALUE) {
+            throw new IOException("History segment " + segment.base + " is too large");
+        }
+        ByteBuffer records = segment.data.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+        ByteBuffer offsets = segment.index.map(FileChannel.MapMode.READ_ONLY, 0, segment.index.size() & ~3L);
+
+        int entry = offsets.capacity() / 4 - 1;
+        while (entry > 0 && !(offsets.getInt(entry * 4) > offsets.getInt(entry * 4 - 4)
+                && isIntact(records, offsets.getInt(entry * 4)))) {
+            entry--;
+        }
+        entry = Math.max(entry, 0);
+
+        int offset = entry == 0 ? 0 : offsets.getInt(entry * 4);
+        int count = entry * INDEX_INTERVAL;
+        int last = 0;
+        int[] newEntries = new int[4];
+        int newEntryCount = 0;
+        while (isIntact(records, offset)) {
+            if (count % INDEX_INTERVAL == 0) {
+                if (newEntryCount == newEntries.length) {
+                    newEntries = Arrays.copyOf(newEntries, newEntryCount * 2);
+                }
+                newEntries[newEntryCount++] = offset;
+            }
+            last = offset;
+            offset += recordSize(records, offset);
+            count++;
+        }
+
+        segment.data.truncate(offset);
+        segment.index.truncate(entry * 4L);
+        ByteBuffer rewritten = ByteBuffer.allocate(newEntryCount * 4);
+        rewritten.asIntBuffer().put(newEntries, 0, newEntryCount);
+        while (rewritten.hasRemaining()) {
+            segment.index.write(rewritten, entry * 4L + rewritten.position());
+        }
+        segment.end = offset;
+        segment.last = last;
+        segment.count = count;
+    }
+
+    /**
+     * Trims a segment to its records, forces it to disk, maps it read-only and closes its files.
+     *
+     * @param segment the segment being appended to
+     * @throws IOException if the files cannot be truncated or mapped
+     */
+    private static void seal(Segment segment) throws IOException {
+        segment.records.force();
+        segment.offsets.force();
+        segment.data.truncate(segment.end);
+        segment.index.truncate(4L * ((segment.count + INDEX_INTERVAL - 1) / INDEX_INTERVAL));
+        mapReadOnly(segment);
+        segment.close();
+    }
+
+    /**
+     * Maps a segment's records and index read-write for appending. The segment is only changed
+     * once both are mapped, so a failure leaves it as it was.
+     *
+     * @param segment  the segment to map
+     * @param capacity the number of bytes to map for records, at least the segment's end
+     * @throws IOException if the files cannot be mapped
+     */
+    private static void mapForAppending(Segment segment, int capacity) throws IOException {
+        capacity = Math.max(capacity, segment.end);
+        MappedByteBuffer records = segment.data.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        MappedByteBuffer offsets = segment.index.map(FileChannel.MapMode.READ_WRITE, 0,
+                4L * (capacity / MIN_RECORD_SIZE / INDEX_INTERVAL + 1));
+        segment.capacity = capacity;
+        segment.records = records;
+        segment.offsets = offsets;
+    }
+
+    /**
+     * Maps a segment's records and index read-only at their current size.
+     *
+     * @param segment the segment to map
+     * @throws IOException if the files cannot be mapped
+     */
+    private static void mapReadOnly(Segment segment) throws IOException {
+        segment.capacity = segment.end;
+        segment.records = segment.data.map(FileChannel.MapMode.READ_ONLY, 0, segment.end);
+        segment.offsets = segment.index.map(FileChannel.MapMode.READ_ONLY, 0, segment.index.size());
+    }
+
+    /**
+     * Closes the files of every segment.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    private void closeSegments() throws IOException {
+        IOException failure = null;
+        for (Segment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        segments.clear();
+        currentSegment = -1;
+        currentPosition = -1;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Checks that a complete record with a matching checksum starts at an offset.
+     *
+     * @param records the segment's records
+     * @param offset  the offset to check
+     * @return true if an intact record starts there, false otherwise
+     */
+    private boolean isIntact(ByteBuffer records, int offset) {
+        if (offset < 0 || offset > records.capacity() - HEADER_SIZE - TRAILER_SIZE) {
+            return false;
+        }
+        int length = records.getInt(offset);
+        if (length < MIN_RECORD_SIZE - HEADER_SIZE - TRAILER_SIZE
+                || length > records.capacity() - offset - HEADER_SIZE - TRAILER_SIZE
+                || records.getInt(offset + HEADER_SIZE + length) != length) {
+            return false;
+        }
+        crc.reset();
+        crc.update(records.slice(offset + HEADER_SIZE, length));
+        return (int) crc.getValue() == records.getInt(offset + 4);
+    }
+
+    /**
+     * Returns the index of the segment holding a position, by binary search over the segments.
+     *
+     * @param position the position in the history
+     * @return the index of the segment
+     * @throws IndexOutOfBoundsException if the position is not in the history
+     */
+    private int segmentOf(long position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " is out of bounds for size " + size);
+        }
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).base <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the offset of a record in its segment, using the nearest index entry before it.
+     *
+     * @param segment  the segment holding the record
+     * @param position the position of the record in the history
+     * @return the offset of the record in the segment
+     */
+    private static int offsetOf(Segment segment, long position) {
+        int ordinal = (int) (position - segment.base);
+        int offset = segment.offsets.getInt(ordinal / INDEX_INTERVAL * 4);
+        for (int i = ordinal % INDEX_INTERVAL; i > 0; i--) {
+            offset += recordSize(segment.records, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Sets the current record.
+     *
+     * @param segment  the index of the segment holding the record
+     * @param offset   the offset of the record in the segment
+     * @param position the position of the record in the history
+     */
+    private void moveTo(int segment, int offset, long position) {
+        currentSegment = segment;
+        currentOffset = offset;
+        currentPosition = position;
+    }
+
+    /**
+     * Returns the size of the record at an offset, including its header and trailer.
+     *
+     * @param segment the segment holding the record
+     * @param offset  the offset of the record
+     * @return the size of the record in bytes
+     */
+    private static int recordSize(Segment segment, int offset) {
+        return recordSize(segment.records, offset);
+    }
+
+    /**
+     * Returns the size of the record at an offset, including its header and trailer.
+     *
+     * @param records the segment's records
+     * @param offset  the offset of the record
+     * @return the size of the record in bytes
+     */
+    private static int recordSize(ByteBuffer records, int offset) {
+        return HEADER_SIZE + records.getInt(offset) + TRAILER_SIZE;
+    }
+
+    /**
+     * Decodes the record at an offset of a segment.
+     *
+     * @param segment the segment holding the record
+     * @param offset  the offset of the record
+     * @return the decoded PatientRecord object
+     */
+    private static PatientRecord decode(Segment segment, int offset) {
+        MappedByteBuffer records = segment.records;
+        int position = offset + HEADER_SIZE;
+        long patientId = records.getLong(position);
+        position += 8;
+        String visitDate = getString(records, position);
+        position += stringSize(records, position);
+        String diagnosis = getString(records, position);
+        position += stringSize(records, position);
+        String treatmentNotes = getString(records, position);
+        return new PatientRecord(patientId, visitDate, diagnosis, treatmentNotes);
+    }
+
+    /**
+     * Returns the path of a segment's data file.
+     *
+     * @param base the position in the history of the segment's first record
+     * @return the path of the data file
+     */
+    private Path dataFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, DATA_SUFFIX));
+    }
+
+    /**
+     * Returns the path of a segment's index file.
+     *
+     * @param base the position in the history of the segment's first record
+     * @return the path of the index file
+     */
+    private Path indexFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, INDEX_SUFFIX));
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param value the string, or null
+     * @return the UTF-8 bytes, or null
+     */
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the size of a string written by putString.
+     *
+     * @param bytes the UTF-8 bytes of the string, or null
+     * @return the number of bytes putString writes
+     */
+    private static int stringSize(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Returns the size of a string stored at an offset.
+     *
+     * @param records the segment's records
+     * @param offset  the offset of the string
+     * @return the number of bytes the string takes
+     */
+    private static int stringSize(ByteBuffer records, int offset) {
+        return 4 + Math.max(0, records.getInt(offset));
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, or -1 for null.
+     *
+     * @param records the segment's records
+     * @param offset  the offset to write at
+     * @param bytes   the UTF-8 bytes of the string, or null
+     * @return the offset just past the string
+     */
+    private static int putString(ByteBuffer records, int offset, byte[] bytes) {
+        if (bytes == null) {
+            records.putInt(offset, -1);
+            return offset + 4;
+        }
+        records.putInt(offset, bytes.length);
+        records.put(offset + 4, bytes);
+        return offset + 4 + bytes.length;
+    }
+
+    /**
+     * Reads a string written by putString.
+     *
+     * @param records the segment's records
+     * @param offset  the offset of the string
+     * @return the string, or null
+     */
+    private static String getString(ByteBuffer records, int offset) {
+        int length = records.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        records.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Class representing one segment: a data file of records and its sparse index file.
+     */
+    private static final class Segment {
+        /**
+         * The position in the history of the segment's first record.
+         */
+        final long base;
+
+        /**
+         * The channels of the data and index files.
+         */
+        final FileChannel data, index;
+
+        /**
+         * The mapped records; read-write at full capacity while the segment is appended to.
+         */
+        MappedByteBuffer records;
+
+        /**
+         * The mapped index: the offset of every INDEX_INTERVAL-th record.
+         */
+        MappedByteBuffer offsets;
+
+        /**
+         * The number of bytes mapped for records.
+         */
+        int capacity;
+
+        /**
+         * The offset just past the last record.
+         */
+        int end;
+
+        /**
+         * The offset of the last record.
+         */
+        int last;
+
+        /**
+         * The number of records in the segment.
+         */
+        int count;
+
+        /**
+         * Parameterized constructor for Segment.
+         *
+         * @param base  the position in the history of the segment's first record
+         * @param data  the channel of the data file
+         * @param index the channel of the index file
+         */
+        Segment(long base, FileChannel data, FileChannel index) {
+            this.base = base;
+            this.data = data;
+            this.index = index;
+        }
+
+        /**
+         * Closes the segment's files if they are open. The mapped buffers stay valid until they are collected.
+         *
+         * @throws IOException if a file cannot be closed
+         */
+        void close() throws IOException {
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.codewithmagret.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class representing an inverted index from words to the rows of a history list that contain them.
+ * <p>
+ * Text is split into lower-case words at every character that is not a letter or digit, and
+ * each word keeps a posting list of the rows it appears in. Rows are added in increasing
+ * order, so posting lists stay sorted without any extra work and the index is updated as each
+ * record is added instead of being rebuilt. The words are kept sorted so that a prefix
+ * query only visits the words starting with that prefix. This class is not thread-safe.
+ */
+final class TextIndex {
+    /**
+     * Class representing the sorted, duplicate-free rows a word appears in.
+     */
+    private static final class Postings {
+        /**
+         * The rows, sorted in increasing order; only the first size entries are used.
+         */
+        int[] rows = new int[4];
+
+        /**
+         * The number of rows in the posting list.
+         */
+        int size;
+
+        /**
+         * Adds a row, ignoring it if it is already the last row.
+         *
+         * @param row the row to add, not smaller than any row already present
+         */
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row) {
+                return;
+            }
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    /**
+     * The posting list of each word, sorted by word.
+     */
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    /**
+     * Adds the words of a text to the index. Rows must be added in increasing order,
+     * though one row may be added several times for different fields.
+     *
+     * @param row  the row the text belongs to
+     * @param text the text to index, or null
+     */
+    void add(int row, String text) {
+        if (text == null) {
+            return;
+        }
+        for (String word : tokenize(text)) {
+            postings.computeIfAbsent(word, key -> new Postings()).add(row);
+        }
+    }
+
+    /**
+     * Returns the rows containing a word.
+     *
+     * @param term the word to look up; it is lower-cased before the lookup
+     * @return the matching rows in increasing order
+     */
+    int[] rowsWithTerm(String term) {
+        Postings list = postings.get(term.toLowerCase(Locale.ROOT));
+        return list == null ? new int[0] : Arrays.copyOf(list.rows, list.size);
+    }
+
+    /**
+     * Returns the rows containing any word that starts with a prefix.
+     *
+     * @param prefix the start of the words to look up; it is lower-cased before the lookup
+     * @return the matching rows in increasing order, without duplicates
+     */
+    int[] rowsWithPrefix(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        Map<String, Postings> matches = postings.subMap(from, true, from + Character.MAX_VALUE, true);
+
+        int total = 0;
+        for (Postings list : matches.values()) {
+            total += list.size;
+        }
+        int[] rows = new int[total];
+        int filled = 0;
+        for (Postings list : matches.values()) {
+            System.arraycopy(list.rows, 0, rows, filled, list.size);
+            filled += list.size;
+        }
+        if (matches.size() <= 1) {
+            return rows;
+        }
+
+        // Several words can appear in the same row, so sort the rows and drop duplicates
+        Arrays.sort(rows);
+        int unique = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (unique == 0 || rows[unique - 1] != rows[i]) {
+                rows[unique++] = rows[i];
+            }
+        }
+        return Arrays.copyOf(rows, unique);
+    }
+
+    /**
+     * Splits text into lower-case words at every character that is not a letter or digit.
+     *
+     * @param text the text to split
+     * @return the words of the text, in order and with repeats
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
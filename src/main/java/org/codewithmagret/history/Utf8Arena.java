@@ -0,0 +1,138 @@
+package org.codewithmagret.history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class representing an append-only store of strings kept off the Java heap.
+ * Strings are written as a length followed by their UTF-8 bytes into direct buffers
+ * allocated in chunks, and are addressed by a long reference holding the chunk
+ * and the offset within it. Chunks start small and double in size up to a limit, so the many
+ * short histories of a large store do not each reserve a large buffer. The chunks are released
+ * when the arena is garbage collected.
+ * <p>
+ * This class is not thread-safe. Bytes are never changed once written and the chunk array is
+ * replaced rather than resized in place, so a chunk array returned by {@link #chunks()} and
+ * safely published can be read by another thread while strings are appended.
+ */
+final class Utf8Arena {
+    /**
+     * The reference used for a null string.
+     */
+    static final long NULL_REF = -1L;
+
+    /**
+     * The size of the first chunk.
+     */
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    /**
+     * The size of the largest regular chunk; longer strings get a chunk of their own.
+     */
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The chunks of the arena, in allocation order; only the first chunkCount entries are used.
+     */
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+
+    /**
+     * The number of chunks allocated.
+     */
+    private int chunkCount;
+
+    /**
+     * The chunk strings are currently appended to, or null before the first string.
+     */
+    private ByteBuffer tail;
+
+    /**
+     * The index of the tail chunk in the list of chunks.
+     */
+    private int tailIndex = -1;
+
+    /**
+     * Appends a string to the arena.
+     *
+     * @param value the string to store, or null
+     * @return the reference of the stored string, or NULL_REF for null
+     */
+    long append(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = 4 + bytes.length;
+        if (needed > MAX_CHUNK_SIZE) {
+            // Give an oversized string a chunk of its own and keep appending to the current tail
+            ByteBuffer chunk = ByteBuffer.allocateDirect(needed);
+            chunk.putInt(bytes.length).put(bytes);
+            return (long) addChunk(chunk) << 32;
+        }
+        if (tail == null || tail.remaining() < needed) {
+            int chunkSize = tail == null ? MIN_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, tail.capacity() * 2);
+            tail = ByteBuffer.allocateDirect(Math.max(chunkSize, needed));
+            tailIndex = addChunk(tail);
+        }
+
+        int offset = tail.position();
+        tail.putInt(bytes.length).put(bytes);
+        return ((long) tailIndex << 32) | offset;
+    }
+
+    /**
+     * Returns the chunk array as it is now, for reading strings appended so far from another thread.
+     *
+     * @return the chunk array
+     */
+    ByteBuffer[] chunks() {
+        return chunks;
+    }
+
+    /**
+     * Reads a string from a chunk array returned by chunks().
+     *
+     * @param chunks the chunk array
+     * @param ref    a reference returned by append before the chunk array was taken
+     * @return the stored string, or null for NULL_REF
+     */
+    static String read(ByteBuffer[] chunks, long ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        ByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int offset = (int) ref;
+        byte[] bytes = new byte[chunk.getInt(offset)];
+        chunk.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of off-heap bytes the arena has allocated.
+     *
+     * @return the total capacity of all chunks
+     */
+    long allocatedBytes() {
+        long total = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            total += chunks[i].capacity();
+        }
+        return total;
+    }
+
+    /**
+     * Adds a chunk to the chunk array.
+     *
+     * @param chunk the new chunk
+     * @return the index of the chunk
+     */
+    private int addChunk(ByteBuffer chunk) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount] = chunk;
+        return chunkCount++;
+    }
+}
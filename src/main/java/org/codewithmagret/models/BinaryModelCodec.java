@@ -0,0 +1,393 @@
+package org.codewithmagret.models;
+
+import org.codewithmagret.util.StringDictionary;
+import org.codewithmagret.util.StringPool;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Class encoding Patient and PatientRecord objects into a compact, versioned binary form.
+ * <p>
+ * Every encoded object starts with one byte holding the format version in its high four bits
+ * and the kind of object in its low four. Numbers are written as varints, a visit date that is
+ * an ISO date is written as its epoch day, and strings are written as a varint header followed
+ * by their UTF-8 bytes. Objects are written straight into a ByteBuffer and read straight out of
+ * one, with no intermediate byte arrays or builders.
+ * <p>
+ * A codec created with a dictionary remembers the short strings of the stream it encodes or
+ * decodes, such as diagnoses, reasons for visit and treatment notes, and writes a repeated one
+ * as its dictionary code. The encoding and decoding codecs build the same dictionary as they go,
+ * so one codec must encode a whole stream and another decode it from the start, in order.
+ * Call {@link #reset()} at a stream boundary. A codec is not thread-safe.
+ * <p>
+ * String header: 0 for null, {@code (length + 1) << 1} for a literal of that many UTF-8 bytes,
+ * or {@code (code << 1) | 1} for a dictionary reference.
+ */
+public final class BinaryModelCodec {
+    /**
+     * The format version written by this codec.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The kinds of object, stored in the low four bits of the first byte.
+     */
+    private static final int PATIENT = 1, PATIENT_RECORD = 2;
+
+    /**
+     * The longest string, in chars, that is added to the dictionary.
+     */
+    private static final int MAX_DICTIONARY_LENGTH = 64;
+
+    /**
+     * The largest number of strings kept in the dictionary; later strings are written as literals.
+     */
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+
+    /**
+     * The visit date header for a null date and for a date written as a string;
+     * an epoch day is written as its zigzag form plus DATE_EPOCH_DAY.
+     */
+    private static final int DATE_NULL = 0, DATE_STRING = 1, DATE_EPOCH_DAY = 2;
+
+    /**
+     * The strings seen so far in the stream, or null if the codec has no dictionary.
+     */
+    private StringDictionary dictionary;
+
+    /**
+     * Buffer used to decode strings out of a ByteBuffer that has no accessible array.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * The epoch day of the last visit date decoded from its epoch day.
+     */
+    private int lastDay = PatientRecord.UNKNOWN_VISIT_DAY;
+
+    /**
+     * The ISO form of lastDay, so a run of records from the same day shares one string.
+     */
+    private String lastDate;
+
+    /**
+     * Default constructor for BinaryModelCodec, with a dictionary.
+     */
+    public BinaryModelCodec() {
+        this(true);
+    }
+
+    /**
+     * Parameterized constructor for BinaryModelCodec.
+     *
+     * @param useDictionary true to write repeated short strings as dictionary codes,
+     *                      false to write every string as a literal
+     */
+    public BinaryModelCodec(boolean useDictionary) {
+        this.dictionary = useDictionary ? new StringDictionary() : null;
+    }
+
+    /**
+     * Forgets the strings seen so far, for the start of a new stream.
+     */
+    public void reset() {
+        if (dictionary != null) {
+            dictionary = new StringDictionary();
+        }
+        lastDay = PatientRecord.UNKNOWN_VISIT_DAY;
+        lastDate = null;
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of a patient.
+     *
+     * @param patient the patient
+     * @return the largest number of bytes {@link #encode(Patient, ByteBuffer)} can write for it
+     */
+    public static int maxEncodedSize(Patient patient) {
+        return 1 + 10 + 1 + maxStringSize(patient.getName()) + maxStringSize(patient.getReasonForVisit());
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of a patient record.
+     *
+     * @param patientRecord the patient record
+     * @return the largest number of bytes {@link #encode(PatientRecord, ByteBuffer)} can write for it
+     */
+    public static int maxEncodedSize(PatientRecord patientRecord) {
+        return 1 + 10 + maxStringSize(patientRecord.visitDate) + maxStringSize(patientRecord.diagnosis)
+                + maxStringSize(patientRecord.treatmentNotes);
+    }
+
+    /**
+     * Writes a patient at the buffer's position. The time the patient joined the queue is not
+     * written, as it only has meaning inside the running process.
+     *
+     * @param patient the patient to write
+     * @param out     the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer has too little room;
+     *          see {@link #maxEncodedSize(Patient)}
+     */
+    public void encode(Patient patient, ByteBuffer out) {
+        out.put((byte) (VERSION << 4 | PATIENT));
+        putVarLong(out, patient.getNumericId());
+        TriageLevel level = patient.getTriageLevel();
+        out.put((byte) (level == null ? 0 : level.ordinal() + 1));
+        putString(out, patient.getName());
+        putString(out, patient.getReasonForVisit());
+    }
+
+    /**
+     * Writes a patient record at the buffer's position.
+     *
+     * @param patientRecord the patient record to write
+     * @param out           the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer has too little room;
+     *          see {@link #maxEncodedSize(PatientRecord)}
+     */
+    public void encode(PatientRecord patientRecord, ByteBuffer out) {
+        out.put((byte) (VERSION << 4 | PATIENT_RECORD));
+        putVarLong(out, patientRecord.patientId);
+        String visitDate = patientRecord.visitDate;
+        int day = patientRecord.visitEpochDay;
+        if (visitDate == null) {
+            out.put((byte) DATE_NULL);
+        } else if (day != PatientRecord.UNKNOWN_VISIT_DAY && visitDate.length() == 10) {
+            // Only the canonical yyyy-MM-dd form parses and is 10 chars long, so the day restores it exactly
+            putVarLong(out, (((day << 1) ^ (day >> 31)) & 0xFFFFFFFFL) + DATE_EPOCH_DAY);
+        } else {
+            out.put((byte) DATE_STRING);
+            putString(out, visitDate);
+        }
+        putString(out, patientRecord.diagnosis);
+        putString(out, patientRecord.treatmentNotes);
+    }
+
+    /**
+     * Reads a patient from the buffer's position.
+     *
+     * @param in the buffer to read from
+     * @return the decoded Patient object
+     * @throws IllegalArgumentException if the data is not a patient in a supported version
+     * @throws java.nio.BufferUnderflowException if the buffer ends inside the patient
+     */
+    public Patient decodePatient(ByteBuffer in) {
+        readHeader(in, PATIENT);
+        long id = getVarLong(in);
+        int level = in.get();
+        TriageLevel[] levels = TriageLevel.values();
+        if (level < 0 || level > levels.length) {
+            throw new IllegalArgumentException("Unknown triage level " + level);
+        }
+        String name = getString(in);
+        String reasonForVisit = getString(in);
+        return new Patient(id, name, reasonForVisit, level == 0 ? null : levels[level - 1]);
+    }
+
+    /**
+     * Reads a patient record from the buffer's position.
+     *
+     * @param in the buffer to read from
+     * @return the decoded PatientRecord object
+     * @throws IllegalArgumentException if the data is not a patient record in a supported version
+     * @throws java.nio.BufferUnderflowException if the buffer ends inside the record
+     */
+    public PatientRecord decodeRecord(ByteBuffer in) {
+        readHeader(in, PATIENT_RECORD);
+        PatientRecord patientRecord = new PatientRecord();
+        patientRecord.patientId = getVarLong(in);
+        long date = getVarLong(in);
+        if (date == DATE_STRING) {
+            patientRecord.setVisitDate(getString(in));
+        } else if (date != DATE_NULL) {
+            long zigzag = date - DATE_EPOCH_DAY;
+            int day = (int) (zigzag >>> 1) ^ -(int) (zigzag & 1);
+            if (day != lastDay || lastDate == null) {
+                lastDay = day;
+                lastDate = LocalDate.ofEpochDay(day).toString();
+            }
+            patientRecord.visitDate = lastDate;
+            patientRecord.visitEpochDay = day;
+        }
+        patientRecord.diagnosis = StringPool.SHARED.intern(getString(in));
+        patientRecord.treatmentNotes = getString(in);
+        return patientRecord;
+    }
+
+    /**
+     * Reads and checks the first byte of an object.
+     *
+     * @param in   the buffer to read from
+     * @param kind the kind of object expected
+     * @throws IllegalArgumentException if the version is not supported or the kind does not match
+     */
+    private static void readHeader(ByteBuffer in, int kind) {
+        int header = in.get() & 0xFF;
+        if (header >>> 4 == 0 || header >>> 4 > VERSION) {
+            throw new IllegalArgumentException("Unsupported codec version " + (header >>> 4));
+        }
+        if ((header & 0x0F) != kind) {
+            throw new IllegalArgumentException("Expected object kind " + kind + " but found " + (header & 0x0F));
+        }
+    }
+
+    /**
+     * Writes a string, as a dictionary reference if it has been written before.
+     *
+     * @param out   the buffer to write to
+     * @param value the string, or null
+     */
+    private void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        if (dictionary != null && value.length() <= MAX_DICTIONARY_LENGTH) {
+            int code = dictionary.codeOf(value);
+            if (code != StringDictionary.NULL_CODE) {
+                putVarLong(out, ((long) code << 1) | 1);
+                return;
+            }
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.encode(value);
+            }
+        }
+
+        putVarLong(out, (long) (utf8Length(value) + 1) << 1);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Reads a string written by putString.
+     *
+     * @param in the buffer to read from
+     * @return the string, or null
+     * @throws IllegalArgumentException if a dictionary reference is not in the dictionary
+     */
+    private String getString(ByteBuffer in) {
+        long header = getVarLong(in);
+        if (header == 0) {
+            return null;
+        }
+        if ((header & 1) != 0) {
+            long code = header >>> 1;
+            if (dictionary == null || code >= dictionary.size()) {
+                throw new IllegalArgumentException("Unknown dictionary code " + code);
+            }
+            return dictionary.decode((int) code);
+        }
+
+        long length = (header >>> 1) - 1;
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String of " + length + " bytes runs past the buffer");
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), (int) length, StandardCharsets.UTF_8);
+            in.position(in.position() + (int) length);
+        } else {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max((int) length, scratch.length * 2)];
+            }
+            in.get(scratch, 0, (int) length);
+            value = new String(scratch, 0, (int) length, StandardCharsets.UTF_8);
+        }
+        if (dictionary != null && value.length() <= MAX_DICTIONARY_LENGTH && dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.encode(value);
+        }
+        return value;
+    }
+
+    /**
+     * Writes an unsigned varint: seven bits per byte, low bits first, high bit set on all but the last byte.
+     *
+     * @param out   the buffer to write to
+     * @param value the value, treated as unsigned
+     */
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint written by putVarLong.
+     *
+     * @param in the buffer to read from
+     * @return the value
+     * @throws IllegalArgumentException if the varint is longer than ten bytes
+     */
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Returns the UTF-8 size of a string, counting an unpaired surrogate as one byte.
+     *
+     * @param value the string
+     * @return the number of bytes putString writes for its characters
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of a string.
+     *
+     * @param value the string, or null
+     * @return the largest number of bytes putString can write for it
+     */
+    private static int maxStringSize(String value) {
+        return 5 + (value == null ? 0 : value.length() * 3);
+    }
+}
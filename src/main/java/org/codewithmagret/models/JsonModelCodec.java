@@ -0,0 +1,189 @@
+package org.codewithmagret.models;
+
+import org.codewithmagret.util.JsonCursor;
+
+import java.io.IOException;
+
+/**
+ * Class converting Patient and PatientRecord objects to and from flat JSON objects.
+ * JSON is kept for interchange with other tools; {@link BinaryModelCodec} is the form used
+ * for persisting and shipping models in volume.
+ * <p>
+ * A patient is written as {@code {"id":"P1","name":...,"reasonForVisit":...,"triageLevel":"ROUTINE"}}
+ * and a patient record as {@code {"patientId":1,"visitDate":...,"diagnosis":...,"treatmentNotes":...}},
+ * the same keys the bulk history import reads. Unknown keys are ignored when reading.
+ */
+public final class JsonModelCodec {
+    /**
+     * Private constructor; this class only has static methods.
+     */
+    private JsonModelCodec() {}
+
+    /**
+     * Writes a patient as a JSON object.
+     *
+     * @param patient the patient to write
+     * @return the JSON text
+     */
+    public static String toJson(Patient patient) {
+        StringBuilder json = new StringBuilder(96);
+        try {
+            writeJson(patient, json);
+        } catch (IOException e) {
+            // StringBuilder never throws IOException
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Writes a patient record as a JSON object.
+     *
+     * @param patientRecord the patient record to write
+     * @return the JSON text
+     */
+    public static String toJson(PatientRecord patientRecord) {
+        StringBuilder json = new StringBuilder(96);
+        try {
+            writeJson(patientRecord, json);
+        } catch (IOException e) {
+            // StringBuilder never throws IOException
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Writes a patient as a JSON object straight to a destination, without building a string.
+     *
+     * @param patient the patient to write
+     * @param out     the destination to write to
+     * @throws IOException if writing to the destination fails
+     */
+    public static void writeJson(Patient patient, Appendable out) throws IOException {
+        out.append("{\"id\":");
+        writeString(patient.getId(), out);
+        out.append(",\"name\":");
+        writeString(patient.getName(), out);
+        out.append(",\"reasonForVisit\":");
+        writeString(patient.getReasonForVisit(), out);
+        out.append(",\"triageLevel\":");
+        writeString(patient.getTriageLevel() == null ? null : patient.getTriageLevel().name(), out);
+        out.append('}');
+    }
+
+    /**
+     * Writes a patient record as a JSON object straight to a destination, without building a string.
+     *
+     * @param patientRecord the patient record to write
+     * @param out           the destination to write to
+     * @throws IOException if writing to the destination fails
+     */
+    public static void writeJson(PatientRecord patientRecord, Appendable out) throws IOException {
+        out.append("{\"patientId\":").append(Long.toString(patientRecord.getPatientId()));
+        out.append(",\"visitDate\":");
+        writeString(patientRecord.getVisitDate(), out);
+        out.append(",\"diagnosis\":");
+        writeString(patientRecord.getDiagnosis(), out);
+        out.append(",\"treatmentNotes\":");
+        writeString(patientRecord.getTreatmentNotes(), out);
+        out.append('}');
+    }
+
+    /**
+     * Reads a patient from a JSON object.
+     *
+     * @param json the JSON text
+     * @return the decoded Patient object
+     * @throws IllegalArgumentException if the text is not a flat JSON object or a value is not valid
+     */
+    public static Patient patientFromJson(String json) {
+        JsonCursor cursor = new JsonCursor(json);
+        long id = 0;
+        String name = null;
+        String reasonForVisit = null;
+        TriageLevel triageLevel = TriageLevel.ROUTINE;
+
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String key = cursor.readString();
+                cursor.expect(':');
+                String value = cursor.readValue();
+                switch (key) {
+                    case "id" -> id = value == null ? 0 : PatientIdAllocator.parseLenient(value);
+                    case "name" -> name = value;
+                    case "reasonForVisit" -> reasonForVisit = value;
+                    case "triageLevel" -> triageLevel = value == null ? null : TriageLevel.valueOf(value);
+                    default -> { }
+                }
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.expectEnd();
+        return new Patient(id, name, reasonForVisit, triageLevel);
+    }
+
+    /**
+     * Reads a patient record from a JSON object.
+     *
+     * @param json the JSON text
+     * @return the decoded PatientRecord object
+     * @throws IllegalArgumentException if the text is not a flat JSON object or a value is not valid
+     */
+    public static PatientRecord recordFromJson(String json) {
+        JsonCursor cursor = new JsonCursor(json);
+        PatientRecord patientRecord = new PatientRecord();
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String key = cursor.readString();
+                cursor.expect(':');
+                String value = cursor.readValue();
+                switch (key) {
+                    case "patientId" -> patientRecord.setPatientId(value == null ? 0 : PatientIdAllocator.parseLenient(value));
+                    case "visitDate" -> patientRecord.setVisitDate(value);
+                    case "diagnosis" -> patientRecord.setDiagnosis(value);
+                    case "treatmentNotes" -> patientRecord.setTreatmentNotes(value);
+                    default -> { }
+                }
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.expectEnd();
+        return patientRecord;
+    }
+
+    /**
+     * Writes a string as a JSON string literal, or null.
+     *
+     * @param value the string, or null
+     * @param out   the destination to write to
+     * @throws IOException if writing to the destination fails
+     */
+    public static void writeString(String value, Appendable out) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value, start, i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        out.append(value, start, value.length()).append('"');
+    }
+}
@@ -1,20 +1,18 @@
 package org.codewithmagret.models;
 
+import org.codewithmagret.util.StringPool;
+
 /**
  * Model class representing a Patient entity with id, name, and reason for visit.
  */
 public class Patient {
 
-    /**
-     * Static counter to generate unique IDs for patients.
-     */
-    private static int idCounter = 1;
-
     /**
      * The ID of the patient.
      * This field is used to uniquely identify a patient in the system.
+     * It is kept as a number and only formatted when displayed; 0 means no ID has been assigned.
      */
-    private String id;
+    private long id;
 
     /**
      * The name of the patient.
@@ -25,9 +23,22 @@ public class Patient {
     /**
      * The reason for the patient's visit.
      * This field is used to store the reason why the patient is visiting the healthcare facility.
+     * It is interned in StringPool.SHARED, so patients with the same reason share one String.
      */
     private String reasonForVisit;
 
+    /**
+     * The triage level of the patient.
+     * This field is used to decide how urgently the patient is served from the waiting queue.
+     */
+    private TriageLevel triageLevel = TriageLevel.ROUTINE;
+
+    /**
+     * The time the patient joined the waiting queue, as a System.nanoTime() value.
+     * This field is used to measure how long the patient waited before being served; 0 means unknown.
+     */
+    private long enqueuedAtNanos;
+
     /**
      * Default constructor for Patient. Required for JSON deserialization.
      */
@@ -40,24 +51,59 @@ public class Patient {
      * @param reasonForVisit the reason for the patient's visit
      */
     public Patient(String name, String reasonForVisit) {
+        this(name, reasonForVisit, TriageLevel.ROUTINE);
+    }
+
+    /**
+     * Parameterized constructor for Patient with a triage level.
+     *
+     * @param name the name of the patient
+     * @param reasonForVisit the reason for the patient's visit
+     * @param triageLevel the triage level of the patient
+     */
+    public Patient(String name, String reasonForVisit, TriageLevel triageLevel) {
         this.id = generateId();
         this.name = name;
-        this.reasonForVisit = reasonForVisit;
+        this.reasonForVisit = StringPool.SHARED.intern(reasonForVisit);
+        this.triageLevel = triageLevel;
+    }
+
+    /**
+     * Parameterized constructor for Patient with an existing ID.
+     * Used when restoring a persisted patient; the caller is responsible for seeding
+     * PatientIdAllocator past the restored IDs.
+     *
+     * @param id the numeric ID of the patient
+     * @param name the name of the patient
+     * @param reasonForVisit the reason for the patient's visit
+     * @param triageLevel the triage level of the patient
+     */
+    public Patient(long id, String name, String reasonForVisit, TriageLevel triageLevel) {
+        this.id = id;
+        this.name = name;
+        this.reasonForVisit = StringPool.SHARED.intern(reasonForVisit);
+        this.triageLevel = triageLevel;
     }
 
     /**
      * Getter for id
-     * @return the ID of the patient
+     * @return the display form of the patient's ID, or null if no ID has been assigned
      */
-    public String getId() { return id; }
+    public String getId() { return id == 0 ? null : PatientIdAllocator.format(id); }
 
     /**
-     * Generates a unique ID for the patient using a static counter.
+     * Getter for the numeric id
+     * @return the numeric ID of the patient, or 0 if no ID has been assigned
+     */
+    public long getNumericId() { return id; }
+
+    /**
+     * Generates a unique ID for the patient using the shared PatientIdAllocator.
      *
-     * @return a unique ID string for the patient
+     * @return a unique numeric ID for the patient
      */
-    private String generateId() {
-        return "P" + (idCounter++);
+    private long generateId() {
+        return PatientIdAllocator.nextId();
     }
 
     /**
@@ -82,19 +128,49 @@ public class Patient {
      * Setter for reasonForVisit
      * @param reasonForVisit the reason for the patient's visit to set
      */
-    public void setReasonForVisit(String reasonForVisit) { this.reasonForVisit = reasonForVisit; }
+    public void setReasonForVisit(String reasonForVisit) {
+        this.reasonForVisit = StringPool.SHARED.intern(reasonForVisit);
+    }
+
+    /**
+     * Getter for triageLevel
+     * @return the triage level of the patient
+     */
+    public TriageLevel getTriageLevel() { return triageLevel; }
+
+    /**
+     * Setter for triageLevel.
+     * For a patient already in a waiting queue, use PatientWaitingQueue.changeTriageLevel
+     * so the queue moves the patient as well.
+     *
+     * @param triageLevel the triage level of the patient to set
+     */
+    public void setTriageLevel(TriageLevel triageLevel) { this.triageLevel = triageLevel; }
+
+    /**
+     * Getter for enqueuedAtNanos
+     * @return the System.nanoTime() at which the patient joined the waiting queue
+     */
+    public long getEnqueuedAtNanos() { return enqueuedAtNanos; }
+
+    /**
+     * Setter for enqueuedAtNanos
+     * @param enqueuedAtNanos the System.nanoTime() at which the patient joined the waiting queue
+     */
+    public void setEnqueuedAtNanos(long enqueuedAtNanos) { this.enqueuedAtNanos = enqueuedAtNanos; }
 
     /**
      * Returns a string representation of the Patient object.
      *
-     * @return a string containing the patient's ID, name, and reason for visit
+     * @return a string containing the patient's ID, name, reason for visit and triage level
      */
     @Override
     public String toString() {
         return "Patient { " +
-                "id=" + id +
+                "id=" + getId() +
                 ", name='" + name + '\'' +
                 ", reasonForVisit=" + reasonForVisit +
+                ", triageLevel=" + triageLevel +
                 '}';
     }
 }
@@ -0,0 +1,93 @@
+package org.codewithmagret.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that hands out unique numeric patient IDs.
+ * IDs come from one shared counter with a single atomic increment, so they are contiguous
+ * whichever thread asks for them. Intake on short-lived threads, such as one virtual thread
+ * per HTTP request, neither skips IDs nor leaves per-thread state behind.
+ */
+public final class PatientIdAllocator {
+    /**
+     * The prefix used when an ID is displayed.
+     */
+    public static final String PREFIX = "P";
+
+    /**
+     * The next ID to hand out.
+     */
+    private static final AtomicLong next = new AtomicLong(1);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PatientIdAllocator() {}
+
+    /**
+     * Allocates the next unique patient ID.
+     *
+     * @return a positive ID that has not been handed out before
+     */
+    public static long nextId() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * Seeds the allocator from persisted state, so IDs stay unique across restarts.
+     * After this call every allocated ID is at least nextId. Seeding never moves the
+     * allocator backwards.
+     *
+     * @param nextId the lowest ID that may be handed out from now on
+     */
+    public static void seed(long nextId) {
+        next.accumulateAndGet(nextId, Math::max);
+    }
+
+    /**
+     * Formats a numeric ID for display.
+     *
+     * @param id the numeric ID
+     * @return the display form of the ID, for example "P42"
+     */
+    public static String format(long id) {
+        return PREFIX + id;
+    }
+
+    /**
+     * Parses the display form of an ID.
+     *
+     * @param id the display form of the ID, for example "P42"
+     * @return the numeric ID, or -1 if the string is not a valid ID
+     */
+    public static long parse(String id) {
+        if (id == null || id.length() <= PREFIX.length() || !id.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return -1;
+        }
+        try {
+            long value = Long.parseLong(id, PREFIX.length(), id.length(), 10);
+            return value > 0 ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses an ID given either as a plain number or in its display form, as IDs appear in
+     * imported files, JSON and batch commands.
+     *
+     * @param value the ID, for example "42" or "P42", or an empty string for no patient
+     * @return the numeric ID, or 0 for an empty string
+     * @throws IllegalArgumentException if the string is not a valid ID
+     */
+    public static long parseLenient(String value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+        long id = Character.isDigit(value.charAt(0)) ? Long.parseLong(value) : parse(value);
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid patient ID: " + value);
+        }
+        return id;
+    }
+}
@@ -1,21 +1,44 @@
 package org.codewithmagret.models;
 
+import org.codewithmagret.util.StringPool;
+
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 /**
  * Model class representing a PatientRecord entity.
  */
 public class PatientRecord {
+    /**
+     * The epoch day used for a visit date that is missing or not an ISO date (yyyy-MM-dd).
+     * It sorts before every real date.
+     */
+    public static final int UNKNOWN_VISIT_DAY = Integer.MIN_VALUE;
+
+    /**
+     * The numeric ID of the patient this record belongs to.
+     * This field is used to tie a record to a Patient; 0 means the record is not tied to a patient.
+     */
+    long patientId;
+
     /**
      * The date of the patient's visit.
      * This field is used to store the date when the patient visited the healthcare facility.
      */
     String visitDate;
 
+    /**
+     * The visit date as a day count since 1970-01-01.
+     * This field is used to compare and index visit dates without parsing the string again;
+     * it is kept in step with visitDate by the constructors and setVisitDate.
+     */
+    int visitEpochDay = UNKNOWN_VISIT_DAY;
+
     /**
      * The diagnosis for the patient.
      * This field is used to store the diagnosis made by the healthcare provider
-     * based on the patient's symptoms and examination.
+     * based on the patient's symptoms and examination. It is interned in StringPool.SHARED,
+     * so records with the same diagnosis share one String.
      */
     String diagnosis;
 
@@ -40,10 +63,36 @@ public class PatientRecord {
      */
     public PatientRecord(String visitDate, String diagnosis, String treatmentNotes) {
         this.visitDate = visitDate;
-        this.diagnosis = diagnosis;
+        this.visitEpochDay = parseEpochDay(visitDate);
+        this.diagnosis = StringPool.SHARED.intern(diagnosis);
         this.treatmentNotes = treatmentNotes;
     }
 
+    /**
+     * Parameterized constructor for PatientRecord tied to a patient.
+     *
+     * @param patientId the numeric ID of the patient this record belongs to
+     * @param visitDate the date of the patient's visit
+     * @param diagnosis the diagnosis for the patient
+     * @param treatmentNotes any treatment notes for the patient
+     */
+    public PatientRecord(long patientId, String visitDate, String diagnosis, String treatmentNotes) {
+        this(visitDate, diagnosis, treatmentNotes);
+        this.patientId = patientId;
+    }
+
+    /**
+     * Getter for patientId
+     * @return the numeric ID of the patient this record belongs to, or 0 if it is not tied to a patient
+     */
+    public long getPatientId() { return patientId; }
+
+    /**
+     * Setter for patientId
+     * @param patientId the numeric ID of the patient this record belongs to
+     */
+    public void setPatientId(long patientId) { this.patientId = patientId; }
+
     /**
      * Getter for visitDate
      * @return the date of the patient's visit
@@ -54,7 +103,33 @@ public class PatientRecord {
      * Setter for visitDate
      * @param visitDate the date of the patient's visit to set
      */
-    public void setVisitDate(String visitDate) { this.visitDate = visitDate;}
+    public void setVisitDate(String visitDate) {
+        this.visitDate = visitDate;
+        this.visitEpochDay = parseEpochDay(visitDate);
+    }
+
+    /**
+     * Getter for visitEpochDay
+     * @return the visit date as a day count since 1970-01-01, or UNKNOWN_VISIT_DAY if it is not an ISO date
+     */
+    public int getVisitEpochDay() { return visitEpochDay; }
+
+    /**
+     * Parses an ISO visit date (yyyy-MM-dd) into a day count since 1970-01-01.
+     *
+     * @param visitDate the visit date to parse
+     * @return the epoch day, or UNKNOWN_VISIT_DAY if the date is missing or not an ISO date
+     */
+    public static int parseEpochDay(String visitDate) {
+        if (visitDate == null) {
+            return UNKNOWN_VISIT_DAY;
+        }
+        try {
+            return (int) LocalDate.parse(visitDate.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return UNKNOWN_VISIT_DAY;
+        }
+    }
 
     /**
      * Getter for diagnosis
@@ -66,7 +141,7 @@ public class PatientRecord {
      * Setter for diagnosis
      * @param diagnosis the diagnosis for the patient to set
      */
-    public void setDiagnosis(String diagnosis) { this.diagnosis = diagnosis; }
+    public void setDiagnosis(String diagnosis) { this.diagnosis = StringPool.SHARED.intern(diagnosis); }
 
     /**
      * Getter for treatmentNotes
@@ -0,0 +1,32 @@
+package org.codewithmagret.models;
+
+/**
+ * Enum representing how urgently a patient needs to be seen.
+ * Levels are declared from least to most urgent, so a higher ordinal is served first.
+ */
+public enum TriageLevel {
+    /**
+     * Regular visit; served in arrival order.
+     */
+    ROUTINE,
+
+    /**
+     * Needs to be seen soon; served before routine patients.
+     */
+    URGENT,
+
+    /**
+     * Needs to be seen immediately; served before everyone else.
+     */
+    EMERGENCY;
+
+    /**
+     * Returns the next more urgent level, used when a waiting patient is aged up.
+     *
+     * @return the next level, or this level if it is already the most urgent
+     */
+    public TriageLevel escalate() {
+        TriageLevel[] levels = values();
+        return ordinal() == levels.length - 1 ? this : levels[ordinal() + 1];
+    }
+}
@@ -0,0 +1,314 @@
+package org.codewithmagret.ui;
+
+import org.codewithmagret.history.HistoryAnalytics;
+import org.codewithmagret.history.PatientHistoryList;
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.PatientIdAllocator;
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.models.TriageLevel;
+import org.codewithmagret.waitingRoom.PatientWaitingQueue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * BatchRunner runs a stream of commands against the waiting queue and the patient history
+ * without prompts, for replaying a day's intake and serve events or scripting the system.
+ * <p>
+ * Each line holds one command: a verb, then its arguments separated by '|'. Blank lines and
+ * lines starting with '#' are ignored. Every other line writes one result line, and a line that
+ * cannot be run writes a line starting with "error". The commands are:
+ * <pre>
+ * add name|reason                  add a routine patient to the queue
+ * emergency level|name|reason      add a patient at URGENT or EMERGENCY level
+ * serve                            serve the next patient
+ * remove id                        remove a patient from the queue
+ * position id                      show a patient's position in the queue
+ * list [offset [limit]]            list the queue, one patient per line after the result line
+ * stats                            show the queue statistics
+ * record patientId|date|diagnosis|notes   append a record to the history
+ * newest, oldest, next, previous, current  navigate the history
+ * between from|to                  list the records visited between two dates
+ * search word                      search the history; end the word with * to match a prefix
+ * report                           show the history report
+ * </pre>
+ * Runs of record commands are appended to the history in one step each, and all output goes
+ * through the single writer passed to {@link #run(BufferedReader, Writer)}, so a large stream
+ * is limited by parsing rather than by console output.
+ */
+public final class BatchRunner {
+    /**
+     * The largest number of record commands appended to the history in one step.
+     */
+    private static final int RECORD_BATCH = 4096;
+
+    /**
+     * The waiting queue the commands run against.
+     */
+    private final PatientWaitingQueue waitingQueue;
+
+    /**
+     * The patient history the commands run against.
+     */
+    private final PatientHistoryList history;
+
+    /**
+     * The reports over the patient history list, updated as records are added.
+     */
+    private final HistoryAnalytics analytics;
+
+    /**
+     * Records parsed from consecutive record commands and not yet appended to the history.
+     */
+    private final List<PatientRecord> pendingRecords = new ArrayList<>();
+
+    /**
+     * Summary of a batch run.
+     *
+     * @param commands the number of commands run
+     * @param errors   the number of commands that could not be run
+     * @param elapsed  the time the run took
+     */
+    public record Summary(long commands, long errors, Duration elapsed) {
+        /**
+         * Returns the throughput of the run.
+         *
+         * @return the commands run per second, or 0 if no time passed
+         */
+        public double commandsPerSecond() {
+            long nanos = elapsed.toNanos();
+            return nanos == 0 ? 0.0 : commands * 1_000_000_000.0 / nanos;
+        }
+
+        /**
+         * Override of the toString method for Summary.
+         * @return a one-line summary of the run
+         */
+        @Override
+        public String toString() {
+            return String.format("Ran %d commands (%d errors) in %.2f s: %.0f commands/s, %.1f million/min",
+                    commands, errors, elapsed.toNanos() / 1e9, commandsPerSecond(), commandsPerSecond() * 60 / 1e6);
+        }
+    }
+
+    /**
+     * Constructor for BatchRunner.
+     *
+     * @param waitingQueue the PatientWaitingQueue object the commands run against
+     * @param history the PatientHistoryList object the commands run against
+     */
+    public BatchRunner(PatientWaitingQueue waitingQueue, PatientHistoryList history) {
+        this.waitingQueue = waitingQueue;
+        this.history = history;
+        this.analytics = new HistoryAnalytics(history);
+    }
+
+    /**
+     * Runs every command of a stream, in order, and flushes the output when the stream ends.
+     *
+     * @param in  the command stream
+     * @param out the writer receiving the result lines
+     * @return the summary of the run
+     * @throws IOException if the stream cannot be read or the output cannot be written
+     */
+    public Summary run(BufferedReader in, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long commands = 0;
+        long errors = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            commands++;
+            try {
+                runCommand(line, out);
+            } catch (IllegalArgumentException e) {
+                flushRecords(out);
+                errors++;
+                out.write("error line " + lineNumber + ": " + e.getMessage() + "\n");
+            }
+        }
+        flushRecords(out);
+        out.flush();
+        return new Summary(commands, errors, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param line the command line, stripped of surrounding whitespace
+     * @param out  the writer receiving the result lines
+     * @throws IOException if the output cannot be written
+     * @throws IllegalArgumentException if the command is unknown or its arguments are not valid
+     */
+    private void runCommand(String line, Writer out) throws IOException {
+        int space = line.indexOf(' ');
+        String verb = (space < 0 ? line : line.substring(0, space)).toLowerCase(Locale.ROOT);
+        String arguments = space < 0 ? "" : line.substring(space + 1).strip();
+
+        if (verb.equals("record")) {
+            String[] fields = fields(arguments, 2, 4);
+            pendingRecords.add(new PatientRecord(PatientIdAllocator.parseLenient(fields[0]), fields[1],
+                    fields.length > 2 ? fields[2] : null, fields.length > 3 ? fields[3] : null));
+            if (pendingRecords.size() == RECORD_BATCH) {
+                flushRecords(out);
+            }
+            return;
+        }
+        flushRecords(out);
+
+        switch (verb) {
+            case "add" -> {
+                String[] fields = fields(arguments, 2, 2);
+                Patient added = waitingQueue.addPatientToQueue(new Patient(fields[0], fields[1]));
+                out.write("added " + added.getId() + "\n");
+            }
+            case "emergency" -> {
+                String[] fields = fields(arguments, 3, 3);
+                TriageLevel level = TriageLevel.valueOf(fields[0].toUpperCase(Locale.ROOT));
+                Patient added = waitingQueue.addPatientToQueue(new Patient(fields[1], fields[2], level));
+                out.write("added " + added.getId() + " " + level + "\n");
+            }
+            case "serve" -> {
+                Patient served = waitingQueue.serveNext();
+                out.write(served == null ? "empty\n" : "served " + served + "\n");
+            }
+            case "remove" -> {
+                Patient removed = waitingQueue.removeById(PatientIdAllocator.parseLenient(arguments));
+                out.write(removed == null ? "not found " + arguments + "\n" : "removed " + removed.getId() + "\n");
+            }
+            case "position" -> {
+                int position = waitingQueue.positionOf(PatientIdAllocator.parseLenient(arguments));
+                out.write(position < 0 ? "not found " + arguments + "\n" : "position " + position + "\n");
+            }
+            case "list" -> {
+                String[] bounds = arguments.isEmpty() ? new String[0] : arguments.split("\\s+");
+                int offset = bounds.length > 0 ? Integer.parseInt(bounds[0]) : 0;
+                int limit = bounds.length > 1 ? Integer.parseInt(bounds[1]) : Integer.MAX_VALUE;
+                out.write("queue " + waitingQueue.size() + "\n");
+                waitingQueue.writeQueueTo(out, offset, limit);
+            }
+            case "stats" -> out.write(waitingQueue.metrics().snapshot() + "\n");
+            case "newest" -> writeRecord(out, history.navigateToNewestRecord());
+            case "oldest" -> writeRecord(out, history.navigateToOldestRecord());
+            case "next" -> writeRecord(out, history.navigateToNextRecord());
+            case "previous" -> writeRecord(out, history.navigateToPreviousRecord());
+            case "current" -> writeRecord(out, history.getCurrentRecord());
+            case "between" -> {
+                String[] fields = fields(arguments, 2, 2);
+                writeRecords(out, history.recordsBetween(parseDate(fields[0]), parseDate(fields[1])));
+            }
+            case "search" -> {
+                if (arguments.isEmpty()) {
+                    throw new IllegalArgumentException("search needs a word");
+                }
+                writeRecords(out, arguments.endsWith("*")
+                        ? history.searchPrefix(arguments.substring(0, arguments.length() - 1))
+                        : history.searchTerm(arguments));
+            }
+            case "report" -> out.write(analytics.refresh() + "\n");
+            default -> throw new IllegalArgumentException("unknown command " + verb);
+        }
+    }
+
+    /**
+     * Appends the pending records to the history in one step and writes their result lines.
+     *
+     * @param out the writer receiving the result lines
+     * @throws IOException if the output cannot be written
+     */
+    private void flushRecords(Writer out) throws IOException {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        int position = history.size();
+        history.addAll(pendingRecords);
+        for (int i = 0; i < pendingRecords.size(); i++) {
+            out.write("recorded " + (position + i) + "\n");
+        }
+        pendingRecords.clear();
+    }
+
+    /**
+     * Writes a history record as a result line.
+     *
+     * @param out           the writer receiving the result line
+     * @param patientRecord the record, or null if there is none
+     * @throws IOException if the output cannot be written
+     */
+    private static void writeRecord(Writer out, PatientRecord patientRecord) throws IOException {
+        out.write(patientRecord == null ? "no record\n" : patientRecord + "\n");
+    }
+
+    /**
+     * Writes a count line followed by one line per record.
+     *
+     * @param out     the writer receiving the result lines
+     * @param records the records
+     * @throws IOException if the output cannot be written
+     */
+    private static void writeRecords(Writer out, List<PatientRecord> records) throws IOException {
+        out.write("records " + records.size() + "\n");
+        for (PatientRecord patientRecord : records) {
+            out.write(patientRecord + "\n");
+        }
+    }
+
+    /**
+     * Splits the arguments of a command on '|' and strips each field.
+     *
+     * @param arguments the arguments
+     * @param min       the fewest fields the command takes
+     * @param max       the most fields the command takes
+     * @return the fields
+     * @throws IllegalArgumentException if there are too few or too many fields
+     */
+    private static String[] fields(String arguments, int min, int max) {
+        String[] fields = new String[max];
+        int count = 0;
+        int start = 0;
+        while (true) {
+            int bar = arguments.indexOf('|', start);
+            if (count == max) {
+                throw new IllegalArgumentException("expected at most " + max + " fields separated by |");
+            }
+            fields[count++] = (bar < 0 ? arguments.substring(start) : arguments.substring(start, bar)).strip();
+            if (bar < 0) {
+                break;
+            }
+            start = bar + 1;
+        }
+        if (count < min) {
+            throw new IllegalArgumentException("expected at least " + min + " fields separated by |");
+        }
+        return count == max ? fields : Arrays.copyOf(fields, count);
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date.
+     *
+     * @param value the date
+     * @return the parsed date
+     * @throws IllegalArgumentException if the date is not valid
+     */
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date " + value);
+        }
+    }
+}
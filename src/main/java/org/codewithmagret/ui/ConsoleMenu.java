@@ -1,16 +1,22 @@
 package org.codewithmagret.ui;
 
+import org.codewithmagret.history.HistoryAnalytics;
 import org.codewithmagret.history.PatientHistoryList;
 import org.codewithmagret.models.Patient;
 import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.models.TriageLevel;
 import org.codewithmagret.waitingRoom.PatientWaitingQueue;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * ConsoleMenu provides a simple text-based interface for managing patients in a waiting room
  * and viewing patient history. It allows users to add patients to the queue, serve patients,
- * insert emergency patients at specific positions, and navigate through patient history records.
+ * add emergency patients by triage level, and navigate through patient history records.
  */
 public class ConsoleMenu {
     /**
@@ -30,6 +36,11 @@ public class ConsoleMenu {
      */
     private final PatientHistoryList history;
 
+    /**
+     * The reports over the patient history list, updated as records are added.
+     */
+    private final HistoryAnalytics analytics;
+
     /**
      * Constructor for ConsoleMenu.
      *
@@ -41,6 +52,7 @@ public class ConsoleMenu {
         this.scanner = scanner;
         this.waitingQueue = waitingQueue;
         this.history = history;
+        this.analytics = new HistoryAnalytics(history);
     }
 
     /**
@@ -78,9 +90,12 @@ public class ConsoleMenu {
             System.out.println("\n*** Waiting Room Menu ***");
             System.out.println("1. Add patient");
             System.out.println("2. Serve next patient");
-            System.out.println("3. Emergency add patient at position");
+            System.out.println("3. Emergency add patient");
             System.out.println("4. Print queue");
-            System.out.println("5. Back");
+            System.out.println("5. Remove patient from queue");
+            System.out.println("6. Find patient position");
+            System.out.println("7. Show queue statistics");
+            System.out.println("8. Back");
 
             int choice = readInt("Choose an option: ");
 
@@ -89,7 +104,10 @@ public class ConsoleMenu {
                 case 2 -> serveNextPatient();
                 case 3 -> emergencyInsertFlow();
                 case 4 -> printQueue();
-                case 5 -> { return; }
+                case 5 -> removePatient();
+                case 6 -> findPatientPosition();
+                case 7 -> System.out.println("\n" + waitingQueue.metrics().snapshot());
+                case 8 -> { return; }
                 default -> System.out.println("Invalid option. Try again.");
             }
         }
@@ -123,26 +141,55 @@ public class ConsoleMenu {
     }
 
     /**
-     * Handles the flow for inserting an emergency patient at a specific position in the waiting queue.
-     * It prompts the user for patient details and the desired position, then attempts to insert the patient.
+     * Handles the flow for adding an emergency patient to the waiting queue.
+     * It prompts the user for patient details and a triage level, then adds the patient
+     * to the lane for that level, ahead of every less urgent patient.
      */
     public void emergencyInsertFlow() {
         String name = readLine("Name: ");
         String reason = readLine("Reason for visit: ");
 
-        int position = readInt("Insert patient from position 0 to " + waitingQueue.size() + ": ");
+        System.out.println("1. Urgent");
+        System.out.println("2. Emergency");
+        int choice = readInt("Choose a triage level: ");
 
-        Patient emergencyPatient = new Patient(name, reason);
-        boolean inserted = waitingQueue.insertPatientAtPosition(emergencyPatient, position);
+        while (choice != 1 && choice != 2) {
+            System.out.println("\nInvalid triage level. Choose 1 or 2.");
+            choice = readInt("Choose a triage level: ");
+        }
 
-        while (!inserted) {
-            System.out.println("\nInvalid position. Insert patient from position 0 to " + waitingQueue.size());
-            position = readInt("Insert patient from position 0 to " + waitingQueue.size() + ": ");
-            inserted = waitingQueue.insertPatientAtPosition(emergencyPatient, position);
+        TriageLevel level = choice == 1 ? TriageLevel.URGENT : TriageLevel.EMERGENCY;
+        Patient emergencyPatient = waitingQueue.addPatientToQueue(new Patient(name, reason, level));
+        System.out.println("\nEmergency patient added to the " + level + " lane.\n" + emergencyPatient);
+    }
 
-            if  (inserted) {
-                System.out.println("\nEmergency patient inserted at position " + position + ".");
-            }
+    /**
+     * Handles the flow for removing a patient who left the waiting room or did not show up.
+     * It prompts the user for the patient ID and removes that patient from the queue.
+     */
+    private void removePatient() {
+        String id = readLine("Patient ID: ");
+
+        Patient removed = waitingQueue.removeById(id);
+        if (removed == null) {
+            System.out.println("\nNo patient with ID " + id + " in the queue.");
+        } else {
+            System.out.println("\nRemoved patient from the queue: " + removed);
+        }
+    }
+
+    /**
+     * Handles the flow for finding where a patient is in the waiting queue.
+     * It prompts the user for the patient ID and displays their position.
+     */
+    private void findPatientPosition() {
+        String id = readLine("Patient ID: ");
+
+        int position = waitingQueue.positionOf(id);
+        if (position < 0) {
+            System.out.println("\nNo patient with ID " + id + " in the queue.");
+        } else {
+            System.out.println("\nPatient " + id + " is at position " + position + ".");
         }
     }
 
@@ -151,11 +198,16 @@ public class ConsoleMenu {
      * If the queue is empty, it informs the user accordingly.
      */
     public void printQueue() {
-        String queueState = waitingQueue.printAllPatientInQueue();
-        if (queueState.isEmpty()) {
+        if (waitingQueue.isEmpty()) {
             System.out.println("\nThe waiting queue is currently empty.");
-        } else {
-            System.out.print("\nPatient Waiting Queue:\n" + queueState);
+            return;
+        }
+
+        System.out.print("\nPatient Waiting Queue:\n");
+        try {
+            waitingQueue.writeQueueUtf8To(System.out, 0, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            System.out.println("Error printing the queue: " + e.getMessage());
         }
     }
 
@@ -165,7 +217,7 @@ public class ConsoleMenu {
      * and view the current record.
      */
     private void historyMenu() {
-        if (history.size == 0) {
+        if (history.size() == 0) {
             history.seedTenRecords();
         }
 
@@ -178,7 +230,11 @@ public class ConsoleMenu {
             System.out.println("5. Show current record");
             System.out.println("6. Show all records");
             System.out.println("7. Show all records in reverse");
-            System.out.println("8. Back");
+            System.out.println("8. Jump to first record on or after a date");
+            System.out.println("9. Show records between two dates");
+            System.out.println("10. Search records");
+            System.out.println("11. Show history report");
+            System.out.println("12. Back");
 
             int choice = readInt("Choose an option: ");
 
@@ -243,8 +299,41 @@ public class ConsoleMenu {
                     System.out.print("\nPatient Record from newest to oldest:\n" + reverseRecord);
                     };
                 }
-                case 8 -> { return; }
-                default -> System.out.println("\nInvalid option. Choose between 1 and 8.");
+                case 8 -> {
+                    LocalDate date = readDate("Enter date (yyyy-MM-dd): ");
+                    PatientRecord record = history.navigateToFirstOnOrAfter(date);
+                    if (record == null) {
+                        System.out.println("\nNo record on or after " + date + ".");
+                    } else {
+                        System.out.println("\nFirst record on or after " + date + ":\n" + record);
+                    }
+                }
+                case 9 -> {
+                    LocalDate from = readDate("Enter start date (yyyy-MM-dd): ");
+                    LocalDate to = readDate("Enter end date (yyyy-MM-dd): ");
+                    List<PatientRecord> records = history.recordsBetween(from, to);
+                    if (records.isEmpty()) {
+                        System.out.println("\nNo records between " + from + " and " + to + ".");
+                    } else {
+                        System.out.println("\nPatient Record from " + from + " to " + to + ":");
+                        records.forEach(System.out::println);
+                    }
+                }
+                case 10 -> {
+                    String query = readLine("Enter a word (end it with * to match the start of words): ");
+                    List<PatientRecord> records = query.endsWith("*")
+                            ? history.searchPrefix(query.substring(0, query.length() - 1))
+                            : history.searchTerm(query);
+                    if (records.isEmpty()) {
+                        System.out.println("\nNo records match \"" + query + "\".");
+                    } else {
+                        System.out.println("\nRecords matching \"" + query + "\":");
+                        records.forEach(System.out::println);
+                    }
+                }
+                case 11 -> System.out.println("\n" + analytics.refresh());
+                case 12 -> { return; }
+                default -> System.out.println("\nInvalid option. Choose between 1 and 12.");
             }
         }
     }
@@ -268,6 +357,24 @@ public class ConsoleMenu {
         }
     }
 
+    /**
+     * Helper method to read a date from the user with a prompt.
+     * It handles invalid input and continues to prompt until a valid yyyy-MM-dd date is entered.
+     *
+     * @param prompt the message to display to the user when asking for input
+     * @return the date entered by the user
+     */
+    private LocalDate readDate(String prompt) {
+        while (true) {
+            String raw = readLine(prompt);
+            try {
+                return LocalDate.parse(raw);
+            } catch (DateTimeParseException e) {
+                System.out.println("Please enter a valid date as yyyy-MM-dd.");
+            }
+        }
+    }
+
     /**
      * Helper method to read a line of text from the user with a prompt.
      *
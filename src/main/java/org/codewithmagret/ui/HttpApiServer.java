@@ -0,0 +1,515 @@
+package org.codewithmagret.ui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.codewithmagret.history.HistoryCursor;
+import org.codewithmagret.history.PatientHistoryList;
+import org.codewithmagret.models.JsonModelCodec;
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.models.TriageLevel;
+import org.codewithmagret.waitingRoom.PatientWaitingQueue;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HttpApiServer exposes the waiting queue and the patient history as a JSON API over HTTP,
+ * using the JDK's built-in HTTP server. Every exchange runs on its own virtual thread, so a
+ * client waiting on a slow network holds no platform thread, and many thousands of clients can
+ * be connected at once.
+ * <p>
+ * The endpoints are:
+ * <pre>
+ * GET  /queue?offset=0&amp;limit=100   one page of the queue, in the order patients will be served
+ * POST /queue/patients             add a patient: {"name":...,"reasonForVisit":...[,"triageLevel":...]}
+ * POST /queue/emergency            add a patient at URGENT or EMERGENCY level (EMERGENCY if not given)
+ * POST /queue/serve                serve the next patient; 204 if the queue is empty
+ * GET  /history?offset=0&amp;limit=100 one page of the history, oldest first
+ * POST /history                    append a record: {"patientId":...,"visitDate":...,"diagnosis":...,"treatmentNotes":...}
+ * GET  /history/newest             the newest record
+ * GET  /history/oldest             the oldest record
+ * GET  /history/{position}         the record at a position, 0 being the oldest
+ * </pre>
+ * History navigation is stateless: each record is returned with its position and the size of
+ * the history, and a client moves to the next or previous record by asking for the position
+ * beside it, so clients never share or move the history's own current record. Each request
+ * reads one version of the history through its own HistoryCursor, so the size it returns and the
+ * records it returns always agree, even while records are being appended.
+ * <p>
+ * Responses are written straight to the connection with chunked encoding through a small
+ * buffer, never built as whole strings, so a page costs the same memory however many clients
+ * ask for it at once. Errors are returned as {"error":...} with a 4xx status, or 500 if the
+ * request failed on the server's side.
+ */
+public final class HttpApiServer implements Closeable {
+    /**
+     * The default number of entries in a page.
+     */
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The largest number of entries in a page.
+     */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The largest request body accepted, in bytes.
+     */
+    static final int MAX_BODY_BYTES = 64 * 1024;
+
+    /**
+     * The number of pending connections the listening socket queues before refusing new ones.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * The size of the buffer between a response and its connection, in chars.
+     */
+    private static final int RESPONSE_BUFFER = 8192;
+
+    /**
+     * The waiting queue the API serves.
+     */
+    private final PatientWaitingQueue waitingQueue;
+
+    /**
+     * The patient history the API serves.
+     */
+    private final PatientHistoryList history;
+
+    /**
+     * Lock serializing records appended to the history, which takes one writer at a time.
+     * Reads of the history do not take it.
+     */
+    private final ReentrantLock historyWriteLock = new ReentrantLock();
+
+    /**
+     * The underlying HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The executor running one virtual thread per exchange.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Parameterized constructor for HttpApiServer. The server does not accept connections
+     * until {@link #start()} is called.
+     *
+     * @param address      the address to listen on; port 0 picks a free port
+     * @param waitingQueue the PatientWaitingQueue object the API serves
+     * @param history      the PatientHistoryList object the API serves
+     * @throws IOException if the address cannot be bound
+     */
+    public HttpApiServer(InetSocketAddress address, PatientWaitingQueue waitingQueue, PatientHistoryList history)
+            throws IOException {
+        this.waitingQueue = waitingQueue;
+        this.history = history;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/queue", exchange -> handle(exchange, this::routeQueue));
+        server.createContext("/history", exchange -> handle(exchange, this::routeHistory));
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Getter for the port the server listens on.
+     *
+     * @return the bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections, waits up to one second for running exchanges to finish,
+     * then stops the virtual threads still running.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Routes a request under /queue.
+     *
+     * @param exchange the exchange
+     * @param path     the request path
+     * @throws IOException if the request cannot be read or the response cannot be written
+     */
+    private void routeQueue(HttpExchange exchange, String path) throws IOException {
+        switch (path) {
+            case "/queue" -> {
+                requireMethod(exchange, "GET");
+                writeQueuePage(exchange);
+            }
+            case "/queue/patients" -> {
+                requireMethod(exchange, "POST");
+                Patient request = JsonModelCodec.patientFromJson(readBody(exchange));
+                TriageLevel level = request.getTriageLevel() == null ? TriageLevel.ROUTINE : request.getTriageLevel();
+                writePatient(exchange, 201, waitingQueue.addPatientToQueue(newPatient(request, level)));
+            }
+            case "/queue/emergency" -> {
+                requireMethod(exchange, "POST");
+                Patient request = JsonModelCodec.patientFromJson(readBody(exchange));
+                TriageLevel level = request.getTriageLevel() == null || request.getTriageLevel() == TriageLevel.ROUTINE
+                        ? TriageLevel.EMERGENCY : request.getTriageLevel();
+                writePatient(exchange, 201, waitingQueue.addPatientToQueue(newPatient(request, level)));
+            }
+            case "/queue/serve" -> {
+                requireMethod(exchange, "POST");
+                Patient served = waitingQueue.serveNext();
+                if (served == null) {
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    writePatient(exchange, 200, served);
+                }
+            }
+            default -> throw new ApiException(404, "no endpoint " + path);
+        }
+    }
+
+    /**
+     * Routes a request under /history.
+     *
+     * @param exchange the exchange
+     * @param path     the request path
+     * @throws IOException if the request cannot be read or the response cannot be written
+     */
+    private void routeHistory(HttpExchange exchange, String path) throws IOException {
+        if (path.equals("/history")) {
+            if (exchange.getRequestMethod().equals("POST")) {
+                appendRecord(exchange);
+            } else {
+                requireMethod(exchange, "GET");
+                writeHistoryPage(exchange);
+            }
+            return;
+        }
+        requireMethod(exchange, "GET");
+        String target = path.startsWith("/history/") ? path.substring("/history/".length()) : "";
+        // Read one version of the history, so the position, size and record returned agree with each other
+        HistoryCursor cursor = history.openCursor();
+        int size = cursor.size();
+        int position = switch (target) {
+            case "newest" -> size - 1;
+            case "oldest" -> 0;
+            default -> parseInt(target, "position");
+        };
+        if (position < 0 || position >= size) {
+            throw new ApiException(404, "no record at position " + target);
+        }
+        writeRecord(exchange, 200, position, size, cursor.moveTo(position));
+    }
+
+    /**
+     * Appends the record in the request body to the history and returns it with its position.
+     *
+     * @param exchange the exchange
+     * @throws IOException if the request cannot be read or the response cannot be written
+     */
+    private void appendRecord(HttpExchange exchange) throws IOException {
+        PatientRecord patientRecord = JsonModelCodec.recordFromJson(readBody(exchange));
+        int position;
+        int size;
+        historyWriteLock.lock();
+        try {
+            history.addAll(List.of(patientRecord));
+            size = history.size();
+            position = size - 1;
+        } finally {
+            historyWriteLock.unlock();
+        }
+        writeRecord(exchange, 201, position, size, patientRecord);
+    }
+
+    /**
+     * Writes one page of the waiting queue.
+     *
+     * @param exchange the exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void writeQueuePage(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        int offset = queryInt(query, "offset", 0);
+        int limit = Math.min(queryInt(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        List<Patient> page = waitingQueue.listPatients(offset, limit);
+        try (Writer out = openResponse(exchange, 200)) {
+            out.write("{\"size\":" + waitingQueue.size() + ",\"offset\":" + offset + ",\"patients\":[");
+            for (int i = 0; i < page.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                JsonModelCodec.writeJson(page.get(i), out);
+            }
+            out.write("]}");
+        }
+    }
+
+    /**
+     * Writes one page of the history, oldest first. Each record is written as soon as it is read.
+     *
+     * @param exchange the exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void writeHistoryPage(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        int offset = queryInt(query, "offset", 0);
+        int limit = Math.min(queryInt(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        HistoryCursor cursor = history.openCursor();
+        int size = cursor.size();
+        int end = (int) Math.min(size, (long) offset + limit);
+        try (Writer out = openResponse(exchange, 200)) {
+            out.write("{\"size\":" + size + ",\"offset\":" + offset + ",\"records\":[");
+            for (int position = offset; position < end; position++) {
+                if (position > offset) {
+                    out.write(',');
+                }
+                JsonModelCodec.writeJson(position == offset ? cursor.moveTo(position) : cursor.next(), out);
+            }
+            out.write("]}");
+        }
+    }
+
+    /**
+     * Writes a patient as the whole response.
+     *
+     * @param exchange the exchange
+     * @param status   the response status
+     * @param patient  the patient
+     * @throws IOException if the response cannot be written
+     */
+    private static void writePatient(HttpExchange exchange, int status, Patient patient) throws IOException {
+        try (Writer out = openResponse(exchange, status)) {
+            JsonModelCodec.writeJson(patient, out);
+        }
+    }
+
+    /**
+     * Writes a history record with its position and the size of the history as the whole response.
+     *
+     * @param exchange      the exchange
+     * @param status        the response status
+     * @param position      the position of the record
+     * @param size          the size of the history
+     * @param patientRecord the record
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeRecord(HttpExchange exchange, int status, int position, int size,
+                                    PatientRecord patientRecord) throws IOException {
+        try (Writer out = openResponse(exchange, status)) {
+            out.write("{\"position\":" + position + ",\"size\":" + size + ",\"record\":");
+            JsonModelCodec.writeJson(patientRecord, out);
+            out.write('}');
+        }
+    }
+
+    /**
+     * Runs a route, turning a request it rejects into an error response and any other failure
+     * into a 500 response, and always ends the exchange.
+     *
+     * @param exchange the exchange
+     * @param route    the route to run
+     */
+    private static void handle(HttpExchange exchange, Route route) {
+        try (exchange) {
+            try {
+                route.run(exchange, exchange.getRequestURI().getPath());
+            } catch (ApiException e) {
+                writeError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                writeError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Request " + exchange.getRequestURI() + " failed: " + e);
+                writeError(exchange, 500, "internal error");
+            }
+        } catch (IOException e) {
+            // The client went away; there is no one left to answer
+        }
+    }
+
+    /**
+     * Writes an error object as the whole response.
+     *
+     * @param exchange the exchange
+     * @param status   the response status
+     * @param message  the error message
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeError(HttpExchange exchange, int status, String message) throws IOException {
+        try (Writer out = openResponse(exchange, status)) {
+            out.write("{\"error\":");
+            JsonModelCodec.writeString(message, out);
+            out.write('}');
+        }
+    }
+
+    /**
+     * Sends the response headers for a chunked JSON response and opens a buffered writer on its body.
+     *
+     * @param exchange the exchange
+     * @param status   the response status
+     * @return the writer; closing it ends the response
+     * @throws IOException if the headers cannot be sent
+     */
+    private static Writer openResponse(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                RESPONSE_BUFFER);
+    }
+
+    /**
+     * Reads the request body as UTF-8 text.
+     *
+     * @param exchange the exchange
+     * @return the request body
+     * @throws IOException if the body cannot be read
+     * @throws IllegalArgumentException if the body is larger than MAX_BODY_BYTES
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Checks the method of a request.
+     *
+     * @param exchange the exchange
+     * @param method   the method the endpoint takes
+     * @throws IllegalArgumentException if the request uses another method, answered with 405
+     */
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new ApiException(405, "method " + exchange.getRequestMethod() + " not allowed");
+        }
+    }
+
+    /**
+     * Creates the patient to add from a request, with a newly allocated ID.
+     *
+     * @param request the patient read from the request body
+     * @param level   the triage level to add the patient at
+     * @return the new Patient object
+     * @throws IllegalArgumentException if the name or reason for visit is missing
+     */
+    private static Patient newPatient(Patient request, TriageLevel level) {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new IllegalArgumentException("name is required");
+        }
+        if (request.getReasonForVisit() == null || request.getReasonForVisit().isBlank()) {
+            throw new IllegalArgumentException("reasonForVisit is required");
+        }
+        return new Patient(request.getName(), request.getReasonForVisit(), level);
+    }
+
+    /**
+     * Returns an integer parameter of a query string.
+     *
+     * @param query        the raw query string, or null
+     * @param name         the parameter name
+     * @param defaultValue the value if the parameter is not present
+     * @return the parameter value
+     * @throws IllegalArgumentException if the value is not a non-negative integer
+     */
+    private static int queryInt(String query, String name, int defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(name)) {
+                return parseInt(URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8), name);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Parses a non-negative integer.
+     *
+     * @param value the text
+     * @param name  the name of the value, for the error message
+     * @return the parsed value
+     * @throws IllegalArgumentException if the value is not a non-negative integer
+     */
+    private static int parseInt(String value, String name) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("invalid " + name + " " + value);
+    }
+
+    /**
+     * Functional interface for the handler of one group of endpoints.
+     */
+    @FunctionalInterface
+    private interface Route {
+        /**
+         * Handles a request.
+         *
+         * @param exchange the exchange
+         * @param path     the request path
+         * @throws IOException if the request cannot be read or the response cannot be written
+         */
+        void run(HttpExchange exchange, String path) throws IOException;
+    }
+
+    /**
+     * Exception thrown when a request cannot be answered; answered with its status and message.
+     */
+    private static final class ApiException extends IllegalArgumentException {
+        /**
+         * Serialization version of ApiException.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The HTTP status the request is answered with.
+         */
+        private final int status;
+
+        /**
+         * Parameterized constructor for ApiException.
+         *
+         * @param status  the HTTP status the request is answered with
+         * @param message the error message
+         */
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.codewithmagret.util;
+
+/**
+ * Class reading the tokens of a flat JSON object, one whose values are strings, numbers,
+ * booleans or null, from a string. It is used by the bulk history import and the JSON form
+ * of the models; nested objects and arrays are rejected.
+ */
+public final class JsonCursor {
+    /**
+     * The text being read.
+     */
+    private final String text;
+
+    /**
+     * The index of the next character.
+     */
+    private int index;
+
+    /**
+     * Parameterized constructor for JsonCursor.
+     *
+     * @param text the text to read
+     */
+    public JsonCursor(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Skips whitespace and consumes a character if it is next.
+     *
+     * @param c the character to consume
+     * @return true if the character was consumed, false otherwise
+     */
+    public boolean consume(char c) {
+        skipWhitespace();
+        if (index < text.length() && text.charAt(index) == c) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips whitespace and consumes a character that must be next.
+     *
+     * @param c the character to consume
+     * @throws IllegalArgumentException if the character is not next
+     */
+    public void expect(char c) {
+        if (!consume(c)) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + index);
+        }
+    }
+
+    /**
+     * Checks that only whitespace is left.
+     *
+     * @throws IllegalArgumentException if anything else is left
+     */
+    public void expectEnd() {
+        skipWhitespace();
+        if (index != text.length()) {
+            throw new IllegalArgumentException("Unexpected text at " + index);
+        }
+    }
+
+    /**
+     * Reads a scalar value: a string, a number, true, false or null.
+     *
+     * @return the value as a string, or null for a JSON null
+     * @throws IllegalArgumentException if the value is not a scalar
+     */
+    public String readValue() {
+        skipWhitespace();
+        if (index < text.length() && text.charAt(index) == '"') {
+            return readString();
+        }
+        int start = index;
+        while (index < text.length() && ",} \t".indexOf(text.charAt(index)) < 0) {
+            index++;
+        }
+        String literal = text.substring(start, index);
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+            throw new IllegalArgumentException("Expected a scalar value at " + start);
+        }
+        return literal;
+    }
+
+    /**
+     * Reads a string, decoding its escapes.
+     *
+     * @return the string
+     * @throws IllegalArgumentException if no well-formed string is next
+     */
+    public String readString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (index < text.length()) {
+            char c = text.charAt(index++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (index >= text.length()) {
+                break;
+            }
+            char escape = text.charAt(index++);
+            switch (escape) {
+                case 'n' -> value.append('\n');
+                case 't' -> value.append('\t');
+                case 'r' -> value.append('\r');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    if (index + 4 > text.length()) {
+                        throw new IllegalArgumentException("Bad unicode escape at " + index);
+                    }
+                    value.append((char) Integer.parseInt(text, index, index + 4, 16));
+                    index += 4;
+                }
+                default -> value.append(escape);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    /**
+     * Skips whitespace.
+     */
+    private void skipWhitespace() {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.codewithmagret.util;
+
+/**
+ * Class representing a hash map from primitive long keys to primitive long values,
+ * typically counts. Keys and values are stored unboxed in an open-addressing table with
+ * linear probing, so lookups and updates allocate nothing. This class is not thread-safe.
+ */
+public class LongLongMap {
+    /**
+     * Callback receiving the entries of a map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Receives one entry.
+         *
+         * @param key   the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(long key, long value);
+    }
+
+    /**
+     * The largest fraction of slots in use before the table grows.
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * The keys of the table; only meaningful where the slot is used.
+     */
+    private long[] keys;
+
+    /**
+     * The values of the table; only meaningful where the slot is used.
+     */
+    private long[] values;
+
+    /**
+     * Marks the slots that hold an entry.
+     */
+    private boolean[] used;
+
+    /**
+     * The number of entries in the map.
+     */
+    private int size;
+
+    /**
+     * The number of entries at which the table grows.
+     */
+    private int resizeAt;
+
+    /**
+     * Default constructor for LongLongMap.
+     */
+    public LongLongMap() {
+        allocate(16);
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the size of the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a key is present.
+     *
+     * @param key the key to look up
+     * @return true if the key has a value, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return used[find(key)];
+    }
+
+    /**
+     * Returns the value mapped to a key.
+     *
+     * @param key          the key to look up
+     * @param defaultValue the value to return if the key is not present
+     * @return the mapped value, or defaultValue if the key is not present
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        int slot = find(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(long key, long value) {
+        int slot = find(key);
+        values[slot] = value;
+        if (!used[slot]) {
+            insertAt(slot, key);
+        }
+    }
+
+    /**
+     * Adds to the value of a key, treating a missing key as 0.
+     *
+     * @param key   the key
+     * @param delta the amount to add
+     * @return the new value
+     */
+    public long addTo(long key, long delta) {
+        int slot = find(key);
+        if (used[slot]) {
+            return values[slot] += delta;
+        }
+        values[slot] = delta;
+        insertAt(slot, key);
+        return delta;
+    }
+
+    /**
+     * Adds every value of another map to this map, key by key.
+     *
+     * @param other the map to add
+     */
+    public void addAll(LongLongMap other) {
+        other.forEach(this::addTo);
+    }
+
+    /**
+     * Passes every entry of the map to a callback, in no particular order.
+     *
+     * @param consumer the callback receiving each key and value
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot holding a key, or the empty slot where it would be inserted.
+     *
+     * @param key the key
+     * @return the slot of the key
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Claims an empty slot for a new key whose value has already been written.
+     *
+     * @param slot the empty slot returned by find
+     * @param key  the new key
+     */
+    private void insertAt(int slot, long key) {
+        keys[slot] = key;
+        used[slot] = true;
+        if (++size >= resizeAt) {
+            grow();
+        }
+    }
+
+    /**
+     * Doubles the table and reinserts every entry.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    /**
+     * Allocates empty arrays for the table.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,393 @@
+package org.codewithmagret.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Class representing an ordered sequence backed by a rank-augmented treap.
+ * Every node keeps the size of its subtree, so inserting, removing and reading
+ * an element at a given position (0-based rank) all run in expected O(log n),
+ * instead of the O(n) walk needed by a linked list.
+ * This class is not thread-safe; callers are expected to guard it themselves.
+ *
+ * @param <E> the type of the elements held in the tree
+ */
+public class RankedTree<E> implements Iterable<E> {
+
+    /**
+     * Class representing a single node of the tree.
+     * A node is also used as a handle to its element, so callers can keep it
+     * and later find or remove the element without searching for it.
+     *
+     * @param <E> the type of the element stored in the node
+     */
+    public static final class Node<E> {
+        /**
+         * The element stored in this node.
+         */
+        private final E value;
+
+        /**
+         * The random heap priority of this node.
+         * This field is used to keep the tree balanced in expectation.
+         */
+        private final int priority;
+
+        /**
+         * The number of nodes in the subtree rooted at this node, including itself.
+         */
+        private int count = 1;
+
+        /**
+         * The left child, parent and right child of this node.
+         */
+        private Node<E> left, right, parent;
+
+        /**
+         * Parameterized constructor for Node.
+         *
+         * @param value the element to be stored in the node
+         */
+        private Node(E value) {
+            this.value = value;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+
+        /**
+         * Getter for value
+         * @return the element stored in this node
+         */
+        public E value() { return value; }
+    }
+
+    /**
+     * The root of the tree, or null if the tree is empty.
+     */
+    private Node<E> root;
+
+    /**
+     * Returns the number of elements in the tree.
+     *
+     * @return the size of the tree
+     */
+    public int size() {
+        return count(root);
+    }
+
+    /**
+     * Checks if the tree is empty.
+     *
+     * @return true if the tree holds no elements, false otherwise
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Inserts an element at a specific position in the sequence.
+     *
+     * @param rank  the position at which to insert the element (0-based index, 0 to size inclusive)
+     * @param value the element to be inserted
+     * @return the node holding the inserted element
+     * @throws IndexOutOfBoundsException if the rank is out of bounds
+     */
+    public Node<E> insert(int rank, E value) {
+        if (rank < 0 || rank > size()) {
+            throw new IndexOutOfBoundsException("rank " + rank + " out of bounds for size " + size());
+        }
+
+        Node<E> node = new Node<>(value);
+        if (root == null) {
+            root = node;
+            return node;
+        }
+
+        // Walk down to the leaf slot for this rank, counting the new node on the way
+        Node<E> parent = root;
+        while (true) {
+            parent.count++;
+            int leftCount = count(parent.left);
+            if (rank <= leftCount) {
+                if (parent.left == null) {
+                    parent.left = node;
+                    break;
+                }
+                parent = parent.left;
+            } else {
+                rank -= leftCount + 1;
+                if (parent.right == null) {
+                    parent.right = node;
+                    break;
+                }
+                parent = parent.right;
+            }
+        }
+        node.parent = parent;
+
+        // Restore the heap order on priorities
+        while (node.parent != null && node.priority > node.parent.priority) {
+            if (node.parent.left == node) {
+                rotateRight(node.parent);
+            } else {
+                rotateLeft(node.parent);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the position of the first element matching a condition, for a tree whose elements
+     * are ordered so that the condition is false for a prefix of the sequence and true for the rest.
+     * This is a binary search down the tree and takes O(log n).
+     *
+     * @param condition the condition, false before some position and true from it on
+     * @return the position of the first element matching the condition, or size() if none match
+     */
+    public int firstRankWhere(Predicate<? super E> condition) {
+        int rank = 0;
+        int found = size();
+        Node<E> node = root;
+        while (node != null) {
+            int leftCount = count(node.left);
+            if (condition.test(node.value)) {
+                found = rank + leftCount;
+                node = node.left;
+            } else {
+                rank += leftCount + 1;
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the element at a specific position in the sequence.
+     *
+     * @param rank the position of the element (0-based index)
+     * @return the element at that position
+     * @throws IndexOutOfBoundsException if the rank is out of bounds
+     */
+    public E get(int rank) {
+        return nodeAt(rank).value;
+    }
+
+    /**
+     * Returns the node at a specific position in the sequence.
+     *
+     * @param rank the position of the node (0-based index)
+     * @return the node at that position
+     * @throws IndexOutOfBoundsException if the rank is out of bounds
+     */
+    public Node<E> nodeAt(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("rank " + rank + " out of bounds for size " + size());
+        }
+
+        Node<E> node = root;
+        while (true) {
+            int leftCount = count(node.left);
+            if (rank < leftCount) {
+                node = node.left;
+            } else if (rank == leftCount) {
+                return node;
+            } else {
+                rank -= leftCount + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Removes the element at a specific position in the sequence.
+     *
+     * @param rank the position of the element to remove (0-based index)
+     * @return the removed element
+     * @throws IndexOutOfBoundsException if the rank is out of bounds
+     */
+    public E removeAt(int rank) {
+        Node<E> node = nodeAt(rank);
+        remove(node);
+        return node.value;
+    }
+
+    /**
+     * Removes a node from the tree.
+     * The node must currently belong to this tree.
+     *
+     * @param node the node to remove
+     */
+    public void remove(Node<E> node) {
+        // Rotate the node down until it is a leaf, keeping the heap order among the others
+        while (node.left != null || node.right != null) {
+            if (node.right == null || (node.left != null && node.left.priority > node.right.priority)) {
+                rotateRight(node);
+            } else {
+                rotateLeft(node);
+            }
+        }
+
+        Node<E> parent = node.parent;
+        if (parent == null) {
+            root = null;
+        } else {
+            if (parent.left == node) {
+                parent.left = null;
+            } else {
+                parent.right = null;
+            }
+            for (Node<E> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                ancestor.count--;
+            }
+        }
+        node.parent = null;
+        node.count = 1;
+    }
+
+    /**
+     * Returns the position of a node in the sequence.
+     * The node must currently belong to this tree.
+     *
+     * @param node the node to locate
+     * @return the 0-based position of the node
+     */
+    public int rankOf(Node<E> node) {
+        int rank = count(node.left);
+        for (Node<E> child = node, parent = node.parent; parent != null; child = parent, parent = parent.parent) {
+            if (parent.right == child) {
+                rank += count(parent.left) + 1;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns an iterator over the elements in sequence order.
+     *
+     * @return an iterator starting at position 0
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Returns an iterator over the elements in sequence order, starting at a given position.
+     * Finding the start costs O(log n) and each further step is amortized O(1).
+     *
+     * @param fromRank the position of the first element to return (0 to size inclusive)
+     * @return an iterator starting at the given position
+     */
+    public Iterator<E> iterator(int fromRank) {
+        Node<E> start = fromRank < size() ? nodeAt(fromRank) : null;
+        return new Iterator<>() {
+            private Node<E> next = start;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> node = next;
+                next = successor(node);
+                return node.value;
+            }
+        };
+    }
+
+    /**
+     * Returns the in-order successor of a node.
+     *
+     * @param node the node whose successor is needed
+     * @return the next node in sequence order, or null if the node is the last one
+     */
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null) {
+            Node<E> next = node.right;
+            while (next.left != null) {
+                next = next.left;
+            }
+            return next;
+        }
+
+        Node<E> child = node;
+        Node<E> parent = node.parent;
+        while (parent != null && parent.right == child) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    /**
+     * Rotates a node down to the right, lifting its left child into its place.
+     *
+     * @param node the node to rotate down
+     */
+    private void rotateRight(Node<E> node) {
+        Node<E> pivot = node.left;
+        node.left = pivot.right;
+        if (pivot.right != null) {
+            pivot.right.parent = node;
+        }
+        replaceChild(node, pivot);
+        pivot.right = node;
+        node.parent = pivot;
+
+        node.count = count(node.left) + count(node.right) + 1;
+        pivot.count = count(pivot.left) + node.count + 1;
+    }
+
+    /**
+     * Rotates a node down to the left, lifting its right child into its place.
+     *
+     * @param node the node to rotate down
+     */
+    private void rotateLeft(Node<E> node) {
+        Node<E> pivot = node.right;
+        node.right = pivot.left;
+        if (pivot.left != null) {
+            pivot.left.parent = node;
+        }
+        replaceChild(node, pivot);
+        pivot.left = node;
+        node.parent = pivot;
+
+        node.count = count(node.left) + count(node.right) + 1;
+        pivot.count = node.count + count(pivot.right) + 1;
+    }
+
+    /**
+     * Puts a replacement node in the place of another node under its parent.
+     *
+     * @param node        the node being replaced
+     * @param replacement the node taking its place
+     */
+    private void replaceChild(Node<E> node, Node<E> replacement) {
+        Node<E> parent = node.parent;
+        replacement.parent = parent;
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == node) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+    }
+
+    /**
+     * Returns the subtree size of a node, treating null as an empty subtree.
+     *
+     * @param node the node, or null
+     * @return the number of nodes in the subtree
+     */
+    private static int count(Node<?> node) {
+        return node == null ? 0 : node.count;
+    }
+}
@@ -0,0 +1,106 @@
+package org.codewithmagret.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Class representing a dictionary that encodes strings as small int codes.
+ * Each distinct string is stored once and given the next code, starting from 0, so a column
+ * of repeated values such as diagnoses can be held as an int array. This class is not thread-safe,
+ * but {@link #frozenDecoder()} gives a decoder that other threads can use while strings are added.
+ */
+public class StringDictionary {
+    /**
+     * The code used for a null string.
+     */
+    public static final int NULL_CODE = -1;
+
+    /**
+     * The code of each string in the dictionary.
+     */
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    /**
+     * The strings of the dictionary, indexed by code; only the first size entries are used.
+     * Entries are never changed once written, and the array is replaced rather than resized in place.
+     */
+    private String[] values = new String[16];
+
+    /**
+     * The number of strings in the dictionary.
+     */
+    private int size;
+
+    /**
+     * Returns the code of a string, adding the string to the dictionary if it is new.
+     *
+     * @param value the string to encode, or null
+     * @return the code of the string, or NULL_CODE for null
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            code = size;
+            codes.put(value, code);
+            values[size++] = value;
+        }
+        return code;
+    }
+
+    /**
+     * Returns the code of a string without adding it to the dictionary.
+     *
+     * @param value the string to look up, or null
+     * @return the code of the string, or NULL_CODE if it is null or not in the dictionary
+     */
+    public int codeOf(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    /**
+     * Returns the string with a code.
+     *
+     * @param code the code to decode
+     * @return the string with that code, or null for NULL_CODE
+     * @throws IndexOutOfBoundsException if the code is not in the dictionary
+     */
+    public String decode(int code) {
+        if (code != NULL_CODE && (code < 0 || code >= size)) {
+            throw new IndexOutOfBoundsException("code " + code + " out of bounds for size " + size);
+        }
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    /**
+     * Returns a decoder for the strings added so far. The decoder keeps working while more
+     * strings are added, so once it has been safely published another thread may use it
+     * without locking to decode any code that existed when it was created.
+     *
+     * @return a function from code to string, giving null for NULL_CODE
+     */
+    public IntFunction<String> frozenDecoder() {
+        String[] frozen = values;
+        return code -> code == NULL_CODE ? null : frozen[code];
+    }
+
+    /**
+     * Returns the number of distinct strings in the dictionary.
+     *
+     * @return the size of the dictionary
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,223 @@
+package org.codewithmagret.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class representing a bounded pool of canonical strings, for values drawn from a small
+ * vocabulary such as diagnoses and reasons for visit.
+ * <p>
+ * {@link #intern(String)} returns one shared instance for every equal string, so large histories
+ * and queues hold each value once, and String.equals between pooled values returns at its
+ * identity check. The pool holds its strings through weak references, so a value that is no
+ * longer used anywhere can be collected.
+ * <p>
+ * The pool is split into stripes, each an open-addressing table of a fixed size that is never
+ * more than half full. Lookups read a stripe's table without locking; adding a string locks its
+ * stripe. When a stripe is full and some of its strings have been collected, it is rebuilt at the
+ * same size without them; when it is full of live strings, new strings are returned as they are,
+ * so the pool never grows past its bound.
+ */
+public final class StringPool {
+    /**
+     * The pool used by the models.
+     */
+    public static final StringPool SHARED = new StringPool(1 << 16);
+
+    /**
+     * The longest string, in chars, that is pooled; longer strings are unlikely to repeat.
+     */
+    public static final int MAX_LENGTH = 64;
+
+    /**
+     * The number of stripes, as a power of two.
+     */
+    private static final int STRIPE_BITS = 4;
+
+    /**
+     * The stripes of the pool, chosen by the high bits of a string's hash.
+     */
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    /**
+     * Parameterized constructor for StringPool.
+     *
+     * @param maxEntries the most strings the pool holds; rounded up so each stripe holds a power of two
+     */
+    public StringPool(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int perStripe = Integer.highestOneBit(Math.max(1, (maxEntries - 1) >> STRIPE_BITS)) << 1;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a string, adding the string to the pool if it is new.
+     *
+     * @param value the string to intern, or null
+     * @return the pooled string equal to value; value itself if it is null, longer than
+     *          MAX_LENGTH, or its stripe is full
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        int hash = value.hashCode() * 0x9E3779B9;
+        Stripe stripe = stripes[hash >>> (32 - STRIPE_BITS)];
+        String pooled = stripe.find(value, hash);
+        return pooled != null ? pooled : stripe.add(value, hash);
+    }
+
+    /**
+     * Returns the number of strings in the pool, counting ones collected since their stripe was
+     * last rebuilt.
+     *
+     * @return the number of pooled strings
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.used;
+        }
+        return size;
+    }
+
+    /**
+     * Class representing one stripe: a fixed-size open-addressing table of weakly held strings.
+     * A null slot ends a probe; a slot whose string was collected is skipped and reused when the
+     * stripe is rebuilt.
+     */
+    private static final class Stripe {
+        /**
+         * Lock held while adding a string or rebuilding the table.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The most strings the stripe holds: half of its slots.
+         */
+        private final int maxLive;
+
+        /**
+         * Queue receiving the references of collected strings, so the stripe knows when a
+         * rebuild would free slots.
+         */
+        private final ReferenceQueue<String> collected = new ReferenceQueue<>();
+
+        /**
+         * The slots of the stripe; replaced as a whole when the stripe is rebuilt.
+         */
+        private volatile AtomicReferenceArray<WeakReference<String>> table;
+
+        /**
+         * The number of slots in use, including those whose string was collected. Guarded by lock.
+         */
+        private volatile int used;
+
+        /**
+         * Parameterized constructor for Stripe.
+         *
+         * @param maxLive the most live strings the stripe holds
+         */
+        Stripe(int maxLive) {
+            this.maxLive = maxLive;
+            this.table = new AtomicReferenceArray<>(maxLive * 2);
+        }
+
+        /**
+         * Looks up a string without locking.
+         *
+         * @param value the string to look up
+         * @param hash  the spread hash of the string
+         * @return the pooled string equal to value, or null if there is none
+         */
+        String find(String value, int hash) {
+            AtomicReferenceArray<WeakReference<String>> slots = table;
+            int mask = slots.length() - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                WeakReference<String> reference = slots.get(i);
+                if (reference == null) {
+                    return null;
+                }
+                String pooled = reference.get();
+                if (value.equals(pooled)) {
+                    return pooled;
+                }
+            }
+        }
+
+        /**
+         * Adds a string, unless another thread added an equal one first or the stripe is full
+         * of live strings.
+         *
+         * @param value the string to add
+         * @param hash  the spread hash of the string
+         * @return the pooled string equal to value, or value itself if the stripe is full
+         */
+        String add(String value, int hash) {
+            lock.lock();
+            try {
+                String pooled = find(value, hash);
+                if (pooled != null) {
+                    return pooled;
+                }
+                if (used >= maxLive) {
+                    if (collected.poll() == null) {
+                        return value;
+                    }
+                    while (collected.poll() != null) {
+                        // Drain the queue; the rebuild drops every collected string at once
+                    }
+                    if (rebuild() >= maxLive) {
+                        return value;
+                    }
+                }
+                AtomicReferenceArray<WeakReference<String>> slots = table;
+                int mask = slots.length() - 1;
+                int i = hash & mask;
+                while (slots.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                slots.set(i, new WeakReference<>(value, collected));
+                used++;
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Replaces the table with one of the same size holding only the strings still alive.
+         * Must be called while holding lock.
+         *
+         * @return the number of live strings
+         */
+        private int rebuild() {
+            AtomicReferenceArray<WeakReference<String>> old = table;
+            AtomicReferenceArray<WeakReference<String>> slots = new AtomicReferenceArray<>(old.length());
+            int mask = slots.length() - 1;
+            int live = 0;
+            for (int i = 0; i < old.length(); i++) {
+                WeakReference<String> reference = old.get(i);
+                String pooled = reference == null ? null : reference.get();
+                if (pooled == null) {
+                    continue;
+                }
+                int j = pooled.hashCode() * 0x9E3779B9 & mask;
+                while (slots.get(j) != null) {
+                    j = (j + 1) & mask;
+                }
+                slots.set(j, reference);
+                live++;
+            }
+            table = slots;
+            used = live;
+            return live;
+        }
+    }
+}
@@ -1,28 +1,268 @@
 package org.codewithmagret.waitingRoom;
 
 import org.codewithmagret.models.Patient;
-import java.util.LinkedList;
+import org.codewithmagret.models.PatientIdAllocator;
+import org.codewithmagret.models.TriageLevel;
+import org.codewithmagret.util.LongObjectMap;
+import org.codewithmagret.util.RankedTree;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Class representing a patient waiting queue using a LinkedList to manage patients.
+ * Class representing a patient waiting queue using a RankedTree to manage patients.
+ * The queue is safe to share between threads: intake kiosks add patients without taking
+ * any lock, while serving and positional inserts are ordered by a lock held only for
+ * the O(log n) tree update.
+ * <p>
+ * Patients are grouped into one lane per {@link TriageLevel}. The lanes are laid out
+ * back to back in the tree, most urgent first, so serving is always a removal at
+ * position 0 and each lane is FIFO. A patient who has waited longer than the aging
+ * interval at the head of their lane is moved up into the next more urgent lane, and their
+ * triage level with it, so routine patients are not starved by a steady stream of urgent
+ * ones. Aging stops at {@link #AGING_CEILING}, so the emergency lane only ever holds
+ * patients triaged as emergencies.
+ * <p>
+ * A queue opened with {@link #openDurable(Path, Duration)} also records every change in a
+ * {@link QueueWriteAheadLog}; each changing method returns only once its change is on disk.
+ * Snapshots of the queue are written periodically next to the log, so a restart loads the
+ * latest snapshot and replays only the part of the log written after it.
+ * <p>
+ * If the log cannot be written or synced, the changing method that hit the failure throws
+ * UncheckedIOException after its change was applied in memory, and the queue is unusable from
+ * then on: every later changing method throws UncheckedIOException before changing anything.
+ * The log still ends at the last durable change, so reopening the queue restores that state;
+ * a patient whose serve failed is waiting again in the reopened queue.
  */
-public class PatientWaitingQueue {
+public class PatientWaitingQueue implements Iterable<Patient>, Closeable {
+    /**
+     * The aging interval used by the default constructor.
+     */
+    public static final Duration DEFAULT_AGING_INTERVAL = Duration.ofMinutes(30);
+
+    /**
+     * How often a durable queue opened with the two-argument openDurable takes a snapshot.
+     */
+    public static final Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * The most urgent level a patient can reach by aging. Emergencies that arrive later
+     * must never queue behind patients who only aged into their lane.
+     */
+    public static final TriageLevel AGING_CEILING = TriageLevel.URGENT;
+
+    /**
+     * The largest number of patients copied out of the tree per lock acquisition
+     * when iterating or streaming the queue.
+     */
+    private static final int STREAM_BATCH_SIZE = 256;
+
+    /**
+     * The RankedTree to store the patients in the waiting queue.
+     * The tree keeps the patients in queue order and tracks subtree sizes, so adding,
+     * serving and inserting at a specific position all take O(log n)
+     * instead of walking the queue node by node. Guarded by {@link #lock}.
+     */
+    private final RankedTree<QueueEntry> patientList = new RankedTree<QueueEntry>();
+
+    /**
+     * The tree node of every patient in the tree, keyed by numeric patient id.
+     * This index lets the queue find, remove or move a patient in O(1) or O(log n)
+     * without searching the tree. Guarded by {@link #lock}.
+     */
+    private final LongObjectMap<RankedTree.Node<QueueEntry>> handles = new LongObjectMap<>();
+
+    /**
+     * The numeric ids of every patient in the queue, including staged arrivals.
+     * Adding threads claim an id here without taking the lock, so a patient cannot be queued
+     * twice and the id index never has one patient's entry overwritten by another's.
+     */
+    private final Set<Long> queuedIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of patients in each triage lane, indexed by TriageLevel ordinal.
+     * Guarded by {@link #lock}.
+     */
+    private final int[] laneSizes = new int[TriageLevel.values().length];
+
+    /**
+     * How long a patient may wait at the head of a lane before moving up a lane,
+     * in nanoseconds; 0 disables aging.
+     */
+    private final long agingNanos;
+
+    /**
+     * Lock-free staging area for patients added to the back of the queue.
+     * Adding threads only append here; whoever next holds the lock moves the staged
+     * patients into the tree in arrival order before reading or changing it.
+     */
+    private final ConcurrentLinkedQueue<Patient> arrivals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The lock guarding the tree.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled when a patient becomes available to threads waiting in serveNext.
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * The number of patients in the queue, including staged arrivals.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * The number of threads currently blocked in serveNext.
+     * Adding threads only take the lock to wake a waiter when this is non-zero.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * Wait-time, depth and throughput metrics of the queue.
+     */
+    private final QueueMetrics metrics = new QueueMetrics(count::get);
+
+    /**
+     * The log every change is recorded in, or null for an in-memory queue.
+     * Set once before the queue is handed out.
+     */
+    private QueueWriteAheadLog journal;
+
+    /**
+     * The snapshotter of a durable queue, or null for an in-memory queue.
+     */
+    private QueueSnapshotter snapshotter;
+
+    /**
+     * Whether the queue is being rebuilt from its log, in which case aging is
+     * replayed from the log instead of being applied from the clock.
+     */
+    private boolean replaying;
+
+    /**
+     * Default constructor for PatientWaitingQueue, using the default aging interval.
+     */
+    public PatientWaitingQueue() {
+        this(DEFAULT_AGING_INTERVAL);
+    }
+
+    /**
+     * Parameterized constructor for PatientWaitingQueue.
+     *
+     * @param agingInterval how long a patient may wait at the head of a triage lane before
+     *                      being moved up to the next lane; Duration.ZERO disables aging
+     */
+    public PatientWaitingQueue(Duration agingInterval) {
+        if (agingInterval.isNegative()) {
+            throw new IllegalArgumentException("agingInterval must not be negative");
+        }
+        this.agingNanos = agingInterval.toNanos();
+    }
+
     /**
-     * The LinkedList to store the patients in the waiting queue.
-     * This list allows for efficient addition and removal of patients
-     * from the queue, as well as insertion at specific positions when necessary.
+     * Opens a durable waiting queue backed by a write-ahead log file, taking a snapshot
+     * every {@link #DEFAULT_SNAPSHOT_INTERVAL}.
+     *
+     * @param logFile       the path of the log file, created if it does not exist
+     * @param agingInterval the aging interval of the queue
+     * @return the rebuilt queue
+     * @throws IOException if the log or snapshot cannot be opened or read
+     * @see #openDurable(Path, Duration, Duration)
      */
-    private final LinkedList<Patient> patientList = new LinkedList<Patient>();
+    public static PatientWaitingQueue openDurable(Path logFile, Duration agingInterval) throws IOException {
+        return openDurable(logFile, agingInterval, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens a durable waiting queue backed by a write-ahead log file.
+     * The queue is rebuilt from the latest snapshot (stored next to the log with a
+     * ".snapshot" suffix) plus the log records written after it. The patient ID allocator
+     * is seeded past every restored ID, and from then on every change is appended to the log.
+     *
+     * @param logFile          the path of the log file, created if it does not exist
+     * @param agingInterval    the aging interval of the queue
+     * @param snapshotInterval how often to take a snapshot; Duration.ZERO only snapshots on close
+     * @return the rebuilt queue
+     * @throws IOException if the log or snapshot cannot be opened or read
+     */
+    public static PatientWaitingQueue openDurable(Path logFile, Duration agingInterval, Duration snapshotInterval)
+            throws IOException {
+        Path snapshotFile = logFile.resolveSibling(logFile.getFileName() + ".snapshot");
+        QueueWriteAheadLog log = QueueWriteAheadLog.open(logFile);
+        PatientWaitingQueue queue = new PatientWaitingQueue(agingInterval);
+        LogReplayer replayer = queue.replayer();
+        try {
+            queue.replaying = true;
+            long snapshotLsn = Files.exists(snapshotFile) ? QueueSnapshot.read(snapshotFile, replayer::restore) : 0L;
+            log.replay(replayer, snapshotLsn);
+            queue.replaying = false;
+            queue.snapshotter = new QueueSnapshotter(logFile, snapshotFile, log, snapshotInterval);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+
+        PatientIdAllocator.seed(replayer.maxPatientId + 1);
+        queue.journal = log;
+        return queue;
+    }
 
     /**
-     * Adds a patient to the waiting queue.
+     * Adds a patient to the back of the lane for their triage level.
+     * For an in-memory queue this method never blocks on other adding or serving threads.
      *
      * @param patient the Patient object to be added to the queue
      * @return the Patient object that was added to the queue
+     * @throws IllegalArgumentException if the patient has no id or a patient with the same id is already queued
      */
     public Patient addPatientToQueue(Patient patient) {
-        patientList.add(patient);
+        checkLog();
+        claimId(patient);
+        patient.setEnqueuedAtNanos(System.nanoTime());
+        arrivals.offer(patient);
+        count.incrementAndGet();
+        metrics.recordEnqueue();
 
+        if (journal != null) {
+            // The add must be logged in queue order, so a durable add drains it under the lock
+            lock.lock();
+            try {
+                drainArrivals();
+                notEmpty.signal();
+            } finally {
+                unlockAndSync();
+            }
+        } else if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
         return patient;
     }
 
@@ -32,7 +272,7 @@ public class PatientWaitingQueue {
      * @return true if the queue is empty, false otherwise
      */
     public boolean isEmpty() {
-        return patientList.isEmpty();
+        return count.get() == 0;
     }
 
     /**
@@ -41,49 +281,781 @@ public class PatientWaitingQueue {
      * @return the Patient object that was served, or null if the queue is empty
      */
     public Patient serveNext() {
-        if (isEmpty()) {
-            return null;
+        checkLog();
+        lock.lock();
+        try {
+            drainArrivals();
+            return patientList.isEmpty() ? null : removeHead();
+        } finally {
+            unlockAndSync();
         }
+    }
 
-        return patientList.removeFirst();
+    /**
+     * Serves the next patient in the waiting queue, waiting up to the given time
+     * for a patient to arrive if the queue is empty.
+     *
+     * @param timeout how long to wait before giving up
+     * @param unit    the unit of the timeout argument
+     * @return the Patient object that was served, or null if no patient arrived in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Patient serveNext(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        checkLog();
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                // Register as a waiter before the last check, so an adder either
+                // sees us waiting or has already staged a patient we will drain
+                waiters.incrementAndGet();
+                try {
+                    drainArrivals();
+                    if (!patientList.isEmpty()) {
+                        return removeHead();
+                    }
+                    if (nanos <= 0L) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            }
+        } finally {
+            unlockAndSync();
+        }
     }
 
     /**
      * Inserts a patient at a specific position in the waiting queue.
+     * The patient joins the triage lane that spans that position, preferring their own
+     * level and otherwise the least urgent lane, so the patient's triage level is unchanged.
      *
      * @param patient  the Patient object to be inserted into the queue
      * @param position the position at which to insert the patient (0-based index)
-     * @return the Patient object that was inserted into the queue
-     * @throws IllegalArgumentException if the position is out of bounds
+     * @return true if the patient was inserted, false if the position is out of bounds
+     * @throws IllegalArgumentException if the patient has no id or a patient with the same id is already queued
      */
     public boolean insertPatientAtPosition(Patient patient, int position) {
-        if (position < 0 || position > patientList.size()) {
-            return false;
-        }
+        checkLog();
+        lock.lock();
+        try {
+            drainArrivals();
+            if (position < 0 || position > patientList.size()) {
+                return false;
+            }
 
-        patientList.add(position, patient);
-        return true;
+            TriageLevel lane = null;
+            for (TriageLevel level : TriageLevel.values()) {
+                int start = laneStart(level);
+                if (position >= start && position <= start + laneSizes[level.ordinal()]) {
+                    if (lane == null || level == levelOf(patient)) {
+                        lane = level;
+                    }
+                }
+            }
+
+            claimId(patient);
+            patient.setEnqueuedAtNanos(System.nanoTime());
+            enqueue(patient, lane, position);
+            count.incrementAndGet();
+            metrics.recordEnqueue();
+            if (journal != null) {
+                journal.logInsert(patient, position);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            unlockAndSync();
+        }
     }
 
     /**
      * Prints the current state of the patient waiting queue.
+     * Prefer {@link #writeQueueTo(Appendable, int, int)} for large queues, which does not
+     * build the whole listing in memory.
      *
      * @return a string representation of the patient waiting queue
      */
     public String printAllPatientInQueue() {
         StringBuilder sb = new StringBuilder();
-        for (Patient patient : patientList) {
-            sb.append(patient.toString()).append("\n");
+        try {
+            writeQueueTo(sb, 0, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            // StringBuilder never throws IOException
+            throw new IllegalStateException(e);
         }
         return sb.toString();
     }
 
+    /**
+     * Writes one page of the waiting queue, one patient per line, in the order they will be served.
+     * Patients are copied out under the lock in small batches and written after it is released,
+     * so a slow output never holds up adding or serving. The listing is weakly consistent:
+     * patients added or served while it is being written may or may not appear.
+     *
+     * @param out    the destination to write to
+     * @param offset the position of the first patient to write (0-based index)
+     * @param limit  the largest number of patients to write
+     * @throws IOException if writing to the destination fails
+     */
+    public void writeQueueTo(Appendable out, int offset, int limit) throws IOException {
+        checkPage(offset, limit);
+        Iterator<Patient> patients = new QueueIterator(offset, Math.min(limit, STREAM_BATCH_SIZE));
+        for (int written = 0; written < limit && patients.hasNext(); written++) {
+            out.append(patients.next().toString()).append('\n');
+        }
+    }
+
+    /**
+     * Writes one page of the waiting queue as UTF-8 text to an output stream.
+     * The stream is flushed but not closed. This has its own name rather than overloading
+     * {@link #writeQueueTo(Appendable, int, int)}, as a PrintStream is both an Appendable and an OutputStream.
+     *
+     * @param out    the stream to write to
+     * @param offset the position of the first patient to write (0-based index)
+     * @param limit  the largest number of patients to write
+     * @throws IOException if writing to the stream fails
+     * @see #writeQueueTo(Appendable, int, int)
+     */
+    public void writeQueueUtf8To(OutputStream out, int offset, int limit) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeQueueTo(writer, offset, limit);
+        writer.flush();
+    }
+
+    /**
+     * Returns one page of the waiting queue, in the order the patients will be served.
+     * Only the requested patients are visited, so the cost is O(log n + limit).
+     *
+     * @param offset the position of the first patient to return (0-based index)
+     * @param limit  the largest number of patients to return
+     * @return the patients in the page, possibly fewer than limit
+     */
+    public List<Patient> listPatients(int offset, int limit) {
+        checkPage(offset, limit);
+        lock.lock();
+        try {
+            drainArrivals();
+            List<Patient> page = new ArrayList<>(Math.min(limit, Math.max(0, patientList.size() - offset)));
+            if (offset < patientList.size()) {
+                Iterator<QueueEntry> entries = patientList.iterator(offset);
+                while (page.size() < limit && entries.hasNext()) {
+                    page.add(entries.next().patient);
+                }
+            }
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the waiting patients, in the order they will be served.
+     * It never throws ConcurrentModificationException and does not hold the lock between calls.
+     *
+     * @return an iterator over the waiting patients
+     */
+    @Override
+    public Iterator<Patient> iterator() {
+        return new QueueIterator(0, STREAM_BATCH_SIZE);
+    }
+
+    /**
+     * Changes the triage level of a patient, moving them to the back of the new level's
+     * lane if they are waiting in the queue. This takes O(log n) and does not rebuild the queue.
+     *
+     * @param patient the Patient object whose triage level changes
+     * @param level   the new triage level
+     * @return true if the patient was in the queue, false otherwise
+     */
+    public boolean changeTriageLevel(Patient patient, TriageLevel level) {
+        checkLog();
+        lock.lock();
+        try {
+            drainArrivals();
+            RankedTree.Node<QueueEntry> node = handles.get(patient.getNumericId());
+            if (node == null || node.value().patient != patient) {
+                return false;
+            }
+
+            patient.setTriageLevel(level);
+            QueueEntry entry = node.value();
+            if (entry.level != level) {
+                patientList.remove(node);
+                laneSizes[entry.level.ordinal()]--;
+                enqueue(patient, level, laneStart(level) + laneSizes[level.ordinal()]);
+            }
+            if (journal != null) {
+                journal.logChangeTriage(patient.getNumericId(), level);
+            }
+            return true;
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+    /**
+     * Finds a waiting patient by id.
+     *
+     * @param id the display form of the patient's ID, for example "P42"
+     * @return the Patient object, or null if no patient with that id is waiting
+     */
+    public Patient findById(String id) {
+        return findById(PatientIdAllocator.parse(id));
+    }
+
+    /**
+     * Same as {@link #findById(String)}, taking the numeric patient ID.
+     *
+     * @param id the numeric ID of the patient
+     * @return the Patient object, or null if no patient with that id is waiting
+     */
+    public Patient findById(long id) {
+        lock.lock();
+        try {
+            drainArrivals();
+            RankedTree.Node<QueueEntry> node = handles.get(id);
+            return node == null ? null : node.value().patient;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a waiting patient by id, for example when the patient leaves or is a no-show.
+     *
+     * @param id the display form of the patient's ID, for example "P42"
+     * @return the removed Patient object, or null if no patient with that id is waiting
+     */
+    public Patient removeById(String id) {
+        return removeById(PatientIdAllocator.parse(id));
+    }
+
+    /**
+     * Same as {@link #removeById(String)}, taking the numeric patient ID.
+     *
+     * @param id the numeric ID of the patient
+     * @return the removed Patient object, or null if no patient with that id is waiting
+     */
+    public Patient removeById(long id) {
+        checkLog();
+        lock.lock();
+        try {
+            drainArrivals();
+            RankedTree.Node<QueueEntry> node = handles.get(id);
+            if (node == null) {
+                return null;
+            }
+
+            unlink(node);
+            if (journal != null) {
+                journal.logRemove(id);
+            }
+            return node.value().patient;
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+    /**
+     * Moves a waiting patient to the front of their triage lane.
+     * For a routine patient with no urgent patients waiting, this is the front of the queue.
+     *
+     * @param id the display form of the patient's ID, for example "P42"
+     * @return true if the patient was moved, false if no patient with that id is waiting
+     */
+    public boolean moveToFront(String id) {
+        return moveToFront(PatientIdAllocator.parse(id));
+    }
+
+    /**
+     * Same as {@link #moveToFront(String)}, taking the numeric patient ID.
+     *
+     * @param id the numeric ID of the patient
+     * @return true if the patient was moved, false if no patient with that id is waiting
+     */
+    public boolean moveToFront(long id) {
+        checkLog();
+        lock.lock();
+        try {
+            drainArrivals();
+            RankedTree.Node<QueueEntry> node = handles.get(id);
+            if (node == null) {
+                return false;
+            }
+
+            QueueEntry entry = node.value();
+            patientList.remove(node);
+            handles.put(id, patientList.insert(laneStart(entry.level), entry));
+            if (journal != null) {
+                journal.logMoveToFront(id);
+            }
+            return true;
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+    /**
+     * Returns the position of a waiting patient in the queue.
+     *
+     * @param id the display form of the patient's ID, for example "P42"
+     * @return the 0-based position of the patient, or -1 if no patient with that id is waiting
+     */
+    public int positionOf(String id) {
+        return positionOf(PatientIdAllocator.parse(id));
+    }
+
+    /**
+     * Same as {@link #positionOf(String)}, taking the numeric patient ID.
+     *
+     * @param id the numeric ID of the patient
+     * @return the 0-based position of the patient, or -1 if no patient with that id is waiting
+     */
+    public int positionOf(long id) {
+        lock.lock();
+        try {
+            drainArrivals();
+            RankedTree.Node<QueueEntry> node = handles.get(id);
+            return node == null ? -1 : patientList.rankOf(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the wait-time, depth and throughput metrics of the queue.
+     *
+     * @return the metrics of this queue
+     */
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
     /**
      * Method to get the size of the patient waiting queue.
      * Returns the number of patients currently in the waiting queue.
      */
     public int size() {
-        return patientList.size();
+        return count.get();
     }
-}
 
+    /**
+     * Writes any pending log records to disk, takes a final snapshot and closes the log
+     * of a durable queue. Does nothing for an in-memory queue.
+     *
+     * @throws IOException if the log or snapshot cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } finally {
+                    snapshotter.close();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a replayer that applies log records to this queue.
+     * Used to rebuild this queue, or a shadow copy of it, from the log.
+     *
+     * @return a new replayer for this queue
+     */
+    LogReplayer replayer() {
+        return new LogReplayer();
+    }
+
+    /**
+     * Returns every waiting patient with their lane, in queue order.
+     *
+     * @return a copy of the queue's entries
+     */
+    List<QueueEntry> entries() {
+        lock.lock();
+        try {
+            drainArrivals();
+            List<QueueEntry> entries = new ArrayList<>(patientList.size());
+            for (QueueEntry entry : patientList) {
+                entries.add(entry);
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the lock and, for a durable queue, waits until everything logged so far is on disk.
+     * Waiting happens after the lock is released, so other threads keep appending to the
+     * batch being synced.
+     *
+     * @throws UncheckedIOException if the log cannot be written or synced; the change
+     *         made under the lock stays applied in memory and the queue is unusable from then on
+     */
+    private void unlockAndSync() {
+        QueueWriteAheadLog log = journal;
+        long lsn = log == null ? 0L : log.appendedLsn();
+        lock.unlock();
+        if (log != null) {
+            log.awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * Checks, before a change is applied, that the log of a durable queue has not failed.
+     *
+     * @throws UncheckedIOException if the log has failed
+     */
+    private void checkLog() {
+        QueueWriteAheadLog log = journal;
+        if (log != null) {
+            log.checkHealthy();
+        }
+    }
+
+    /**
+     * Claims a patient's id for the queue.
+     *
+     * @param patient the Patient object about to be queued
+     * @throws IllegalArgumentException if the patient has no id or a patient with the same id is already queued
+     */
+    private void claimId(Patient patient) {
+        long id = patient.getNumericId();
+        if (id == 0) {
+            throw new IllegalArgumentException("Patient has no id");
+        }
+        if (!queuedIds.add(id)) {
+            throw new IllegalArgumentException("Patient " + patient.getId() + " is already in the queue");
+        }
+    }
+
+    /**
+     * Checks that a page request is valid.
+     *
+     * @param offset the position of the first patient in the page
+     * @param limit  the largest number of patients in the page
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    private static void checkPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+    }
+
+    /**
+     * Moves staged arrivals to the back of their triage lanes, keeping their arrival order,
+     * then ages the lanes. Must be called while holding the lock.
+     */
+    private void drainArrivals() {
+        Patient patient;
+        while ((patient = arrivals.poll()) != null) {
+            TriageLevel level = levelOf(patient);
+            enqueue(patient, level, laneStart(level) + laneSizes[level.ordinal()]);
+            if (journal != null) {
+                journal.logAdd(patient);
+            }
+        }
+        applyAging();
+    }
+
+    /**
+     * Moves every patient who has waited at the head of a lane below AGING_CEILING for longer
+     * than the aging interval up to the back of the next more urgent lane. Because lanes sit
+     * back to back, the head of one lane is right behind the tail of the next, so only the lane
+     * sizes change. Must be called while holding the lock.
+     */
+    private void applyAging() {
+        if (agingNanos == 0L || replaying) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        TriageLevel[] levels = TriageLevel.values();
+        for (int i = AGING_CEILING.ordinal() - 1; i >= 0; i--) {
+            while (laneSizes[i] > 0) {
+                QueueEntry head = patientList.get(laneStart(levels[i]));
+                if (now - head.enteredLaneAt < agingNanos) {
+                    break;
+                }
+                promoteHead(levels[i], now);
+            }
+        }
+    }
+
+    /**
+     * Moves the head of a lane to the back of the next more urgent lane and raises the
+     * patient's triage level to match, so every view of the patient shows the lane they wait in.
+     * Must be called while holding the lock, with a non-empty lane that is not the most urgent.
+     *
+     * @param from the lane whose head is promoted
+     * @param now  the System.nanoTime() at which the patient enters the new lane
+     */
+    private void promoteHead(TriageLevel from, long now) {
+        QueueEntry head = patientList.get(laneStart(from));
+        laneSizes[from.ordinal()]--;
+        head.level = from.escalate();
+        head.patient.setTriageLevel(head.level);
+        laneSizes[head.level.ordinal()]++;
+        head.enteredLaneAt = now;
+        if (journal != null) {
+            journal.logPromote(from);
+        }
+    }
+
+    /**
+     * Inserts a patient into the tree as a member of a triage lane.
+     * Must be called while holding the lock.
+     *
+     * @param patient the Patient object to insert
+     * @param level   the lane the patient joins
+     * @param rank    the position in the tree, which must lie within that lane
+     */
+    private void enqueue(Patient patient, TriageLevel level, int rank) {
+        QueueEntry entry = new QueueEntry(patient, level, System.nanoTime());
+        handles.put(patient.getNumericId(), patientList.insert(rank, entry));
+        laneSizes[level.ordinal()]++;
+    }
+
+    /**
+     * Removes the patient at the front of the tree.
+     * Must be called while holding the lock, with a non-empty tree.
+     *
+     * @return the removed Patient object
+     */
+    private Patient removeHead() {
+        RankedTree.Node<QueueEntry> head = patientList.nodeAt(0);
+        unlink(head);
+        long enqueuedAt = head.value().patient.getEnqueuedAtNanos();
+        // A patient who never went through an add has no known arrival time, so no wait is recorded
+        metrics.recordServe(enqueuedAt == 0 ? -1 : System.nanoTime() - enqueuedAt);
+        if (journal != null) {
+            journal.logServe();
+        }
+        return head.value().patient;
+    }
+
+    /**
+     * Removes a patient's node from the tree, their lane and the id index.
+     * Must be called while holding the lock.
+     *
+     * @param node the tree node of the patient
+     */
+    private void unlink(RankedTree.Node<QueueEntry> node) {
+        QueueEntry entry = node.value();
+        patientList.remove(node);
+        laneSizes[entry.level.ordinal()]--;
+        handles.remove(entry.patient.getNumericId());
+        queuedIds.remove(entry.patient.getNumericId());
+        count.decrementAndGet();
+    }
+
+    /**
+     * Returns the position in the tree of the first patient in a triage lane.
+     * Must be called while holding the lock.
+     *
+     * @param level the triage lane
+     * @return the number of patients in more urgent lanes
+     */
+    private int laneStart(TriageLevel level) {
+        int start = 0;
+        for (int i = laneSizes.length - 1; i > level.ordinal(); i--) {
+            start += laneSizes[i];
+        }
+        return start;
+    }
+
+    /**
+     * Returns the triage level of a patient, treating a missing level as routine.
+     *
+     * @param patient the Patient object
+     * @return the patient's triage level
+     */
+    private static TriageLevel levelOf(Patient patient) {
+        return patient.getTriageLevel() == null ? TriageLevel.ROUTINE : patient.getTriageLevel();
+    }
+
+    /**
+     * Weakly consistent iterator that copies the queue out in batches.
+     * Each batch resumes right after the last patient returned if that patient is still
+     * waiting in the same place, or at the same position otherwise.
+     */
+    private final class QueueIterator implements Iterator<Patient> {
+        /**
+         * Patients copied out of the tree and not yet returned.
+         */
+        private final ArrayDeque<Patient> buffer = new ArrayDeque<>();
+
+        /**
+         * The largest number of patients copied per batch.
+         */
+        private final int batchSize;
+
+        /**
+         * The position to resume from if the last returned patient has left the queue.
+         */
+        private int nextRank;
+
+        /**
+         * The tree node of the last patient copied out, or null before the first batch.
+         */
+        private RankedTree.Node<QueueEntry> last;
+
+        /**
+         * Whether the last batch came back empty.
+         */
+        private boolean exhausted;
+
+        /**
+         * Parameterized constructor for QueueIterator.
+         *
+         * @param fromRank  the position of the first patient to return
+         * @param batchSize the largest number of patients copied per batch
+         */
+        private QueueIterator(int fromRank, int batchSize) {
+            this.nextRank = fromRank;
+            this.batchSize = Math.max(1, batchSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (buffer.isEmpty() && !exhausted) {
+                fill();
+            }
+            return !buffer.isEmpty();
+        }
+
+        @Override
+        public Patient next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
+
+        /**
+         * Copies the next batch of patients out of the tree.
+         */
+        private void fill() {
+            lock.lock();
+            try {
+                drainArrivals();
+                int from = nextRank;
+                if (last != null && handles.get(last.value().patient.getNumericId()) == last) {
+                    from = patientList.rankOf(last) + 1;
+                }
+                if (from >= patientList.size()) {
+                    exhausted = true;
+                    return;
+                }
+
+                Iterator<QueueEntry> entries = patientList.iterator(from);
+                while (buffer.size() < batchSize && entries.hasNext()) {
+                    buffer.add(entries.next().patient);
+                }
+                nextRank = from + buffer.size();
+                last = patientList.nodeAt(nextRank - 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the operations read from a snapshot or the log while the queue is being rebuilt.
+     * The journal is not attached yet, so nothing replayed is logged again.
+     */
+    final class LogReplayer implements QueueWriteAheadLog.Replayer {
+        /**
+         * The highest patient ID restored so far.
+         */
+        long maxPatientId;
+
+        /**
+         * Appends a patient from a snapshot to the back of the queue, in the lane they were in.
+         * Snapshot entries come in queue order, so appending keeps the lanes contiguous.
+         * The time the patient joined the queue is not in the snapshot, so their wait is measured
+         * from the restore, as it is for patients replayed from the log.
+         *
+         * @param patient the restored patient
+         * @param lane    the lane the patient was waiting in
+         */
+        void restore(Patient patient, TriageLevel lane) {
+            maxPatientId = Math.max(maxPatientId, patient.getNumericId());
+            lock.lock();
+            try {
+                drainArrivals();
+                claimId(patient);
+                patient.setEnqueuedAtNanos(System.nanoTime());
+                enqueue(patient, lane, patientList.size());
+                count.incrementAndGet();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void add(Patient patient) {
+            maxPatientId = Math.max(maxPatientId, patient.getNumericId());
+            addPatientToQueue(patient);
+            // Move the patient out of the staging area now, while no journal is attached,
+            // so the first drain after the journal is attached does not log the add again
+            lock.lock();
+            try {
+                drainArrivals();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void insert(Patient patient, int position) {
+            maxPatientId = Math.max(maxPatientId, patient.getNumericId());
+            insertPatientAtPosition(patient, position);
+        }
+
+        @Override
+        public void serve() {
+            serveNext();
+        }
+
+        @Override
+        public void remove(long id) {
+            removeById(id);
+        }
+
+        @Override
+        public void moveToFront(long id) {
+            PatientWaitingQueue.this.moveToFront(id);
+        }
+
+        @Override
+        public void changeTriage(long id, TriageLevel level) {
+            Patient patient = findById(id);
+            if (patient != null) {
+                changeTriageLevel(patient, level);
+            }
+        }
+
+        @Override
+        public void promote(TriageLevel from) {
+            lock.lock();
+            try {
+                drainArrivals();
+                if (laneSizes[from.ordinal()] > 0) {
+                    promoteHead(from, System.nanoTime());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
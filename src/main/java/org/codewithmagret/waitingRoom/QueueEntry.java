@@ -0,0 +1,39 @@
+package org.codewithmagret.waitingRoom;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.TriageLevel;
+
+/**
+ * Class representing a patient's place in the waiting queue.
+ * It records which triage lane the patient currently sits in and when they entered it,
+ * so the queue can age long-waiting patients into a more urgent lane.
+ */
+final class QueueEntry {
+    /**
+     * The patient waiting in the queue.
+     */
+    final Patient patient;
+
+    /**
+     * The triage lane the patient currently sits in.
+     */
+    TriageLevel level;
+
+    /**
+     * The System.nanoTime() at which the patient entered their current lane.
+     */
+    long enteredLaneAt;
+
+    /**
+     * Parameterized constructor for QueueEntry.
+     *
+     * @param patient the patient waiting in the queue
+     * @param level the triage lane the patient is placed in
+     * @param enteredLaneAt the System.nanoTime() at which the patient entered the lane
+     */
+    QueueEntry(Patient patient, TriageLevel level, long enteredLaneAt) {
+        this.patient = patient;
+        this.level = level;
+        this.enteredLaneAt = enteredLaneAt;
+    }
+}
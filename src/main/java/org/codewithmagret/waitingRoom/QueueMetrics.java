@@ -0,0 +1,197 @@
+package org.codewithmagret.waitingRoom;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Class collecting wait-time and throughput metrics for a PatientWaitingQueue.
+ * Recording only touches striped LongAdder counters and a lock-free histogram, so it adds
+ * a few nanoseconds to adding and serving. Derived values such as percentiles and the
+ * serve rate are computed when they are read.
+ */
+public final class QueueMetrics implements QueueMetricsMXBean {
+    /**
+     * How often the serve rate moving average is updated, in nanoseconds.
+     */
+    private static final long TICK_NANOS = 5_000_000_000L;
+
+    /**
+     * The smoothing factor of a one-minute moving average updated every five seconds.
+     */
+    private static final double ALPHA = 1.0 - Math.exp(-5.0 / 60.0);
+
+    /**
+     * The largest number of missed ticks applied at once; older activity has decayed away by then.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 100;
+
+    /**
+     * Supplies the current number of waiting patients.
+     */
+    private final IntSupplier depth;
+
+    /**
+     * The number of patients added to the queue.
+     */
+    private final LongAdder enqueued = new LongAdder();
+
+    /**
+     * The number of patients served.
+     */
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * Serves not yet folded into the moving average.
+     */
+    private final LongAdder servedSinceTick = new LongAdder();
+
+    /**
+     * The wait times of served patients.
+     */
+    private final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+
+    /**
+     * The System.nanoTime() of the last moving average update.
+     */
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+    /**
+     * The moving average of patients served per second.
+     */
+    private volatile double servedPerSecond = Double.NaN;
+
+    /**
+     * Parameterized constructor for QueueMetrics.
+     *
+     * @param depth supplies the current number of waiting patients
+     */
+    QueueMetrics(IntSupplier depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Records a patient being added to the queue.
+     */
+    void recordEnqueue() {
+        enqueued.increment();
+    }
+
+    /**
+     * Records a patient being served.
+     *
+     * @param waitNanos how long the patient waited, in nanoseconds, or a negative value if the wait is unknown
+     */
+    void recordServe(long waitNanos) {
+        served.increment();
+        servedSinceTick.increment();
+        if (waitNanos >= 0) {
+            waitTimes.record(waitNanos);
+        }
+    }
+
+    /**
+     * Returns a point-in-time view of every metric.
+     *
+     * @return the current metrics
+     */
+    public QueueMetricsSnapshot snapshot() {
+        return new QueueMetricsSnapshot(getQueueDepth(), getEnqueuedTotal(), getServedTotal(), getServeRatePerMinute(),
+                getWaitP50Millis(), getWaitP95Millis(), getWaitP99Millis());
+    }
+
+    /**
+     * Returns the wait-time histogram, for callers that need other percentiles.
+     *
+     * @return the histogram of served patients' wait times
+     */
+    public WaitTimeHistogram waitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing any MBean already
+     * registered under the same name.
+     *
+     * @param objectName the JMX object name, for example "org.codewithmagret:type=PatientWaitingQueue"
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public void registerMBean(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register queue metrics as " + objectName, e);
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return depth.getAsInt();
+    }
+
+    @Override
+    public long getEnqueuedTotal() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getServedTotal() {
+        return served.sum();
+    }
+
+    @Override
+    public double getServeRatePerMinute() {
+        tickIfNecessary();
+        double rate = servedPerSecond;
+        return Double.isNaN(rate) ? 0.0 : rate * 60.0;
+    }
+
+    @Override
+    public double getWaitP50Millis() {
+        return waitTimes.percentileMillis(50.0);
+    }
+
+    @Override
+    public double getWaitP95Millis() {
+        return waitTimes.percentileMillis(95.0);
+    }
+
+    @Override
+    public double getWaitP99Millis() {
+        return waitTimes.percentileMillis(99.0);
+    }
+
+    /**
+     * Folds the serves of every elapsed five-second tick into the moving average.
+     * Only the thread that advances lastTick does the update, so readers never lock.
+     */
+    private void tickIfNecessary() {
+        long previous = lastTick.get();
+        long age = System.nanoTime() - previous;
+        if (age < TICK_NANOS) {
+            return;
+        }
+
+        long ticks = age / TICK_NANOS;
+        if (!lastTick.compareAndSet(previous, previous + ticks * TICK_NANOS)) {
+            return;
+        }
+
+        double rate = servedPerSecond;
+        double instant = servedSinceTick.sumThenReset() / (TICK_NANOS / 1e9);
+        rate = Double.isNaN(rate) ? instant : rate + ALPHA * (instant - rate);
+        for (long i = 1; i < Math.min(ticks, MAX_CATCH_UP_TICKS); i++) {
+            rate -= ALPHA * rate;
+        }
+        servedPerSecond = rate;
+    }
+}
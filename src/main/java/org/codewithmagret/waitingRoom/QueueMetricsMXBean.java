@@ -0,0 +1,41 @@
+package org.codewithmagret.waitingRoom;
+
+/**
+ * Management interface exposing waiting queue metrics over JMX.
+ */
+public interface QueueMetricsMXBean {
+    /**
+     * @return the number of patients currently waiting
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of patients added to the queue since it was created
+     */
+    long getEnqueuedTotal();
+
+    /**
+     * @return the number of patients served since the queue was created
+     */
+    long getServedTotal();
+
+    /**
+     * @return the one-minute moving average of patients served per minute
+     */
+    double getServeRatePerMinute();
+
+    /**
+     * @return the median wait time of served patients, in milliseconds
+     */
+    double getWaitP50Millis();
+
+    /**
+     * @return the 95th percentile wait time of served patients, in milliseconds
+     */
+    double getWaitP95Millis();
+
+    /**
+     * @return the 99th percentile wait time of served patients, in milliseconds
+     */
+    double getWaitP99Millis();
+}
@@ -0,0 +1,28 @@
+package org.codewithmagret.waitingRoom;
+
+/**
+ * Point-in-time view of the waiting queue metrics.
+ *
+ * @param queueDepth         the number of patients waiting
+ * @param enqueuedTotal      the number of patients added since the queue was created
+ * @param servedTotal        the number of patients served since the queue was created
+ * @param serveRatePerMinute the one-minute moving average of patients served per minute
+ * @param waitP50Millis      the median wait time of served patients, in milliseconds
+ * @param waitP95Millis      the 95th percentile wait time, in milliseconds
+ * @param waitP99Millis      the 99th percentile wait time, in milliseconds
+ */
+public record QueueMetricsSnapshot(int queueDepth, long enqueuedTotal, long servedTotal, double serveRatePerMinute,
+                                   double waitP50Millis, double waitP95Millis, double waitP99Millis) {
+
+    /**
+     * Returns a one-line summary of the metrics.
+     *
+     * @return a string with the depth, totals, serve rate and wait percentiles
+     */
+    @Override
+    public String toString() {
+        return String.format("QueueMetrics { depth=%d, enqueued=%d, served=%d, servedPerMinute=%.1f, "
+                        + "waitMillis p50=%.1f p95=%.1f p99=%.1f }",
+                queueDepth, enqueuedTotal, servedTotal, serveRatePerMinute, waitP50Millis, waitP95Millis, waitP99Millis);
+    }
+}
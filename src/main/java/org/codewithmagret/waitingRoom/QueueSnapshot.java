@@ -0,0 +1,170 @@
+package org.codewithmagret.waitingRoom;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.TriageLevel;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that writes and reads point-in-time snapshots of a waiting queue.
+ * <p>
+ * A snapshot is a memory-mapped file holding a header (magic, version, the log LSN the
+ * snapshot was taken at, and the number of entries) followed by every waiting patient in
+ * queue order: numeric ID, triage level, lane, and name and reason as length-prefixed UTF-8.
+ * A snapshot is written to a temporary file and moved into place, so a crash mid-write
+ * leaves the previous snapshot intact.
+ */
+final class QueueSnapshot {
+    /**
+     * The magic number at the start of every snapshot file ("PWQS").
+     */
+    private static final int MAGIC = 0x50575153;
+
+    /**
+     * The version of the snapshot layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the header: magic, version, LSN and entry count.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QueueSnapshot() {}
+
+    /**
+     * Writes a snapshot of queue entries, replacing any previous snapshot at the path.
+     *
+     * @param file    the path of the snapshot file
+     * @param lsn     the log LSN the entries reflect
+     * @param entries the waiting patients in queue order
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Path file, long lsn, List<QueueEntry> entries) throws IOException {
+        long size = HEADER_SIZE;
+        for (QueueEntry entry : entries) {
+            size += 8 + 1 + 1 + 4 + utf8Length(entry.patient.getName()) + 4 + utf8Length(entry.patient.getReasonForVisit());
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(VERSION).putLong(lsn).putInt(entries.size());
+            for (QueueEntry entry : entries) {
+                Patient patient = entry.patient;
+                TriageLevel level = patient.getTriageLevel() == null ? TriageLevel.ROUTINE : patient.getTriageLevel();
+                out.putLong(patient.getNumericId());
+                out.put((byte) level.ordinal());
+                out.put((byte) entry.level.ordinal());
+                putString(out, patient.getName());
+                putString(out, patient.getReasonForVisit());
+            }
+            out.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot, handing each waiting patient and their lane to a consumer in queue order.
+     *
+     * @param file     the path of the snapshot file
+     * @param consumer receives each patient and the lane they were waiting in
+     * @return the log LSN the snapshot reflects
+     * @throws IOException if the snapshot cannot be read or is not a valid snapshot
+     */
+    static long read(Path file, BiConsumer<Patient, TriageLevel> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a queue snapshot: " + file);
+            }
+
+            long lsn = in.getLong();
+            int count = in.getInt();
+            TriageLevel[] levels = TriageLevel.values();
+            for (int i = 0; i < count; i++) {
+                long id = in.getLong();
+                TriageLevel level = levels[in.get()];
+                TriageLevel lane = levels[in.get()];
+                String name = readString(in);
+                String reason = readString(in);
+                consumer.accept(new Patient(id, name, reason, level), lane);
+            }
+            return lsn;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt queue snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, or -1 for null.
+     *
+     * @param out   the buffer to write to
+     * @param value the string to write
+     */
+    private static void putString(MappedByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * Reads a string written by putString.
+     *
+     * @param in the buffer to read from
+     * @return the string, or null
+     */
+    private static String readString(MappedByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the exact UTF-8 size of a string.
+     *
+     * @param value the string, or null
+     * @return the number of bytes the string encodes to
+     */
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
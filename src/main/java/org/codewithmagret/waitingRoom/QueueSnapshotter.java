@@ -0,0 +1,166 @@
+package org.codewithmagret.waitingRoom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that periodically writes snapshots of a durable waiting queue.
+ * <p>
+ * Snapshots are not taken from the live queue. Instead the snapshotter keeps its own
+ * shadow copy of the queue and brings it up to date by reading the durable part of the
+ * write-ahead log through a separate read-only channel. Taking a snapshot therefore never
+ * takes the live queue's lock, so adding and serving patients are never paused.
+ * <p>
+ * If applying a log record to the shadow queue fails, the records of that catch-up already
+ * applied cannot be told apart from the rest, so the shadow is rebuilt from the last snapshot
+ * written. A failed catch-up therefore never applies a record twice or leaves a snapshot that
+ * does not match the live queue.
+ */
+final class QueueSnapshotter implements Closeable {
+    /**
+     * The shadow copy of the queue, rebuilt from the log. Guarded by this object's monitor.
+     */
+    private PatientWaitingQueue shadow;
+
+    /**
+     * The replayer applying log records to the shadow queue. Guarded by this object's monitor.
+     */
+    private PatientWaitingQueue.LogReplayer shadowReplayer;
+
+    /**
+     * A read-only channel of the log file, separate from the one the log appends through.
+     */
+    private final FileChannel logReader;
+
+    /**
+     * The log of the live queue, used to find how far the log is durable.
+     */
+    private final QueueWriteAheadLog journal;
+
+    /**
+     * The path the snapshot is written to.
+     */
+    private final Path snapshotFile;
+
+    /**
+     * The scheduler taking periodic snapshots, or null if snapshots are only taken on demand.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The LSN the shadow queue reflects. Guarded by this object's monitor.
+     */
+    private long shadowLsn;
+
+    /**
+     * The LSN of the last snapshot written. Guarded by this object's monitor.
+     */
+    private long snapshotLsn;
+
+    /**
+     * Parameterized constructor for QueueSnapshotter.
+     * The shadow queue starts from the existing snapshot, if any, and catches up with the
+     * log on the first snapshot.
+     *
+     * @param logFile      the path of the write-ahead log
+     * @param snapshotFile the path of the snapshot file
+     * @param journal      the log of the live queue
+     * @param interval     how often to take a snapshot; Duration.ZERO only snapshots on close
+     * @throws IOException if the log or the existing snapshot cannot be read
+     */
+    QueueSnapshotter(Path logFile, Path snapshotFile, QueueWriteAheadLog journal, Duration interval) throws IOException {
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+        loadShadow();
+        snapshotLsn = shadowLsn;
+        this.logReader = FileChannel.open(logFile, StandardOpenOption.READ);
+
+        if (interval.isZero() || interval.isNegative()) {
+            scheduler = null;
+        } else {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "queue-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = interval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Brings the shadow queue up to the durable end of the log and writes a snapshot of it.
+     * Does nothing if the log has not grown since the last snapshot.
+     *
+     * @throws IOException if the log cannot be read or the snapshot cannot be written
+     */
+    synchronized void snapshotNow() throws IOException {
+        long durable = journal.durableLsn();
+        if (durable > shadowLsn) {
+            try {
+                shadowLsn = QueueWriteAheadLog.readRecords(logReader, shadowLsn, durable, shadowReplayer);
+            } catch (RuntimeException e) {
+                // Part of the batch may already be in the shadow; start again from the last snapshot
+                loadShadow();
+                throw e;
+            }
+        }
+        if (shadowLsn != snapshotLsn) {
+            QueueSnapshot.write(snapshotFile, shadowLsn, shadow.entries());
+            snapshotLsn = shadowLsn;
+        }
+    }
+
+    /**
+     * Stops periodic snapshots, takes a final snapshot and closes the log reader.
+     *
+     * @throws IOException if the final snapshot cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            snapshotNow();
+        } finally {
+            logReader.close();
+        }
+    }
+
+    /**
+     * Replaces the shadow queue with one read from the snapshot file, or an empty one if there is none.
+     * Must be called while holding this object's monitor, or from the constructor.
+     *
+     * @throws IOException if the snapshot cannot be read
+     */
+    private void loadShadow() throws IOException {
+        shadow = new PatientWaitingQueue(Duration.ZERO);
+        shadowReplayer = shadow.replayer();
+        shadowLsn = Files.exists(snapshotFile) ? QueueSnapshot.read(snapshotFile, shadowReplayer::restore) : 0;
+    }
+
+    /**
+     * Takes a scheduled snapshot; a failure is reported and retried on the next run.
+     */
+    private void snapshotQuietly() {
+        try {
+            snapshotNow();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Queue snapshot failed: " + e);
+        }
+    }
+}
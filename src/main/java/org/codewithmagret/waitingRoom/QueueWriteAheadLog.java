@@ -0,0 +1,608 @@
+package org.codewithmagret.waitingRoom;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.TriageLevel;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Class representing an append-only log of every change made to a PatientWaitingQueue.
+ * <p>
+ * Each record is written as its body length, a CRC32C of the body, and the body itself
+ * (an operation code followed by its arguments). Records are first appended to an
+ * in-memory batch; a caller that needs its change on disk calls {@link #awaitDurable(long)}.
+ * The first such caller writes and fsyncs the whole pending batch, and every caller whose
+ * record was in that batch returns without an fsync of its own (group commit).
+ * <p>
+ * If writing or syncing a batch fails, the batch is put back in front of the records appended
+ * since, whatever part of it reached the file is cut off again, and the log is failed: every
+ * later {@link #awaitDurable(long)} throws at once. The file then ends at the last durable record.
+ * <p>
+ * Positions in the log (LSNs) are byte offsets in the file, so the LSN of a record is
+ * the offset just past its end.
+ */
+public final class QueueWriteAheadLog implements Closeable {
+    /**
+     * Operation codes stored as the first byte of each record body.
+     */
+    static final byte ADD = 1, INSERT = 2, SERVE = 3, REMOVE = 4, MOVE_TO_FRONT = 5, CHANGE_TRIAGE = 6, PROMOTE = 7;
+
+    /**
+     * The size of the record header: body length and CRC32C.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The largest record body accepted when reading the log; anything larger is treated as corruption.
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+
+    /**
+     * Interface implemented by whatever rebuilds the queue from the log.
+     * Each method applies one logged operation, in log order.
+     */
+    interface Replayer {
+        void add(Patient patient);
+
+        void insert(Patient patient, int position);
+
+        void serve();
+
+        void remove(long id);
+
+        void moveToFront(long id);
+
+        void changeTriage(long id, TriageLevel level);
+
+        void promote(TriageLevel from);
+    }
+
+    /**
+     * The channel of the log file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Lock guarding the pending batch and appendedLsn.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Lock held by the thread writing and syncing a batch.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Checksum used for records being appended. Guarded by appendLock.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Records appended but not yet written to the file. Guarded by appendLock.
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * An empty buffer swapped in for pending while a batch is being written. Guarded by flushLock.
+     */
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * The LSN just past the last appended record. Written under appendLock.
+     */
+    private volatile long appendedLsn;
+
+    /**
+     * The LSN up to which the log is known to be on disk.
+     */
+    private volatile long durableLsn;
+
+    /**
+     * The error that failed the log, or null while the log is healthy.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Constructor for a log over an open channel; use {@link #open(Path)} to open a log file.
+     *
+     * @param channel the channel of the log file
+     */
+    QueueWriteAheadLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a log file, creating it if it does not exist.
+     * Call {@link #replay(Replayer)} before appending, so a torn record at the end is dropped.
+     *
+     * @param file the path of the log file
+     * @return the opened log
+     * @throws IOException if the file cannot be opened
+     */
+    public static QueueWriteAheadLog open(Path file) throws IOException {
+        return new QueueWriteAheadLog(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Reads every record in the log, in order, and hands it to the replayer.
+     * Reading stops at the first incomplete or corrupt record, which is cut off the file
+     * so new records are appended after the last good one.
+     *
+     * @param replayer the object applying the logged operations
+     * @return the number of bytes of log replayed
+     * @throws IOException if the file cannot be read or truncated
+     */
+    long replay(Replayer replayer) throws IOException {
+        return replay(replayer, 0L);
+    }
+
+    /**
+     * Reads the records starting at a given LSN, in order, and hands them to the replayer.
+     *
+     * @param replayer the object applying the logged operations
+     * @param fromLsn  the LSN to start reading at; must be a record boundary
+     * @return the number of bytes of log replayed
+     * @throws IOException if the file cannot be read or truncated
+     * @see #replay(Replayer)
+     */
+    long replay(Replayer replayer, long fromLsn) throws IOException {
+        if (fromLsn > channel.size()) {
+            throw new IOException("Queue log is shorter than LSN " + fromLsn);
+        }
+
+        long position = readRecords(channel, fromLsn, Long.MAX_VALUE, replayer);
+        channel.truncate(position);
+        channel.position(position);
+        long records = position - fromLsn;
+        appendedLsn = position;
+        durableLsn = position;
+        return records;
+    }
+
+    /**
+     * Reads records from a log file, in order, and hands them to a replayer, without changing the file.
+     * Reading stops at the limit or at the first incomplete or corrupt record.
+     *
+     * @param channel  a channel of the log file; its position is moved
+     * @param fromLsn  the LSN to start reading at; must be a record boundary
+     * @param limitLsn the LSN to stop reading at; must be a record boundary
+     * @param replayer the object applying the logged operations
+     * @return the LSN just past the last record read
+     * @throws IOException if the file cannot be read
+     */
+    static long readRecords(FileChannel channel, long fromLsn, long limitLsn, Replayer replayer) throws IOException {
+        long position = fromLsn;
+        channel.position(fromLsn);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        byte[] body = new byte[256];
+        CRC32C check = new CRC32C();
+        try {
+            while (position < limitLsn) {
+                int length = in.readInt();
+                int expectedCrc = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                in.readFully(body, 0, length);
+                check.reset();
+                check.update(body, 0, length);
+                if ((int) check.getValue() != expectedCrc) {
+                    break;
+                }
+
+                apply(ByteBuffer.wrap(body, 0, length), replayer);
+                position += HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+            // A record cut short by a crash; everything before it is intact
+        }
+        return position;
+    }
+
+    /**
+     * Returns the LSN up to which the log is known to be on disk.
+     *
+     * @return the durable end of the log
+     */
+    long durableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * Checks that no earlier write or sync has failed the log.
+     *
+     * @throws UncheckedIOException if the log has failed
+     */
+    void checkHealthy() {
+        IOException cause = failure;
+        if (cause != null) {
+            throw new UncheckedIOException("The queue log failed earlier", cause);
+        }
+    }
+
+    /**
+     * Returns the LSN just past the last appended record.
+     *
+     * @return the current end of the log, including records not yet on disk
+     */
+    long appendedLsn() {
+        return appendedLsn;
+    }
+
+    /**
+     * Appends a record for a patient added to the back of their lane.
+     *
+     * @param patient the added patient
+     */
+    void logAdd(Patient patient) {
+        appendLock.lock();
+        try {
+            int start = begin(ADD, 64 + utf8Length(patient.getName()) + utf8Length(patient.getReasonForVisit()));
+            putPatient(patient);
+            end(start);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record for a patient inserted at a position.
+     *
+     * @param patient  the inserted patient
+     * @param position the position the patient was inserted at
+     */
+    void logInsert(Patient patient, int position) {
+        appendLock.lock();
+        try {
+            int start = begin(INSERT, 64 + utf8Length(patient.getName()) + utf8Length(patient.getReasonForVisit()));
+            putPatient(patient);
+            pending.putInt(position);
+            end(start);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record for the patient at the front being served.
+     */
+    void logServe() {
+        appendLock.lock();
+        try {
+            end(begin(SERVE, 0));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record for a patient removed by id.
+     *
+     * @param id the numeric ID of the removed patient
+     */
+    void logRemove(long id) {
+        logId(REMOVE, id);
+    }
+
+    /**
+     * Appends a record for a patient moved to the front of their lane.
+     *
+     * @param id the numeric ID of the moved patient
+     */
+    void logMoveToFront(long id) {
+        logId(MOVE_TO_FRONT, id);
+    }
+
+    /**
+     * Appends a record for a change of triage level.
+     *
+     * @param id    the numeric ID of the patient
+     * @param level the new triage level
+     */
+    void logChangeTriage(long id, TriageLevel level) {
+        appendLock.lock();
+        try {
+            int start = begin(CHANGE_TRIAGE, 9);
+            pending.putLong(id);
+            pending.put((byte) level.ordinal());
+            end(start);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record for the head of a lane being aged up into the next lane.
+     *
+     * @param from the lane the patient was promoted from
+     */
+    void logPromote(TriageLevel from) {
+        appendLock.lock();
+        try {
+            int start = begin(PROMOTE, 1);
+            pending.put((byte) from.ordinal());
+            end(start);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record up to a given LSN is on disk.
+     * If no other thread is already syncing, this thread writes and fsyncs the whole pending
+     * batch, covering the records of every thread that appended before it.
+     *
+     * @param lsn the LSN that must be durable
+     * @throws UncheckedIOException if writing or syncing the file fails, now or in an earlier call
+     */
+    void awaitDurable(long lsn) {
+        checkHealthy();
+        if (durableLsn >= lsn) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            checkHealthy();
+            if (durableLsn >= lsn) {
+                return;
+            }
+
+            ByteBuffer batch;
+            long batchEnd;
+            appendLock.lock();
+            try {
+                batch = pending;
+                pending = spare;
+                batchEnd = appendedLsn;
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                fail(batch, e);
+                throw new UncheckedIOException("Failed to sync the queue log", e);
+            }
+            batch.clear();
+            spare = batch;
+            durableLsn = batchEnd;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Fails the log after a batch could not be written or synced. The batch is put back in
+     * front of the records appended since, so pending and spare are distinct buffers again and
+     * no record is dropped, and any part of the batch that reached the file is cut off.
+     * Must be called while holding flushLock.
+     *
+     * @param batch the batch that was being written, flipped for reading
+     * @param cause the error that stopped the write
+     */
+    private void fail(ByteBuffer batch, IOException cause) {
+        appendLock.lock();
+        try {
+            ByteBuffer appended = pending;
+            appended.flip();
+            batch.rewind();
+            ByteBuffer merged = ByteBuffer.allocate(batch.remaining() + appended.capacity());
+            merged.put(batch).put(appended);
+            pending = merged;
+            spare = appended.clear();
+            failure = cause;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            channel.truncate(durableLsn);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes appended but not yet written to the file.
+     *
+     * @return the size of the pending batch
+     */
+    int pendingBytes() {
+        appendLock.lock();
+        try {
+            return pending.position();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes any pending records to disk and closes the log file.
+     *
+     * @throws IOException if writing or closing the file fails, or the log failed earlier
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitDurable(appendedLsn);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Appends a record whose only argument is a patient ID.
+     *
+     * @param op the operation code
+     * @param id the numeric ID of the patient
+     */
+    private void logId(byte op, long id) {
+        appendLock.lock();
+        try {
+            int start = begin(op, 8);
+            pending.putLong(id);
+            end(start);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a record in the pending batch, reserving room for its header.
+     * Must be called while holding appendLock.
+     *
+     * @param op       the operation code
+     * @param maxBytes an upper bound on the size of the arguments
+     * @return the position of the record in the pending batch
+     */
+    private int begin(byte op, int maxBytes) {
+        int needed = HEADER_SIZE + 1 + maxBytes;
+        if (pending.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+
+        int start = pending.position();
+        pending.position(start + HEADER_SIZE);
+        pending.put(op);
+        return start;
+    }
+
+    /**
+     * Finishes a record by filling in its header and advancing the appended LSN.
+     * Must be called while holding appendLock.
+     *
+     * @param start the position of the record in the pending batch
+     */
+    private void end(int start) {
+        int length = pending.position() - start - HEADER_SIZE;
+        crc.reset();
+        crc.update(pending.array(), pending.arrayOffset() + start + HEADER_SIZE, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appendedLsn += HEADER_SIZE + length;
+    }
+
+    /**
+     * Writes a patient into the pending batch.
+     * Must be called while holding appendLock.
+     *
+     * @param patient the patient to write
+     */
+    private void putPatient(Patient patient) {
+        pending.putLong(patient.getNumericId());
+        TriageLevel level = patient.getTriageLevel() == null ? TriageLevel.ROUTINE : patient.getTriageLevel();
+        pending.put((byte) level.ordinal());
+        putString(patient.getName());
+        putString(patient.getReasonForVisit());
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, or -1 for null.
+     * Must be called while holding appendLock.
+     *
+     * @param value the string to write
+     */
+    private void putString(String value) {
+        if (value == null) {
+            pending.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        pending.putInt(bytes.length);
+        pending.put(bytes);
+    }
+
+    /**
+     * Decodes one record body and applies it.
+     *
+     * @param body     the record body
+     * @param replayer the object applying the operation
+     * @throws IOException if the operation code is unknown
+     */
+    private static void apply(ByteBuffer body, Replayer replayer) throws IOException {
+        byte op = body.get();
+        switch (op) {
+            case ADD -> replayer.add(readPatient(body));
+            case INSERT -> {
+                Patient patient = readPatient(body);
+                replayer.insert(patient, body.getInt());
+            }
+            case SERVE -> replayer.serve();
+            case REMOVE -> replayer.remove(body.getLong());
+            case MOVE_TO_FRONT -> replayer.moveToFront(body.getLong());
+            case CHANGE_TRIAGE -> {
+                long id = body.getLong();
+                replayer.changeTriage(id, TriageLevel.values()[body.get()]);
+            }
+            case PROMOTE -> replayer.promote(TriageLevel.values()[body.get()]);
+            default -> throw new IOException("Unknown queue log operation " + op);
+        }
+    }
+
+    /**
+     * Reads a patient written by putPatient.
+     *
+     * @param body the record body
+     * @return the restored Patient object
+     */
+    private static Patient readPatient(ByteBuffer body) {
+        long id = body.getLong();
+        TriageLevel level = TriageLevel.values()[body.get()];
+        String name = readString(body);
+        String reason = readString(body);
+        return new Patient(id, name, reason, level);
+    }
+
+    /**
+     * Reads a string written by putString.
+     *
+     * @param body the record body
+     * @return the string, or null
+     */
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    /**
+     * Returns an upper bound on the UTF-8 size of a string.
+     *
+     * @param value the string, or null
+     * @return the largest number of bytes the string can encode to
+     */
+    private static int utf8Length(String value) {
+        return value == null ? 0 : value.length() * 3;
+    }
+}
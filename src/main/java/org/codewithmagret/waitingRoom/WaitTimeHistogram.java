@@ -0,0 +1,116 @@
+package org.codewithmagret.waitingRoom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class representing a fixed-size histogram of wait times.
+ * Values are recorded in microseconds into log-linear buckets: every power of two is split
+ * into 32 equal sub-buckets, so a percentile is accurate to about 3% of its value.
+ * The histogram uses a fixed array of counters and records with a single atomic increment,
+ * so recording never locks or allocates.
+ */
+public final class WaitTimeHistogram {
+    /**
+     * The number of sub-buckets per power of two, as a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The largest power of two tracked; larger values are counted in the last bucket (about a year).
+     */
+    private static final int MAX_EXPONENT = 44;
+
+    /**
+     * The count of recorded values in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+
+    /**
+     * Records a wait time.
+     *
+     * @param nanos the wait time in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        counts.getAndIncrement(bucketOf(Math.max(0L, nanos / 1_000L)));
+    }
+
+    /**
+     * Returns the total number of recorded values.
+     *
+     * @return the number of values recorded so far
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns an estimate of a percentile of the recorded wait times.
+     *
+     * @param percentile the percentile to estimate, between 0 and 100
+     * @return the estimated wait time in milliseconds, or 0 if nothing has been recorded
+     */
+    public double percentileMillis(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundMicros(i) / 1_000.0;
+            }
+        }
+        return upperBoundMicros(snapshot.length - 1) / 1_000.0;
+    }
+
+    /**
+     * Returns the bucket a value falls into.
+     *
+     * @param micros the value in microseconds
+     * @return the index of its bucket
+     */
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS - 1;
+        }
+        int mantissa = (int) (micros >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the upper bound of the bucket in microseconds
+     */
+    private static long upperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return mantissa * width + width - 1;
+    }
+}
@@ -0,0 +1,564 @@
+package org.codewithmagret.workload;
+
+import org.codewithmagret.history.HistoryBulkLoader;
+import org.codewithmagret.history.PatientHistoryList;
+import org.codewithmagret.models.JsonModelCodec;
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.PatientRecord;
+import org.codewithmagret.models.TriageLevel;
+import org.codewithmagret.waitingRoom.PatientWaitingQueue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Class generating a synthetic, reproducible workload for the waiting queue and the patient
+ * history, for exercising the system at production scale.
+ * <p>
+ * The queue workload is a timeline of arrivals and serves. Arrivals form a Poisson process,
+ * steady or following the day, and each is routine, urgent or an emergency insert by the
+ * profile's ratios; serves form a Poisson process of their own, so the queue grows when
+ * arrivals outpace serving and drains when they do not. The history workload is a run of
+ * patient records in visit date order whose diagnoses follow a Zipf distribution, so a few
+ * diagnoses make up most visits, as in real departments.
+ * <p>
+ * Every random choice is drawn from generators seeded by the profile, one per workload, so the
+ * same profile always yields the same workload, whichever methods are called and in what order.
+ * The workload can drive a queue and a history in-process, or be written as a CSV or NDJSON file
+ * for {@link HistoryBulkLoader} and as a command file for {@link org.codewithmagret.ui.BatchRunner}.
+ */
+public final class WorkloadGenerator {
+    /**
+     * The diagnoses and their usual treatment notes, most common first.
+     */
+    private static final String[][] DIAGNOSES = {
+            {"Upper respiratory infection", "Rest, fluids"},
+            {"Flu", "Rest, hydration"},
+            {"Sprain", "Ice, wrap, elevate"},
+            {"Back pain", "Stretching plan"},
+            {"Migraine", "Pain relief + rest"},
+            {"Sore throat", "Supportive care"},
+            {"Stomach bug", "Fluids + rest"},
+            {"Laceration", "Sutures, wound care"},
+            {"Allergy", "Antihistamine"},
+            {"Urinary tract infection", "Antibiotics"},
+            {"Skin rash", "Topical cream"},
+            {"Asthma attack", "Nebulizer, inhaler review"},
+            {"Fracture", "Cast, orthopedics referral"},
+            {"Ear infection", "Antibiotic drops"},
+            {"Chest pain", "ECG normal, observation"},
+            {"Hypertension", "Medication adjusted"},
+            {"Dehydration", "IV fluids"},
+            {"Concussion", "Neuro checks, rest"},
+            {"Conjunctivitis", "Eye drops"},
+            {"Kidney stone", "Pain relief, fluids"},
+            {"Pneumonia", "Antibiotics, chest X-ray"},
+            {"Burn", "Dressing, burn care"},
+            {"Anxiety", "Counseling referral"},
+            {"Dental abscess", "Antibiotics, dental referral"},
+            {"Appendicitis", "Surgical referral"},
+            {"Checkup", "Vitals normal"},
+    };
+
+    /**
+     * The reasons for visit given by routine and urgent arrivals, most common first.
+     */
+    private static final String[] REASONS = {
+            "Fever", "Cough", "Abdominal pain", "Back pain", "Headache", "Sore throat", "Injury",
+            "Rash", "Vomiting", "Dizziness", "Ear pain", "Shortness of breath", "Chest pain", "Follow-up",
+    };
+
+    /**
+     * The reasons for visit given by emergency arrivals.
+     */
+    private static final String[] EMERGENCY_REASONS = {
+            "Chest pain", "Severe bleeding", "Difficulty breathing", "Stroke symptoms", "Major trauma",
+            "Unconscious", "Severe burn", "Anaphylaxis",
+    };
+
+    /**
+     * The first names the patient names are drawn from.
+     */
+    private static final String[] FIRST_NAMES = {
+            "Amina", "Ben", "Chloe", "David", "Esi", "Farid", "Grace", "Hiro", "Ines", "Jamal", "Kofi", "Lena",
+            "Magret", "Nia", "Omar", "Priya", "Quinn", "Rosa", "Sam", "Tariq", "Uma", "Victor", "Wen", "Yaw",
+    };
+
+    /**
+     * The last names the patient names are drawn from.
+     */
+    private static final String[] LAST_NAMES = {
+            "Mensah", "Smith", "Okafor", "Garcia", "Chen", "Boateng", "Nguyen", "Khan", "Müller", "Silva",
+            "Owusu", "Brown", "Kim", "Haddad", "Novak", "Adeyemi",
+    };
+
+    /**
+     * How far the diurnal arrival rate swings above and below its mean, as a share of the mean.
+     */
+    private static final double DIURNAL_AMPLITUDE = 0.8;
+
+    /**
+     * The hour of the day at which the diurnal arrival rate is at its mean and rising.
+     */
+    private static final double DIURNAL_RISING_HOUR = 9.0;
+
+    /**
+     * The number of records appended to a history in one step.
+     */
+    private static final int RECORD_BATCH = 4096;
+
+    /**
+     * Value mixed into the seed so the queue workload draws from its own generator.
+     */
+    private static final long QUEUE_STREAM = 0x51_7CC1_B727_220AL;
+
+    /**
+     * Value mixed into the seed so the history workload draws from its own generator.
+     */
+    private static final long HISTORY_STREAM = 0x2545_F491_4F6C_DD1DL;
+
+    /**
+     * The profile of the workload.
+     */
+    private final WorkloadProfile profile;
+
+    /**
+     * The cumulative Zipf distribution over DIAGNOSES.
+     */
+    private final double[] diagnosisCdf;
+
+    /**
+     * The cumulative Zipf distribution over REASONS.
+     */
+    private final double[] reasonCdf;
+
+    /**
+     * Interface receiving the events of the queue workload, in time order.
+     */
+    public interface EventSink {
+        /**
+         * Receives a patient arriving at the waiting room.
+         *
+         * @param atMillis       the time of the arrival, in milliseconds from the start of the workload
+         * @param name           the patient's name
+         * @param reasonForVisit the patient's reason for visit
+         * @param level          the patient's triage level
+         * @throws IOException if the event cannot be written
+         */
+        void arrival(long atMillis, String name, String reasonForVisit, TriageLevel level) throws IOException;
+
+        /**
+         * Receives the next patient being served.
+         *
+         * @param atMillis the time of the serve, in milliseconds from the start of the workload
+         * @throws IOException if the event cannot be written
+         */
+        void serve(long atMillis) throws IOException;
+    }
+
+    /**
+     * Functional interface receiving the records of the history workload, in visit date order.
+     */
+    @FunctionalInterface
+    public interface RecordSink {
+        /**
+         * Receives a patient record.
+         *
+         * @param patientRecord the record
+         * @throws IOException if the record cannot be written
+         */
+        void accept(PatientRecord patientRecord) throws IOException;
+    }
+
+    /**
+     * Counts of the events in a generated workload.
+     *
+     * @param arrivals    the number of patient arrivals
+     * @param urgent      the number of arrivals at URGENT level
+     * @param emergencies the number of arrivals inserted at EMERGENCY level
+     * @param serves      the number of serves; when driving a queue, only those that found a patient
+     * @param records     the number of history records
+     */
+    public record Summary(long arrivals, long urgent, long emergencies, long serves, long records) {
+        /**
+         * Override of the toString method for Summary.
+         * @return a one-line summary of the workload
+         */
+        @Override
+        public String toString() {
+            return String.format("%d arrivals (%d urgent, %d emergencies), %d serves, %d history records",
+                    arrivals, urgent, emergencies, serves, records);
+        }
+    }
+
+    /**
+     * Parameterized constructor for WorkloadGenerator.
+     *
+     * @param profile the profile of the workload
+     */
+    public WorkloadGenerator(WorkloadProfile profile) {
+        this.profile = profile;
+        this.diagnosisCdf = zipfCdf(DIAGNOSES.length, profile.diagnosisSkew());
+        this.reasonCdf = zipfCdf(REASONS.length, profile.diagnosisSkew());
+    }
+
+    /**
+     * Getter for the profile.
+     *
+     * @return the profile of the workload
+     */
+    public WorkloadProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Generates the queue workload: the profile's number of arrivals, with the serves that fall
+     * between them, in time order.
+     *
+     * @param sink receives the events
+     * @throws IOException if the sink cannot write an event
+     */
+    public void forEachQueueEvent(EventSink sink) throws IOException {
+        SplittableRandom random = new SplittableRandom(profile.seed() ^ QUEUE_STREAM);
+        double arrivalHours = nextArrival(random, 0);
+        double serveHours = profile.servesPerHour() > 0 ? exponential(random, profile.servesPerHour()) : Double.MAX_VALUE;
+
+        int arrived = 0;
+        while (arrived < profile.arrivals()) {
+            if (serveHours < arrivalHours) {
+                sink.serve(toMillis(serveHours));
+                serveHours += exponential(random, profile.servesPerHour());
+                continue;
+            }
+            double u = random.nextDouble();
+            TriageLevel level = u < profile.emergencyRatio() ? TriageLevel.EMERGENCY
+                    : u < profile.emergencyRatio() + profile.urgentRatio() ? TriageLevel.URGENT : TriageLevel.ROUTINE;
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String reason = level == TriageLevel.EMERGENCY
+                    ? EMERGENCY_REASONS[random.nextInt(EMERGENCY_REASONS.length)]
+                    : REASONS[sample(reasonCdf, random)];
+            sink.arrival(toMillis(arrivalHours), name, reason, level);
+            arrived++;
+            arrivalHours = nextArrival(random, arrivalHours);
+        }
+    }
+
+    /**
+     * Generates the history workload: the profile's number of records, spread evenly over its
+     * days in visit date order.
+     *
+     * @param sink receives the records
+     * @throws IOException if the sink cannot write a record
+     */
+    public void forEachRecord(RecordSink sink) throws IOException {
+        SplittableRandom random = new SplittableRandom(profile.seed() ^ HISTORY_STREAM);
+        long records = profile.historyRecords();
+        long firstDay = profile.historyStart().toEpochDay();
+        long day = -1;
+        String visitDate = null;
+
+        for (long i = 0; i < records; i++) {
+            long recordDay = firstDay + i * profile.historyDays() / records;
+            if (recordDay != day) {
+                // Records of one day share their date string
+                day = recordDay;
+                visitDate = LocalDate.ofEpochDay(day).toString();
+            }
+            String[] diagnosis = DIAGNOSES[sample(diagnosisCdf, random)];
+            String notes = random.nextInt(4) == 0
+                    ? diagnosis[1] + ", follow-up in " + (1 + random.nextInt(14)) + " days"
+                    : diagnosis[1];
+            sink.accept(new PatientRecord(1 + random.nextInt(profile.distinctPatients()), visitDate, diagnosis[0], notes));
+        }
+    }
+
+    /**
+     * Runs the queue workload against a queue in-process, as fast as the queue takes it.
+     *
+     * @param queue the queue to drive
+     * @return the counts of the workload, with only the serves that found a patient
+     */
+    public Summary driveQueue(PatientWaitingQueue queue) {
+        Tally tally = new Tally();
+        try {
+            forEachQueueEvent(new EventSink() {
+                @Override
+                public void arrival(long atMillis, String name, String reasonForVisit, TriageLevel level) {
+                    tally.arrival(level);
+                    queue.addPatientToQueue(new Patient(name, reasonForVisit, level));
+                }
+
+                @Override
+                public void serve(long atMillis) {
+                    if (queue.serveNext() != null) {
+                        tally.serves++;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // This sink never throws IOException
+            throw new IllegalStateException(e);
+        }
+        return tally.summary();
+    }
+
+    /**
+     * Appends the history workload to a history in-process, in batches.
+     *
+     * @param history the history to fill
+     * @return the counts of the workload
+     */
+    public Summary fillHistory(PatientHistoryList history) {
+        Tally tally = new Tally();
+        List<PatientRecord> batch = new ArrayList<>(RECORD_BATCH);
+        try {
+            forEachRecord(patientRecord -> {
+                batch.add(patientRecord);
+                if (batch.size() == RECORD_BATCH) {
+                    history.addAll(batch);
+                    batch.clear();
+                }
+                tally.records++;
+            });
+        } catch (IOException e) {
+            // This sink never throws IOException
+            throw new IllegalStateException(e);
+        }
+        if (!batch.isEmpty()) {
+            history.addAll(batch);
+        }
+        return tally.summary();
+    }
+
+    /**
+     * Writes the history workload as a file {@link HistoryBulkLoader} reads.
+     *
+     * @param file   the file to write, replaced if it exists
+     * @param format the format to write
+     * @return the counts of the workload
+     * @throws IOException if the file cannot be written
+     */
+    public Summary writeHistory(Path file, HistoryBulkLoader.Format format) throws IOException {
+        Tally tally = new Tally();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format == HistoryBulkLoader.Format.CSV) {
+                out.write("patientId,visitDate,diagnosis,treatmentNotes\n");
+            }
+            forEachRecord(patientRecord -> {
+                if (format == HistoryBulkLoader.Format.CSV) {
+                    out.write(Long.toString(patientRecord.getPatientId()));
+                    out.write(',');
+                    out.write(patientRecord.getVisitDate());
+                    out.write(',');
+                    writeCsvField(out, patientRecord.getDiagnosis());
+                    out.write(',');
+                    writeCsvField(out, patientRecord.getTreatmentNotes());
+                } else {
+                    JsonModelCodec.writeJson(patientRecord, out);
+                }
+                out.write('\n');
+                tally.records++;
+            });
+        }
+        return tally.summary();
+    }
+
+    /**
+     * Writes the whole workload as a command file for BatchRunner: the queue events in time
+     * order, then the history records, then the stats and report commands.
+     *
+     * @param file the file to write, replaced if it exists
+     * @return the counts of the workload
+     * @throws IOException if the file cannot be written
+     */
+    public Summary writeCommands(Path file) throws IOException {
+        Tally tally = new Tally();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# Synthetic workload, seed " + profile.seed() + "\n");
+            forEachQueueEvent(new EventSink() {
+                @Override
+                public void arrival(long atMillis, String name, String reasonForVisit, TriageLevel level)
+                        throws IOException {
+                    tally.arrival(level);
+                    out.write(level == TriageLevel.ROUTINE
+                            ? "add " + name + "|" + reasonForVisit + "\n"
+                            : "emergency " + level + "|" + name + "|" + reasonForVisit + "\n");
+                }
+
+                @Override
+                public void serve(long atMillis) throws IOException {
+                    tally.serves++;
+                    out.write("serve\n");
+                }
+            });
+            forEachRecord(patientRecord -> {
+                tally.records++;
+                out.write("record " + patientRecord.getPatientId() + "|" + patientRecord.getVisitDate() + "|"
+                        + patientRecord.getDiagnosis() + "|" + patientRecord.getTreatmentNotes() + "\n");
+            });
+            out.write("stats\nreport\n");
+        }
+        return tally.summary();
+    }
+
+    /**
+     * Returns the time of the arrival after the one at a given time.
+     * A diurnal arrival rate is sampled by thinning: candidates are drawn at the peak rate and
+     * each is kept with the ratio of the rate at its time to the peak rate.
+     *
+     * @param random the generator to draw from
+     * @param hours  the time of the previous arrival, in hours from the start of the workload
+     * @return the time of the next arrival, in hours from the start of the workload
+     */
+    private double nextArrival(SplittableRandom random, double hours) {
+        double rate = profile.arrivalsPerHour();
+        if (profile.pattern() == WorkloadProfile.ArrivalPattern.STEADY) {
+            return hours + exponential(random, rate);
+        }
+        double peak = rate * (1 + DIURNAL_AMPLITUDE);
+        while (true) {
+            hours += exponential(random, peak);
+            double phase = 2 * Math.PI * (hours % 24 - DIURNAL_RISING_HOUR) / 24;
+            if (random.nextDouble() * peak <= rate * (1 + DIURNAL_AMPLITUDE * Math.sin(phase))) {
+                return hours;
+            }
+        }
+    }
+
+    /**
+     * Draws an exponentially distributed gap, the gap between events of a Poisson process.
+     *
+     * @param random the generator to draw from
+     * @param rate   the mean number of events per unit of time
+     * @return the gap, in units of time
+     */
+    private static double exponential(SplittableRandom random, double rate) {
+        return -Math.log(1 - random.nextDouble()) / rate;
+    }
+
+    /**
+     * Converts a time in hours to whole milliseconds.
+     *
+     * @param hours the time in hours
+     * @return the time in milliseconds
+     */
+    private static long toMillis(double hours) {
+        return (long) (hours * 3_600_000);
+    }
+
+    /**
+     * Builds the cumulative Zipf distribution over n items: item k (0-based) has a weight of
+     * 1 / (k + 1)^exponent.
+     *
+     * @param n        the number of items
+     * @param exponent the Zipf exponent
+     * @return the cumulative probabilities, the last being 1
+     */
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1 / Math.pow(k + 1, exponent);
+            cdf[k] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= total;
+        }
+        cdf[n - 1] = 1.0;
+        return cdf;
+    }
+
+    /**
+     * Draws an item from a cumulative distribution.
+     *
+     * @param cdf    the cumulative probabilities
+     * @param random the generator to draw from
+     * @return the index of the item drawn
+     */
+    private static int sample(double[] cdf, SplittableRandom random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it holds a comma, a quote or a line break.
+     *
+     * @param out   the writer
+     * @param value the field, or null for an empty field
+     * @throws IOException if the field cannot be written
+     */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Class counting the events of a workload as they are generated.
+     */
+    private static final class Tally {
+        /**
+         * The number of arrivals.
+         */
+        private long arrivals;
+
+        /**
+         * The number of arrivals at URGENT level.
+         */
+        private long urgent;
+
+        /**
+         * The number of arrivals at EMERGENCY level.
+         */
+        private long emergencies;
+
+        /**
+         * The number of serves.
+         */
+        private long serves;
+
+        /**
+         * The number of history records.
+         */
+        private long records;
+
+        /**
+         * Counts an arrival.
+         *
+         * @param level the triage level of the arrival
+         */
+        void arrival(TriageLevel level) {
+            arrivals++;
+            if (level == TriageLevel.URGENT) {
+                urgent++;
+            } else if (level == TriageLevel.EMERGENCY) {
+                emergencies++;
+            }
+        }
+
+        /**
+         * Returns the counts as a Summary.
+         *
+         * @return the summary
+         */
+        Summary summary() {
+            return new Summary(arrivals, urgent, emergencies, serves, records);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.codewithmagret.workload;
+
+import java.time.LocalDate;
+
+/**
+ * Settings of a synthetic workload. Two generators built from equal profiles produce the same
+ * arrivals, serves and history records, so a performance run can be repeated exactly.
+ *
+ * @param seed              the seed every random choice is derived from
+ * @param arrivals          the number of patients arriving at the waiting room
+ * @param pattern           how the arrival rate varies over the day
+ * @param arrivalsPerHour   the mean number of arrivals per hour
+ * @param urgentRatio       the share of arrivals at URGENT level
+ * @param emergencyRatio    the share of arrivals inserted at EMERGENCY level
+ * @param servesPerHour     the mean number of patients served per hour
+ * @param historyRecords    the number of patient records in the history
+ * @param distinctPatients  the number of patients the history records belong to
+ * @param diagnosisSkew     the Zipf exponent of the diagnosis frequencies; 0 makes every diagnosis
+ *                          equally common, and around 1 a few diagnoses make up most visits
+ * @param historyStart      the visit date of the oldest history record
+ * @param historyDays       the number of days the history records are spread over
+ */
+public record WorkloadProfile(long seed, int arrivals, ArrivalPattern pattern, double arrivalsPerHour,
+                              double urgentRatio, double emergencyRatio, double servesPerHour,
+                              int historyRecords, int distinctPatients, double diagnosisSkew,
+                              LocalDate historyStart, int historyDays) {
+    /**
+     * Enum representing how the arrival rate varies over the day.
+     */
+    public enum ArrivalPattern {
+        /**
+         * Arrivals form a Poisson process with a constant rate: the gaps between them are
+         * exponentially distributed.
+         */
+        STEADY,
+
+        /**
+         * Arrivals form a Poisson process whose rate follows the day, quietest around 3:00 and
+         * busiest around 15:00, averaging the profile's rate over a whole day.
+         */
+        DIURNAL
+    }
+
+    /**
+     * Compact constructor checking the settings.
+     *
+     * @throws IllegalArgumentException if a count or rate is negative, the ratios add up to more
+     *                                  than 1, or the history has records but no patients or days
+     */
+    public WorkloadProfile {
+        if (arrivals < 0 || historyRecords < 0 || distinctPatients < 0 || historyDays < 0) {
+            throw new IllegalArgumentException("counts must not be negative");
+        }
+        if (!(arrivalsPerHour > 0) || servesPerHour < 0 || diagnosisSkew < 0) {
+            throw new IllegalArgumentException("arrivalsPerHour must be positive and servesPerHour and diagnosisSkew must not be negative");
+        }
+        if (urgentRatio < 0 || emergencyRatio < 0 || urgentRatio + emergencyRatio > 1) {
+            throw new IllegalArgumentException("urgentRatio and emergencyRatio must not be negative or add up to more than 1");
+        }
+        if (historyRecords > 0 && (distinctPatients == 0 || historyDays == 0)) {
+            throw new IllegalArgumentException("a history needs at least one patient and one day");
+        }
+        if (pattern == null || historyStart == null) {
+            throw new IllegalArgumentException("pattern and historyStart must not be null");
+        }
+    }
+
+    /**
+     * Returns a profile of a busy emergency department: 10,000 arrivals over a little more than a
+     * month, served slightly slower than they arrive at peak times, and two years of history.
+     *
+     * @param seed the seed every random choice is derived from
+     * @return the default profile
+     */
+    public static WorkloadProfile defaults(long seed) {
+        return new WorkloadProfile(seed, 10_000, ArrivalPattern.DIURNAL, 12.0, 0.15, 0.05, 11.5,
+                100_000, 20_000, 1.1, LocalDate.of(2024, 1, 1), 730);
+    }
+
+    /**
+     * Returns a copy of this profile with other volumes.
+     *
+     * @param arrivals       the number of patients arriving at the waiting room
+     * @param historyRecords the number of patient records in the history
+     * @return the new profile
+     */
+    public WorkloadProfile withVolumes(int arrivals, int historyRecords) {
+        return new WorkloadProfile(seed, arrivals, pattern, arrivalsPerHour, urgentRatio, emergencyRatio,
+                servesPerHour, historyRecords, distinctPatients, diagnosisSkew, historyStart, historyDays);
+    }
+}
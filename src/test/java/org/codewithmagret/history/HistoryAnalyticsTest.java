@@ -0,0 +1,181 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for HistoryAnalytics, checked against reports counted one record at a time.
+ */
+class HistoryAnalyticsTest {
+    /**
+     * A small pool of its own, so the jobs really run split across threads.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutDownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void fullReportMatchesACountOfEveryRecord() {
+        Random random = new Random(17);
+        PatientHistoryList history = new PatientHistoryList();
+        List<PatientRecord> batch = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            batch.add(randomRecord(random));
+        }
+        history.addAll(batch);
+        for (int i = 0; i < 200; i++) {
+            history.addToPatientRecord(randomRecord(random), random.nextInt(history.size() + 1));
+        }
+
+        assertReport(expectedReport(history), new HistoryAnalytics(history, pool).refresh());
+    }
+
+    @Test
+    void incrementalRefreshesMatchAFreshReport() {
+        Random random = new Random(23);
+        PatientHistoryList history = new PatientHistoryList();
+        HistoryAnalytics analytics = new HistoryAnalytics(history, pool);
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        for (int round = 0; round < 30; round++) {
+            List<PatientRecord> batch = new ArrayList<>();
+            int size = round % 5 == 0 ? 20_000 : 1 + random.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                // Mostly visits moving forward in time, with a backdated one now and then
+                day = day.plusDays(random.nextInt(3));
+                LocalDate visit = random.nextInt(500) == 0 ? day.minusDays(1 + random.nextInt(400)) : day;
+                batch.add(new PatientRecord(random.nextInt(60), visit.toString(),
+                        "Diagnosis " + random.nextInt(25), null));
+            }
+            history.addAll(batch);
+
+            HistoryReport incremental = analytics.refresh();
+            assertReport(expectedReport(history), incremental);
+            assertReport(new HistoryAnalytics(history, pool).refresh(), incremental);
+        }
+    }
+
+    @Test
+    void recordsWithoutAPatientNeverCountAsRepeatVisits() {
+        PatientHistoryList history = new PatientHistoryList();
+        HistoryAnalytics analytics = new HistoryAnalytics(history, pool);
+        for (int i = 0; i < 5; i++) {
+            history.addToPatientRecord(new PatientRecord(0, "2026-01-0" + (i + 1), "Walk-in", null), history.size());
+        }
+        HistoryReport report = analytics.refresh();
+        assertEquals(5, report.records());
+        assertEquals(Map.of("Walk-in", 5L), report.diagnosisFrequency());
+        assertTrue(report.repeatIntervalDays().isEmpty());
+        assertEquals(0.0, report.meanRepeatIntervalDays());
+
+        history.addToPatientRecord(new PatientRecord(4, "2026-01-01", "Flu", null), history.size());
+        history.addToPatientRecord(new PatientRecord(4, "2026-01-11", "Flu", null), history.size());
+        report = analytics.refresh();
+        assertEquals(Map.of(10, 1L), report.repeatIntervalDays());
+        assertEquals(10.0, report.meanRepeatIntervalDays());
+    }
+
+    @Test
+    void startingTheHistoryOverStartsTheTotalsOver() {
+        PatientHistoryList history = new PatientHistoryList();
+        HistoryAnalytics analytics = new HistoryAnalytics(history, pool);
+        history.seedTenRecords();
+        assertEquals(10, analytics.refresh().records());
+
+        history.createLinkedList(new PatientRecord(1, "2026-05-05", "Flu", null));
+        HistoryReport report = analytics.refresh();
+        assertEquals(1, report.records());
+        assertEquals(Map.of("Flu", 1L), report.diagnosisFrequency());
+        assertEquals(new TreeMap<>(Map.of(YearMonth.of(2026, 5), 1L)), report.visitsPerMonth());
+    }
+
+    @Test
+    void monthIndexAgreesWithLocalDate() {
+        for (int epochDay = -800_000; epochDay <= 800_000; epochDay += 13) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            assertEquals(date.getYear() * 12 + date.getMonthValue() - 1, HistoryAnalytics.monthIndex(epochDay));
+        }
+    }
+
+    /**
+     * Returns a record with a random patient, diagnosis and visit date, some of them missing.
+     */
+    private static PatientRecord randomRecord(Random random) {
+        int kind = random.nextInt(20);
+        String visitDate = kind == 0 ? null
+                : kind == 1 ? "sometime in spring"
+                : LocalDate.of(1960, 1, 1).plusDays(random.nextInt(30_000)).toString();
+        String diagnosis = random.nextInt(30) == 0 ? null : "Diagnosis " + random.nextInt(200);
+        return new PatientRecord(random.nextInt(1_000), visitDate, diagnosis, null);
+    }
+
+    /**
+     * Counts the reports over a history one record at a time.
+     */
+    private static HistoryReport expectedReport(PatientHistoryList history) {
+        Map<String, Long> diagnoses = new HashMap<>();
+        SortedMap<YearMonth, Long> months = new TreeMap<>();
+        Map<Long, List<Integer>> visits = new HashMap<>();
+        for (PatientRecord patientRecord : history) {
+            if (patientRecord.getDiagnosis() != null) {
+                diagnoses.merge(patientRecord.getDiagnosis(), 1L, Long::sum);
+            }
+            int day = patientRecord.getVisitEpochDay();
+            if (day != PatientRecord.UNKNOWN_VISIT_DAY) {
+                months.merge(YearMonth.from(LocalDate.ofEpochDay(day)), 1L, Long::sum);
+                if (patientRecord.getPatientId() != 0) {
+                    visits.computeIfAbsent(patientRecord.getPatientId(), id -> new ArrayList<>()).add(day);
+                }
+            }
+        }
+
+        SortedMap<Integer, Long> intervals = new TreeMap<>();
+        long total = 0;
+        long count = 0;
+        for (List<Integer> days : visits.values()) {
+            days.sort(null);
+            for (int i = 1; i < days.size(); i++) {
+                int interval = days.get(i) - days.get(i - 1);
+                intervals.merge(interval, 1L, Long::sum);
+                total += interval;
+                count++;
+            }
+        }
+        return new HistoryReport(history.size(), diagnoses, months, intervals,
+                count == 0 ? 0.0 : (double) total / count);
+    }
+
+    /**
+     * Checks that a report holds the expected counts, with the diagnoses most frequent first.
+     */
+    private static void assertReport(HistoryReport expected, HistoryReport actual) {
+        assertEquals(expected.records(), actual.records());
+        assertEquals(expected.diagnosisFrequency(), actual.diagnosisFrequency());
+        assertEquals(expected.visitsPerMonth(), actual.visitsPerMonth());
+        assertEquals(expected.repeatIntervalDays(), actual.repeatIntervalDays());
+        assertEquals(expected.meanRepeatIntervalDays(), actual.meanRepeatIntervalDays(), 1e-9);
+
+        long previous = Long.MAX_VALUE;
+        for (long frequency : actual.diagnosisFrequency().values()) {
+            assertTrue(frequency <= previous);
+            previous = frequency;
+        }
+    }
+}
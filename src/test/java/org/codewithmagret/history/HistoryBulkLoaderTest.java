@@ -0,0 +1,119 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.JsonModelCodec;
+import org.codewithmagret.models.PatientRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for HistoryBulkLoader: cutting files into chunks of whole lines and linking them in order.
+ */
+class HistoryBulkLoaderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void quotedLineBreaksSurviveChunkBoundaries() throws IOException {
+        Random random = new Random(19);
+        List<PatientRecord> expected = new ArrayList<>();
+        StringBuilder csv = new StringBuilder("patientId,visitDate,diagnosis,treatmentNotes\n");
+        int malformed = 0;
+        // Several chunks' worth of lines, most of them with quoted line breaks, commas and quotes
+        while (csv.length() < 5 << 20) {
+            if (random.nextInt(500) == 0) {
+                csv.append("P1,2026-01-01,too,many,fields\n");
+                malformed++;
+                continue;
+            }
+            int i = expected.size();
+            String notes = "Line one, \"quoted\"\nline two " + i + (random.nextBoolean() ? "\r\nline three" : "");
+            PatientRecord patientRecord = new PatientRecord(1 + i % 97, "2026-02-" + (10 + i % 19),
+                    "Diagnosis " + i % 31, notes);
+            expected.add(patientRecord);
+            csv.append('P').append(patientRecord.getPatientId()).append(',').append(patientRecord.getVisitDate())
+                    .append(',').append(patientRecord.getDiagnosis())
+                    .append(",\"").append(notes.replace("\"", "\"\"")).append('"')
+                    .append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        Path file = dir.resolve("history.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        PatientHistoryList history = new PatientHistoryList();
+        BulkLoadProgress progress = new HistoryBulkLoader(3).load(file, HistoryBulkLoader.Format.CSV, history, null);
+        assertEquals(expected.size(), progress.records());
+        assertEquals(malformed, progress.skipped());
+        assertEquals(Files.size(file), progress.bytesRead());
+        assertRecords(expected, history);
+    }
+
+    @Test
+    void linesLongerThanTheBufferAreRead() throws IOException {
+        String longNotes = "n".repeat(3 << 20);
+        List<PatientRecord> expected = List.of(
+                new PatientRecord(1, "2026-01-01", "Before", "short"),
+                new PatientRecord(2, "2026-01-02", "Long", longNotes),
+                new PatientRecord(3, "2026-01-03", "After", "short"));
+
+        StringBuilder csv = new StringBuilder();
+        StringBuilder ndjson = new StringBuilder();
+        for (PatientRecord patientRecord : expected) {
+            csv.append(patientRecord.getPatientId()).append(',').append(patientRecord.getVisitDate()).append(',')
+                    .append(patientRecord.getDiagnosis()).append(',').append(patientRecord.getTreatmentNotes()).append('\n');
+            ndjson.append(JsonModelCodec.toJson(patientRecord)).append('\n');
+        }
+        Path csvFile = dir.resolve("long.csv");
+        Files.writeString(csvFile, csv);
+        Path ndjsonFile = dir.resolve("long.ndjson");
+        // No line break after the last line
+        Files.writeString(ndjsonFile, ndjson.substring(0, ndjson.length() - 1));
+
+        PatientHistoryList fromCsv = new PatientHistoryList();
+        new HistoryBulkLoader(2).load(csvFile, HistoryBulkLoader.Format.of(csvFile), fromCsv, null);
+        assertRecords(expected, fromCsv);
+
+        PatientHistoryList fromNdjson = new PatientHistoryList();
+        BulkLoadProgress progress = new HistoryBulkLoader(2)
+                .load(ndjsonFile, HistoryBulkLoader.Format.of(ndjsonFile), fromNdjson, null);
+        assertEquals(Files.size(ndjsonFile), progress.bytesRead());
+        assertRecords(expected, fromNdjson);
+    }
+
+    @Test
+    void progressIsReportedWhenTheImportEnds() throws IOException {
+        Path file = dir.resolve("small.csv");
+        Files.writeString(file, "1,2026-01-01,Flu,Rest\nnot a record\n2,2026-01-02\n");
+        List<BulkLoadProgress> reports = new ArrayList<>();
+        PatientHistoryList history = new PatientHistoryList();
+        BulkLoadProgress progress = new HistoryBulkLoader(1).load(file, HistoryBulkLoader.Format.CSV, history, reports::add);
+        assertEquals(2, progress.records());
+        assertEquals(1, progress.skipped());
+        assertEquals(100.0, progress.percentDone());
+        assertEquals(progress.records(), reports.getLast().records());
+        assertEquals(2, history.size());
+    }
+
+    /**
+     * Checks that a history holds the expected records, in order.
+     */
+    private static void assertRecords(List<PatientRecord> expected, PatientHistoryList history) {
+        assertEquals(expected.size(), history.size());
+        int position = 0;
+        for (PatientRecord actual : history) {
+            PatientRecord patientRecord = expected.get(position++);
+            assertEquals(patientRecord.getPatientId(), actual.getPatientId());
+            assertEquals(patientRecord.getVisitDate(), actual.getVisitDate());
+            assertEquals(patientRecord.getDiagnosis(), actual.getDiagnosis());
+            assertEquals(patientRecord.getTreatmentNotes(), actual.getTreatmentNotes());
+        }
+    }
+}
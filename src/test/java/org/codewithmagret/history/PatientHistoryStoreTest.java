@@ -0,0 +1,76 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for PatientHistoryStore: histories sharing their shard's diagnoses and notes.
+ */
+class PatientHistoryStoreTest {
+    @Test
+    void concurrentAppendsToDifferentPatientsKeepEveryRecordIntact() throws Exception {
+        PatientHistoryStore store = new PatientHistoryStore(4);
+        int threads = 8;
+        int perThread = 2_000;
+        int patients = 101;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long patientId = 1 + (i * threads + thread) % patients;
+                        store.addRecord(patientId, new PatientRecord("2026-01-0" + (1 + i % 9),
+                                "Diagnosis " + i % 37, "Notes " + thread + "/" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        int total = 0;
+        for (long patientId = 1; patientId <= patients; patientId++) {
+            HistoryCursor cursor = store.openCursor(patientId);
+            total += cursor.size();
+            for (int position = 0; position < cursor.size(); position++) {
+                PatientRecord record = cursor.moveTo(position);
+                assertEquals(patientId, record.getPatientId());
+                String[] notes = record.getTreatmentNotes().substring("Notes ".length()).split("/");
+                int i = Integer.parseInt(notes[1]);
+                assertEquals(patientId, 1 + (i * threads + Integer.parseInt(notes[0])) % patients);
+                assertEquals("Diagnosis " + i % 37, record.getDiagnosis());
+            }
+        }
+        assertEquals(threads * perThread, total);
+        assertEquals(patients, store.patientCount());
+    }
+
+    @Test
+    void navigationStaysOnTheSameRecordAcrossInserts() {
+        PatientHistoryList history = new PatientHistoryList();
+        history.seedTenRecords();
+        assertEquals("Follow-up", history.navigateToRecord(9).getDiagnosis());
+        history.addToPatientRecord(new PatientRecord("2025-12-30", "Earlier", null), 0);
+        assertEquals("Follow-up", history.getCurrentRecord().getDiagnosis());
+        assertEquals("Skin rash", history.navigateToPreviousRecord().getDiagnosis());
+        history.addToPatientRecord(new PatientRecord("2026-02-11", "Later", null), history.size());
+        assertEquals("Follow-up", history.navigateToNextRecord().getDiagnosis());
+        assertEquals("Later", history.navigateToNextRecord().getDiagnosis());
+        assertEquals(true, history.isAtNewest());
+        assertEquals("Earlier", history.navigateToOldestRecord().getDiagnosis());
+        assertEquals(12, history.size());
+    }
+}
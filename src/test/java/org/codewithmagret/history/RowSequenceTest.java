@@ -0,0 +1,136 @@
+package org.codewithmagret.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for RowSequence, checked against an ArrayList holding the same rows.
+ */
+class RowSequenceTest {
+    @Test
+    void randomInsertsAndAppendsMatchAList() {
+        Random random = new Random(18);
+        RowSequence sequence = RowSequence.EMPTY_INDEXED;
+        List<Integer> expected = new ArrayList<>();
+        int nextRow = 0;
+        for (int step = 0; step < 3_000; step++) {
+            int choice = random.nextInt(10);
+            if (choice < 6) {
+                int rank = random.nextInt(expected.size() + 1);
+                sequence = sequence.insert(rank, nextRow);
+                expected.add(rank, nextRow++);
+            } else if (choice < 8) {
+                // Keep inserting in one spot, so its neighbours run out of labels between them
+                int rank = expected.size() / 3;
+                for (int i = 0; i < 40; i++) {
+                    sequence = sequence.insert(rank, nextRow);
+                    expected.add(rank, nextRow++);
+                }
+            } else {
+                int[] rows = new int[random.nextInt(20)];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = nextRow;
+                    expected.add(nextRow++);
+                }
+                sequence = sequence.appendAll(rows, rows.length);
+            }
+            if (step % 100 == 0) {
+                assertMatches(expected, sequence);
+            }
+        }
+        assertMatches(expected, sequence);
+    }
+
+    @Test
+    void olderVersionsAreUnchanged() {
+        RowSequence sequence = RowSequence.EMPTY_INDEXED;
+        List<List<Integer>> expectedVersions = new ArrayList<>();
+        List<RowSequence> versions = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < 200; row++) {
+            // Insert at the head every time, which relabels again and again
+            sequence = sequence.insert(0, row);
+            expected.add(0, row);
+            versions.add(sequence);
+            expectedVersions.add(new ArrayList<>(expected));
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertMatches(expectedVersions.get(i), versions.get(i));
+        }
+    }
+
+    @Test
+    void firstRankWhereFindsTheStartOfASortedRun() {
+        Random random = new Random(7);
+        RowSequence sequence = RowSequence.EMPTY;
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < 500; row++) {
+            // Keep the rows sorted by value, as the date order keeps them sorted by day
+            int value = random.nextInt(100);
+            int rank = 0;
+            while (rank < expected.size() && expected.get(rank) % 100 <= value) {
+                rank++;
+            }
+            sequence = sequence.insert(rank, row * 100 + value);
+            expected.add(rank, row * 100 + value);
+        }
+        for (int value = -1; value <= 100; value++) {
+            int bound = value;
+            int rank = 0;
+            while (rank < expected.size() && expected.get(rank) % 100 <= bound) {
+                rank++;
+            }
+            assertEquals(rank, sequence.firstRankWhere(row -> row % 100 > bound));
+        }
+    }
+
+    @Test
+    void rankOfNeedsAnIndexedSequence() {
+        RowSequence plain = RowSequence.EMPTY.insert(0, 0);
+        assertThrows(UnsupportedOperationException.class, () -> plain.rankOf(0));
+        RowSequence indexed = RowSequence.EMPTY_INDEXED.insert(0, 0);
+        assertThrows(NoSuchElementException.class, () -> indexed.rankOf(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> indexed.get(1));
+    }
+
+    /**
+     * Checks every way of reading a sequence against the list it should hold.
+     */
+    private static void assertMatches(List<Integer> expected, RowSequence sequence) {
+        int size = expected.size();
+        assertEquals(size, sequence.size());
+        for (int rank = 0; rank < size; rank++) {
+            assertEquals(expected.get(rank), sequence.get(rank));
+            assertEquals(rank, sequence.rankOf(expected.get(rank)));
+        }
+
+        for (int from : new int[] {0, size / 2, size - 1}) {
+            if (from < 0) {
+                continue;
+            }
+            PrimitiveIterator.OfInt ascending = sequence.iterator(from, false);
+            for (int rank = from; rank < size; rank++) {
+                assertEquals(expected.get(rank), ascending.nextInt());
+            }
+            assertFalse(ascending.hasNext());
+            PrimitiveIterator.OfInt descending = sequence.iterator(from, true);
+            for (int rank = from; rank >= 0; rank--) {
+                assertEquals(expected.get(rank), descending.nextInt());
+            }
+            assertFalse(descending.hasNext());
+        }
+
+        List<Integer> range = new ArrayList<>();
+        sequence.forEach(size / 4, size - size / 4, range::add);
+        assertEquals(expected.subList(size / 4, size - size / 4), range);
+    }
+}
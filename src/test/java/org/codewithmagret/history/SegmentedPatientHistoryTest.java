@@ -0,0 +1,241 @@
+package org.codewithmagret.history;
+
+import org.codewithmagret.models.PatientRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for SegmentedPatientHistory: appending, reopening and recovering after a crash.
+ */
+class SegmentedPatientHistoryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsSurviveCloseAndReopen() throws IOException {
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            for (int i = 0; i < 300; i++) {
+                history.append(record(i));
+            }
+        }
+        assertTrue(segmentFiles().size() > 1);
+
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            assertRecords(history, 300);
+            history.append(record(300));
+        }
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            assertRecords(history, 301);
+        }
+    }
+
+    @Test
+    void recordCutShortIsDroppedOnReopen() throws IOException {
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir)) {
+            for (int i = 0; i < 100; i++) {
+                history.append(record(i));
+            }
+        }
+        Path last = segmentFiles().getLast();
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir)) {
+            assertRecords(history, 99);
+            history.append(record(99));
+        }
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir)) {
+            assertRecords(history, 100);
+        }
+    }
+
+    @Test
+    void recordLargerThanASegmentGetsASegmentOfItsOwn() throws IOException {
+        String large = "x".repeat(1_000);
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 64)) {
+            history.append(new PatientRecord(1, "2026-01-01", "First", large));
+            history.append(record(1));
+            history.append(new PatientRecord(1, "2026-01-01", "Third", large));
+            history.append(record(3));
+            assertEquals(large, history.getRecord(0).getTreatmentNotes());
+            assertEquals("Third", history.getRecord(2).getDiagnosis());
+        }
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 64)) {
+            assertEquals(4, history.size());
+            assertEquals(large, history.navigateToOldestRecord().getTreatmentNotes());
+            assertEquals("Diagnosis 1", history.navigateToNextRecord().getDiagnosis());
+            assertEquals(large, history.navigateToNextRecord().getTreatmentNotes());
+            assertEquals("Diagnosis 3", history.navigateToNextRecord().getDiagnosis());
+        }
+    }
+
+    @Test
+    void zeroedAndStaleIndexEntriesAreRebuilt() throws IOException {
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir)) {
+            for (int i = 0; i < 500; i++) {
+                history.append(record(i));
+            }
+        }
+        Path index = indexFiles().getLast();
+        long entries = Files.size(index) / 4;
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            // Zero the last entries, as if the index pages never reached the disk,
+            // and point the one before them past the end of the data
+            channel.write(ByteBuffer.allocate(12), (entries - 3) * 4);
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), (entries - 4) * 4);
+            // And add a stale entry past the last one
+            channel.write(ByteBuffer.allocate(4).putInt(0, 12_345), entries * 4);
+        }
+
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir)) {
+            assertRecords(history, 500);
+        }
+    }
+
+    @Test
+    void failingToStartASegmentLeavesTheHistoryUsable() throws IOException {
+        int appended = 0;
+        boolean failed = false;
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            while (!failed) {
+                // Block the file of the segment that would start at the next record
+                Path blocker = Files.exists(dataFile(appended)) ? null : Files.createDirectory(dataFile(appended));
+                try {
+                    history.append(record(appended));
+                    appended++;
+                } catch (IOException e) {
+                    failed = true;
+                    assertEquals(appended, history.size());
+                }
+                if (blocker != null) {
+                    Files.delete(blocker);
+                }
+            }
+            for (int i = appended; i < appended + 10; i++) {
+                history.append(record(i));
+            }
+        }
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            assertRecords(history, appended + 10);
+        }
+    }
+
+    @Test
+    void listKeepsOnlyTheRecordsThatReachedTheDisk() throws IOException {
+        List<PatientRecord> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(record(i));
+        }
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(dir, 256)) {
+            PatientHistoryList list = new PatientHistoryList();
+            list.keepOnDisk(history);
+            Files.createDirectory(dir.resolve(nextSegmentName()));
+            assertThrows(UncheckedIOException.class, () -> list.addAll(batch));
+            assertTrue(history.size() > 0 && history.size() < batch.size());
+            assertEquals(history.size(), list.size());
+            for (int i = 0; i < list.size(); i++) {
+                assertEquals(batch.get(i).getTreatmentNotes(), list.getRecord(i).getTreatmentNotes());
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the second segment file a history with 256-byte segments creates for the
+     * records of record(i), found by appending them to a scratch history.
+     */
+    private String nextSegmentName() throws IOException {
+        Path scratch = dir.resolve("scratch");
+        try (SegmentedPatientHistory history = SegmentedPatientHistory.open(scratch, 256)) {
+            for (int i = 0; i < 20; i++) {
+                history.append(record(i));
+            }
+        }
+        try (Stream<Path> files = Files.list(scratch)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(".seg"))
+                    .sorted().toList().get(1);
+        }
+    }
+
+    /**
+     * Returns a record that is easy to tell apart from the others.
+     */
+    private static PatientRecord record(int i) {
+        return new PatientRecord(i % 7 + 1, "2026-01-" + (10 + i % 20), "Diagnosis " + i, "Notes for visit " + i);
+    }
+
+    /**
+     * Checks that a history holds record(0) to record(count - 1) by position and by walking both ways.
+     */
+    private static void assertRecords(SegmentedPatientHistory history, int count) {
+        assertEquals(count, history.size());
+        for (int i = 0; i < count; i++) {
+            assertRecord(i, history.getRecord(i));
+        }
+        assertRecord(0, history.navigateToOldestRecord());
+        for (int i = 1; i < count; i++) {
+            assertRecord(i, history.navigateToNextRecord());
+        }
+        assertTrue(history.isAtNewest());
+        for (int i = count - 2; i >= 0; i--) {
+            assertRecord(i, history.navigateToPreviousRecord());
+        }
+        assertTrue(history.isAtOldest());
+    }
+
+    /**
+     * Checks that a record holds the values of record(i).
+     */
+    private static void assertRecord(int i, PatientRecord actual) {
+        PatientRecord expected = record(i);
+        assertEquals(expected.getPatientId(), actual.getPatientId());
+        assertEquals(expected.getVisitDate(), actual.getVisitDate());
+        assertEquals(expected.getDiagnosis(), actual.getDiagnosis());
+        assertEquals(expected.getTreatmentNotes(), actual.getTreatmentNotes());
+    }
+
+    /**
+     * Returns the path of the data file of the segment starting at a record.
+     */
+    private Path dataFile(long base) {
+        return dir.resolve(String.format("%020d.seg", base));
+    }
+
+    /**
+     * Returns the segment data files, oldest first.
+     */
+    private List<Path> segmentFiles() throws IOException {
+        return files(".seg");
+    }
+
+    /**
+     * Returns the segment index files, oldest first.
+     */
+    private List<Path> indexFiles() throws IOException {
+        return files(".idx");
+    }
+
+    /**
+     * Returns the files of the history with a suffix, sorted by name.
+     */
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.codewithmagret.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for BinaryModelCodec: round trips of patients and records through heap and direct buffers.
+ */
+class BinaryModelCodecTest {
+    @Test
+    void recordsRoundTripWithEveryKindOfVisitDate() {
+        BinaryModelCodec encoder = new BinaryModelCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        PatientRecord[] records = {
+                new PatientRecord(42, "2026-03-14", "Flu", "Rest and fluids"),
+                new PatientRecord(42, "1969-07-20", "Sprain", null),
+                new PatientRecord(7, "last Tuesday", null, "Résumé – naïve 😀"),
+                new PatientRecord(0, null, "Flu", ""),
+        };
+        for (PatientRecord patientRecord : records) {
+            encoder.encode(patientRecord, buffer);
+        }
+        buffer.flip();
+
+        BinaryModelCodec decoder = new BinaryModelCodec();
+        for (PatientRecord expected : records) {
+            assertRecord(expected, decoder.decodeRecord(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void repeatedStringsAreLearnedOnBothSides() {
+        BinaryModelCodec encoder = new BinaryModelCodec();
+        PatientRecord patientRecord = new PatientRecord(3, "2026-01-01", "Migraine", "Dark room");
+        ByteBuffer first = ByteBuffer.allocate(256);
+        encoder.encode(patientRecord, first);
+        ByteBuffer second = ByteBuffer.allocate(256);
+        encoder.encode(patientRecord, second);
+        // The second copy refers to the strings of the first by code
+        assertTrue(second.position() < first.position());
+
+        BinaryModelCodec decoder = new BinaryModelCodec();
+        assertRecord(patientRecord, decoder.decodeRecord(first.flip()));
+        assertRecord(patientRecord, decoder.decodeRecord(second.flip()));
+
+        // A decoder that missed the first copy does not know the codes
+        BinaryModelCodec late = new BinaryModelCodec();
+        assertThrows(IllegalArgumentException.class, () -> late.decodeRecord(second.rewind()));
+
+        // After a reset the strings are written out again
+        encoder.reset();
+        ByteBuffer third = ByteBuffer.allocate(256);
+        encoder.encode(patientRecord, third);
+        assertEquals(first.limit(), third.position());
+        assertRecord(patientRecord, new BinaryModelCodec().decodeRecord(third.flip()));
+    }
+
+    @Test
+    void codecWithoutADictionaryWritesEveryStringOut() {
+        BinaryModelCodec encoder = new BinaryModelCodec(false);
+        PatientRecord patientRecord = new PatientRecord(3, "2026-01-01", "Migraine", "Dark room");
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        encoder.encode(patientRecord, buffer);
+        int once = buffer.position();
+        encoder.encode(patientRecord, buffer);
+        assertEquals(2 * once, buffer.position());
+
+        buffer.flip();
+        BinaryModelCodec decoder = new BinaryModelCodec(false);
+        assertRecord(patientRecord, decoder.decodeRecord(buffer));
+        assertRecord(patientRecord, decoder.decodeRecord(buffer));
+    }
+
+    @Test
+    void loneSurrogatesAreWrittenAsQuestionMarks() {
+        BinaryModelCodec encoder = new BinaryModelCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        PatientRecord patientRecord = new PatientRecord(1, null, "a\uD800b", "\uDC00 pair 😀 end \uD83D");
+        encoder.encode(patientRecord, buffer);
+        buffer.flip();
+
+        PatientRecord decoded = new BinaryModelCodec().decodeRecord(buffer);
+        assertEquals("a?b", decoded.getDiagnosis());
+        assertEquals("? pair 😀 end ?", decoded.getTreatmentNotes());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void directBuffersRoundTrip() {
+        String longNotes = "Observed over several visits; ".repeat(40);
+        PatientRecord[] records = {
+                new PatientRecord(5, "2026-02-02", "Asthma", longNotes),
+                new PatientRecord(5, "2026-02-02", "Asthma", "Inhaler Ωμέγα"),
+        };
+        BinaryModelCodec encoder = new BinaryModelCodec();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BinaryModelCodec.maxEncodedSize(records[0])
+                + BinaryModelCodec.maxEncodedSize(records[1]));
+        for (PatientRecord patientRecord : records) {
+            encoder.encode(patientRecord, buffer);
+        }
+        buffer.flip();
+
+        BinaryModelCodec decoder = new BinaryModelCodec();
+        for (PatientRecord expected : records) {
+            assertRecord(expected, decoder.decodeRecord(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void patientsKeepTheirTriageLevel() {
+        BinaryModelCodec encoder = new BinaryModelCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        Patient[] patients = {
+                new Patient(1, "Ann", "Flu", TriageLevel.ROUTINE),
+                new Patient(2, "Ben", "Chest pain", TriageLevel.EMERGENCY),
+                new Patient(300, "Cy", "Cut", TriageLevel.URGENT),
+                new Patient(Long.MAX_VALUE, null, null, null),
+        };
+        for (Patient patient : patients) {
+            encoder.encode(patient, buffer);
+        }
+        buffer.flip();
+
+        BinaryModelCodec decoder = new BinaryModelCodec();
+        for (Patient expected : patients) {
+            Patient decoded = decoder.decodePatient(buffer);
+            assertEquals(expected.getNumericId(), decoded.getNumericId());
+            assertEquals(expected.getName(), decoded.getName());
+            assertEquals(expected.getReasonForVisit(), decoded.getReasonForVisit());
+            assertEquals(expected.getTriageLevel(), decoded.getTriageLevel());
+        }
+    }
+
+    @Test
+    void unknownTriageLevelOrKindIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new BinaryModelCodec().encode(new Patient(9, "Di", "Rash", TriageLevel.ROUTINE), buffer);
+        buffer.flip();
+        // The triage level byte follows the header and the one-byte id
+        buffer.put(2, (byte) (TriageLevel.values().length + 1));
+        assertThrows(IllegalArgumentException.class, () -> new BinaryModelCodec().decodePatient(buffer.duplicate()));
+        assertThrows(IllegalArgumentException.class, () -> new BinaryModelCodec().decodeRecord(buffer.duplicate()));
+
+        buffer.put(0, (byte) ((BinaryModelCodec.VERSION + 1) << 4 | 1));
+        assertThrows(IllegalArgumentException.class, () -> new BinaryModelCodec().decodePatient(buffer.duplicate()));
+    }
+
+    @Test
+    void recordWithoutADateDecodesWithUnknownDay() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new BinaryModelCodec().encode(new PatientRecord(1, null, null, null), buffer);
+        PatientRecord decoded = new BinaryModelCodec().decodeRecord(buffer.flip());
+        assertNull(decoded.getVisitDate());
+        assertEquals(PatientRecord.UNKNOWN_VISIT_DAY, decoded.getVisitEpochDay());
+    }
+
+    /**
+     * Checks that a decoded record holds the values of the encoded one.
+     */
+    private static void assertRecord(PatientRecord expected, PatientRecord actual) {
+        assertEquals(expected.getPatientId(), actual.getPatientId());
+        assertEquals(expected.getVisitDate(), actual.getVisitDate());
+        assertEquals(expected.getVisitEpochDay(), actual.getVisitEpochDay());
+        assertEquals(expected.getDiagnosis(), actual.getDiagnosis());
+        assertEquals(expected.getTreatmentNotes(), actual.getTreatmentNotes());
+    }
+}
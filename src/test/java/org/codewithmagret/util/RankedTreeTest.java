@@ -0,0 +1,114 @@
+package org.codewithmagret.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for RankedTree, checked against an ArrayList holding the same elements.
+ */
+class RankedTreeTest {
+    @Test
+    void randomOperationsMatchAList() {
+        Random random = new Random(1);
+        RankedTree<Integer> tree = new RankedTree<>();
+        List<RankedTree.Node<Integer>> nodes = new ArrayList<>();
+        int next = 0;
+        for (int step = 0; step < 20_000; step++) {
+            int choice = random.nextInt(10);
+            if (choice < 5 || nodes.isEmpty()) {
+                int rank = random.nextInt(nodes.size() + 1);
+                nodes.add(rank, tree.insert(rank, next++));
+            } else if (choice < 7) {
+                int rank = random.nextInt(nodes.size());
+                assertEquals(nodes.remove(rank).value(), tree.removeAt(rank));
+            } else if (choice < 9) {
+                // Remove by handle, as the waiting queue does for a patient it looked up
+                tree.remove(nodes.remove(random.nextInt(nodes.size())));
+            } else {
+                int rank = random.nextInt(nodes.size());
+                assertEquals(rank, tree.rankOf(nodes.get(rank)));
+                assertSame(nodes.get(rank), tree.nodeAt(rank));
+            }
+            if (step % 500 == 0) {
+                assertMatches(nodes, tree);
+            }
+        }
+        assertMatches(nodes, tree);
+    }
+
+    @Test
+    void firstRankWhereFindsTheStartOfASortedRun() {
+        Random random = new Random(2);
+        RankedTree<Integer> tree = new RankedTree<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            // Keep the elements sorted, the way the queue keeps patients sorted by triage lane
+            int value = random.nextInt(50);
+            int rank = tree.firstRankWhere(element -> element > value);
+            tree.insert(rank, value);
+            expected.add(rank, value);
+        }
+        for (int value = -1; value <= 50; value++) {
+            int bound = value;
+            int rank = 0;
+            while (rank < expected.size() && expected.get(rank) <= bound) {
+                rank++;
+            }
+            assertEquals(rank, tree.firstRankWhere(element -> element > bound));
+        }
+        for (int rank = 1; rank < expected.size(); rank++) {
+            assertTrue(expected.get(rank - 1) <= expected.get(rank));
+        }
+        assertEquals(expected, toList(tree.iterator()));
+    }
+
+    @Test
+    void outOfBoundsRanksAreRejected() {
+        RankedTree<String> tree = new RankedTree<>();
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.insert(1, "a"));
+        tree.insert(0, "a");
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.removeAt(-1));
+        Iterator<String> end = tree.iterator(1);
+        assertFalse(end.hasNext());
+        assertThrows(NoSuchElementException.class, end::next);
+    }
+
+    /**
+     * Checks every way of reading the tree against the list of nodes it should hold.
+     */
+    private static void assertMatches(List<RankedTree.Node<Integer>> nodes, RankedTree<Integer> tree) {
+        assertEquals(nodes.size(), tree.size());
+        assertEquals(nodes.isEmpty(), tree.isEmpty());
+        List<Integer> expected = new ArrayList<>();
+        for (int rank = 0; rank < nodes.size(); rank++) {
+            expected.add(nodes.get(rank).value());
+            assertEquals(nodes.get(rank).value(), tree.get(rank));
+            assertEquals(rank, tree.rankOf(nodes.get(rank)));
+        }
+        assertEquals(expected, toList(tree.iterator()));
+        for (int from : new int[] {0, nodes.size() / 3, nodes.size()}) {
+            assertEquals(expected.subList(from, expected.size()), toList(tree.iterator(from)));
+        }
+    }
+
+    /**
+     * Collects what an iterator returns.
+     */
+    private static <E> List<E> toList(Iterator<E> iterator) {
+        List<E> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,105 @@
+package org.codewithmagret.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for StringPool: canonical instances, the size bound and concurrent interning.
+ */
+class StringPoolTest {
+    @Test
+    void equalStringsShareOneInstance() {
+        StringPool pool = new StringPool(1_000);
+        String first = pool.intern(new String("Influenza"));
+        assertSame(first, pool.intern(new String("Influenza")));
+        assertEquals(1, pool.size());
+
+        assertNull(pool.intern(null));
+        String tooLong = "x".repeat(StringPool.MAX_LENGTH + 1);
+        assertSame(tooLong, pool.intern(tooLong));
+        assertTrue(pool.intern(new String(tooLong)) != tooLong);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void fullPoolHandsBackNewStringsAsTheyAre() {
+        StringPool pool = new StringPool(16);
+        List<String> pooled = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            pooled.add(pool.intern("Diagnosis " + i));
+        }
+        int size = pool.size();
+        assertTrue(size >= 16 && size <= 32, "size " + size);
+
+        // The strings that made it in are still shared, the rest are returned unchanged
+        int shared = 0;
+        for (int i = 0; i < 1_000; i++) {
+            String again = new String("Diagnosis " + i);
+            String interned = pool.intern(again);
+            if (interned == pooled.get(i)) {
+                shared++;
+            } else {
+                assertSame(again, interned);
+            }
+        }
+        assertEquals(size, shared);
+        assertEquals(size, pool.size());
+    }
+
+    @Test
+    void collectedStringsMakeRoomForNewOnes() throws InterruptedException {
+        StringPool pool = new StringPool(16);
+        for (int i = 0; i < 1_000; i++) {
+            pool.intern(new String("Unused " + i));
+        }
+
+        // Nothing holds the pooled strings, so once they are collected a new string gets a slot
+        boolean pooled = false;
+        for (int attempt = 0; attempt < 50 && !pooled; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            for (int i = 0; i < 100 && !pooled; i++) {
+                String first = pool.intern(new String("Fresh " + attempt + "/" + i));
+                pooled = pool.intern(new String("Fresh " + attempt + "/" + i)) == first;
+            }
+        }
+        assertTrue(pooled);
+        assertTrue(pool.size() <= 32);
+    }
+
+    @Test
+    void concurrentInternsAgreeOnTheInstance() throws Exception {
+        StringPool pool = new StringPool(1 << 12);
+        ConcurrentHashMap<String, String> seen = new ConcurrentHashMap<>();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                done.add(threads.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        String interned = pool.intern(new String("Reason " + i % 500));
+                        assertSame(seen.computeIfAbsent(interned, value -> value), interned);
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(500, seen.size());
+        assertEquals(500, pool.size());
+    }
+}
@@ -0,0 +1,80 @@
+package org.codewithmagret.waitingRoom;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.TriageLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for QueueSnapshotter: catching the shadow queue up with the log and writing snapshots.
+ */
+class QueueSnapshotterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotHoldsTheDurableQueue() throws IOException {
+        Path logFile = dir.resolve("queue.log");
+        Path snapshotFile = dir.resolve("queue.log.snapshot");
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(logFile);
+             QueueSnapshotter snapshotter = new QueueSnapshotter(logFile, snapshotFile, log, Duration.ZERO)) {
+            log.replay(new PatientWaitingQueue(Duration.ZERO).replayer());
+            log.logAdd(patient(1, "Ann"));
+            log.logAdd(patient(2, "Ben"));
+            log.logServe();
+            log.awaitDurable(log.appendedLsn());
+            snapshotter.snapshotNow();
+
+            List<String> names = new ArrayList<>();
+            assertEquals(log.durableLsn(), QueueSnapshot.read(snapshotFile, (patient, lane) -> names.add(patient.getName())));
+            assertEquals(List.of("Ben"), names);
+        }
+    }
+
+    @Test
+    void failedCatchUpStartsAgainFromTheLastSnapshot() throws IOException {
+        Path logFile = dir.resolve("queue.log");
+        Path snapshotFile = dir.resolve("queue.log.snapshot");
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(logFile)) {
+            QueueSnapshotter snapshotter = new QueueSnapshotter(logFile, snapshotFile, log, Duration.ZERO);
+            log.replay(new PatientWaitingQueue(Duration.ZERO).replayer());
+            log.logAdd(patient(1, "Ann"));
+            log.awaitDurable(log.appendedLsn());
+            snapshotter.snapshotNow();
+            long snapshotLsn = log.durableLsn();
+
+            // Ben applies cleanly, then the second add of Ann is rejected by the shadow queue
+            log.logAdd(patient(2, "Ben"));
+            log.logAdd(patient(1, "Ann"));
+            log.awaitDurable(log.appendedLsn());
+            IllegalArgumentException first = assertThrows(IllegalArgumentException.class, snapshotter::snapshotNow);
+            assertTrue(first.getMessage().contains("P1"), first.getMessage());
+
+            // Retrying must not apply Ben a second time
+            IllegalArgumentException second = assertThrows(IllegalArgumentException.class, snapshotter::snapshotNow);
+            assertTrue(second.getMessage().contains("P1"), second.getMessage());
+
+            List<String> names = new ArrayList<>();
+            assertEquals(snapshotLsn, QueueSnapshot.read(snapshotFile, (patient, lane) -> names.add(patient.getName())));
+            assertEquals(List.of("Ann"), names);
+            assertThrows(IllegalArgumentException.class, snapshotter::close);
+        }
+    }
+
+    /**
+     * Returns a routine patient with a fixed id.
+     */
+    private static Patient patient(long id, String name) {
+        return new Patient(id, name, "Checkup", TriageLevel.ROUTINE);
+    }
+}
@@ -0,0 +1,349 @@
+package org.codewithmagret.waitingRoom;
+
+import org.codewithmagret.models.Patient;
+import org.codewithmagret.models.TriageLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for QueueWriteAheadLog: replay, recovery from a torn or corrupt tail, and the
+ * behaviour of group commit when writing or syncing the log fails.
+ */
+class QueueWriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysEveryRecordInOrder() throws IOException {
+        Path file = dir.resolve("queue.log");
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            log.replay(new Recorder());
+            log.logAdd(patient(1, "Ann"));
+            log.logInsert(patient(2, "Ben"), 0);
+            log.logServe();
+            log.logRemove(1);
+            log.logMoveToFront(3);
+            log.logChangeTriage(3, TriageLevel.URGENT);
+            log.logPromote(TriageLevel.ROUTINE);
+        }
+
+        Recorder recorder = new Recorder();
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            assertEquals(Files.size(file), log.replay(recorder));
+        }
+        assertEquals(List.of("add 1 Ann", "insert 2 Ben 0", "serve", "remove 1", "moveToFront 3",
+                "changeTriage 3 URGENT", "promote ROUTINE"), recorder.events);
+    }
+
+    @Test
+    void tornTailIsCutOffAndAppendingContinuesAfterTheLastGoodRecord() throws IOException {
+        Path file = dir.resolve("queue.log");
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            log.replay(new Recorder());
+            log.logAdd(patient(1, "Ann"));
+            log.logAdd(patient(2, "Ben"));
+            log.logAdd(patient(3, "Cy"));
+        }
+        // A crash in the middle of writing the last record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Recorder recorder = new Recorder();
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            long replayed = log.replay(recorder);
+            assertEquals(replayed, Files.size(file));
+            assertEquals(List.of("add 1 Ann", "add 2 Ben"), recorder.events);
+            log.logAdd(patient(4, "Dee"));
+        }
+
+        recorder = new Recorder();
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            log.replay(recorder);
+        }
+        assertEquals(List.of("add 1 Ann", "add 2 Ben", "add 4 Dee"), recorder.events);
+    }
+
+    @Test
+    void replayStopsAtARecordWithABadChecksum() throws IOException {
+        Path file = dir.resolve("queue.log");
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            log.replay(new Recorder());
+            log.logAdd(patient(1, "Ann"));
+            log.logAdd(patient(2, "Ben"));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0x5A)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+
+        Recorder recorder = new Recorder();
+        try (QueueWriteAheadLog log = QueueWriteAheadLog.open(file)) {
+            log.replay(recorder);
+        }
+        assertEquals(List.of("add 1 Ann"), recorder.events);
+    }
+
+    @Test
+    void syncFailureKeepsUnsyncedRecordsPendingAndFailsTheLog() throws IOException {
+        Path file = dir.resolve("queue.log");
+        FaultyChannel channel = new FaultyChannel(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        QueueWriteAheadLog log = new QueueWriteAheadLog(channel);
+        log.replay(new Recorder());
+        log.logAdd(patient(1, "Ann"));
+        log.awaitDurable(log.appendedLsn());
+        long durable = log.durableLsn();
+
+        log.logAdd(patient(2, "Ben"));
+        channel.failForce = true;
+        assertThrows(UncheckedIOException.class, () -> log.awaitDurable(log.appendedLsn()));
+
+        // The written but unsynced batch is cut off the file and kept in front of the pending records
+        assertEquals(durable, log.durableLsn());
+        assertEquals(durable, Files.size(file));
+        assertEquals(log.appendedLsn() - durable, log.pendingBytes());
+        log.logServe();
+        assertEquals(log.appendedLsn() - durable, log.pendingBytes());
+
+        // Later calls fail at once, without touching the file
+        channel.failForce = false;
+        int writes = channel.writes;
+        assertThrows(UncheckedIOException.class, () -> log.awaitDurable(log.appendedLsn()));
+        assertThrows(UncheckedIOException.class, log::checkHealthy);
+        assertEquals(writes, channel.writes);
+        assertThrows(IOException.class, log::close);
+
+        Recorder recorder = new Recorder();
+        try (QueueWriteAheadLog reopened = QueueWriteAheadLog.open(file)) {
+            reopened.replay(recorder);
+        }
+        assertEquals(List.of("add 1 Ann"), recorder.events);
+    }
+
+    @Test
+    void durableQueueReopensWithoutATornLastChange() throws IOException {
+        Path file = dir.resolve("queue.log");
+        Patient ann;
+        Patient ben;
+        try (PatientWaitingQueue queue = PatientWaitingQueue.openDurable(file, Duration.ZERO, Duration.ZERO)) {
+            ann = queue.addPatientToQueue(new Patient("Ann", "Flu"));
+            ben = queue.addPatientToQueue(new Patient("Ben", "Sprain", TriageLevel.URGENT));
+        }
+        // Recover from the log alone, as after a crash before the first snapshot
+        Files.delete(file.resolveSibling("queue.log.snapshot"));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try (PatientWaitingQueue queue = PatientWaitingQueue.openDurable(file, Duration.ZERO, Duration.ZERO)) {
+            assertEquals(1, queue.size());
+            assertNotNull(queue.findById(ann.getNumericId()));
+            assertNull(queue.findById(ben.getNumericId()));
+            Patient cy = queue.addPatientToQueue(new Patient("Cy", "Cut"));
+            assertEquals(1, queue.positionOf(cy.getNumericId()));
+        }
+    }
+
+    @Test
+    void waitOfARestoredPatientIsMeasuredFromTheRestore() throws IOException {
+        Path file = dir.resolve("queue.log");
+        try (PatientWaitingQueue queue = PatientWaitingQueue.openDurable(file, Duration.ZERO, Duration.ZERO)) {
+            queue.addPatientToQueue(new Patient("Ann", "Flu"));
+            queue.addPatientToQueue(new Patient("Ben", "Sprain"));
+        }
+        // Closing the queue wrote a snapshot, so both patients are restored from it
+
+        long opening = System.nanoTime();
+        try (PatientWaitingQueue queue = PatientWaitingQueue.openDurable(file, Duration.ZERO, Duration.ZERO)) {
+            assertEquals(2, queue.size());
+            queue.serveNext();
+            queue.serveNext();
+            WaitTimeHistogram waits = queue.metrics().waitTimes();
+            assertEquals(2, waits.count());
+            // The restore happens inside openDurable; buckets round up by at most about 3%
+            double sinceOpening = (System.nanoTime() - opening) / 1_000_000.0;
+            assertTrue(waits.percentileMillis(100) <= sinceOpening * 1.04 + 0.1);
+        }
+    }
+
+    /**
+     * Returns a routine patient with a fixed id.
+     */
+    private static Patient patient(long id, String name) {
+        return new Patient(id, name, "Checkup", TriageLevel.ROUTINE);
+    }
+
+    /**
+     * Replayer recording every operation as a line of text.
+     */
+    private static final class Recorder implements QueueWriteAheadLog.Replayer {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void add(Patient patient) {
+            events.add("add " + patient.getNumericId() + " " + patient.getName());
+        }
+
+        @Override
+        public void insert(Patient patient, int position) {
+            events.add("insert " + patient.getNumericId() + " " + patient.getName() + " " + position);
+        }
+
+        @Override
+        public void serve() {
+            events.add("serve");
+        }
+
+        @Override
+        public void remove(long id) {
+            events.add("remove " + id);
+        }
+
+        @Override
+        public void moveToFront(long id) {
+            events.add("moveToFront " + id);
+        }
+
+        @Override
+        public void changeTriage(long id, TriageLevel level) {
+            events.add("changeTriage " + id + " " + level);
+        }
+
+        @Override
+        public void promote(TriageLevel from) {
+            events.add("promote " + from);
+        }
+    }
+
+    /**
+     * File channel that forwards to a real one and can be told to fail fsync.
+     */
+    private static final class FaultyChannel extends FileChannel {
+        private final FileChannel delegate;
+
+        volatile boolean failForce;
+
+        volatile int writes;
+
+        FaultyChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            writes++;
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            writes++;
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForce) {
+                throw new IOException("Injected fsync failure");
+            }
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            writes++;
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}